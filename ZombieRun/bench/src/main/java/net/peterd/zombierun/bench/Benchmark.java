@@ -0,0 +1,71 @@
+package net.peterd.zombierun.bench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One benchmark: a piece of game code to be run in a loop by the {@link BenchmarkRunner}.
+ */
+abstract class Benchmark {
+
+  private final String name;
+  private final Map<String, String> params = new LinkedHashMap<String, String>();
+  private final Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+  private boolean expectsNoAllocation = false;
+
+  protected Benchmark(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Map<String, String> getParams() {
+    return params;
+  }
+
+  protected Benchmark param(String key, Object value) {
+    params.put(key, String.valueOf(value));
+    return this;
+  }
+
+  /**
+   * Report a figure other than speed and allocation, like the size of an encoding, alongside the
+   * benchmark's results.
+   */
+  protected void metric(String key, double value) {
+    metrics.put(key, value);
+  }
+
+  public Map<String, Double> getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Mark this benchmark as one whose steady state should not allocate at all; the runner reports a
+   * failed check if it does.
+   */
+  protected Benchmark expectNoAllocation() {
+    expectsNoAllocation = true;
+    return this;
+  }
+
+  public boolean expectsNoAllocation() {
+    return expectsNoAllocation;
+  }
+
+  /**
+   * Called before every warmup and measurement iteration, outside the timed section, so that each
+   * iteration starts from the same state.
+   */
+  public void setUp() { }
+
+  /**
+   * Run the benchmarked operation the given number of times.
+   *
+   * @return Something derived from every operation's result, so that the JIT can't discard the
+   *    work.
+   */
+  public abstract long run(int operations);
+}
@@ -0,0 +1,447 @@
+package net.peterd.zombierun.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.util.DistanceMetric;
+import net.peterd.zombierun.util.DistanceMetrics;
+import net.peterd.zombierun.util.GameRandom;
+import net.peterd.zombierun.util.GeoPointUtil;
+
+/**
+ * Runs the {@link GameCoreBenchmarks} on a desktop JVM and writes the results as JSON, so that
+ * they can be compared between releases.
+ *
+ * The game core only uses the Android framework at its edges, so it runs on a plain JVM.  The Maven
+ * build in the bench directory compiles it without the activities, the overlays and the services
+ * that drive the framework directly, against stand-ins for the few Android and Maps types the rest
+ * mentions, and packages it with these benchmarks and their JMH counterparts in the jmh package.
+ * From the ZombieRun/bench directory:
+ *
+ * <pre>
+ *   mvn -B package
+ *   java -cp target/benchmarks.jar net.peterd.zombierun.bench.BenchmarkRunner --json bench.json
+ *   java -jar target/benchmarks.jar -rf json -rff jmh-result.json
+ * </pre>
+ *
+ * Options: --filter substring only runs the benchmarks whose name contains the substring;
+ * --warmup n and --iterations n set the number of warmup and measurement iterations, and
+ * --iteration-ms n their length; --json file writes the results to the file instead of stdout.
+ *
+ * Each benchmark is warmed up, then run for a number of timed iterations, each starting from the
+ * benchmark's {@link Benchmark#setUp()}.  Results are reported per operation: the mean and
+ * standard deviation of the time taken, and, on JVMs that can count the bytes allocated by a
+ * thread, the bytes allocated.  The run also checks that the steady-state tick doesn't allocate
+ * and that every distance metric agrees with haversine up to each distance threshold the game
+ * uses.  Benchmarks run with several
+ * worker threads also report their speedup over the same benchmark run sequentially.
+ */
+public class BenchmarkRunner {
+
+  // The largest relative error tolerated from any distance metric, within a few kilometers of its
+  // reference latitude.
+  private static final double maxPlanarMetricRelativeError = 0.005;
+
+  private int warmupIterations = 5;
+  private int measurementIterations = 10;
+  private long iterationMs = 500;
+  private String filter = null;
+  private String jsonFile = null;
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final boolean canCountAllocations;
+  // What measuring the allocations allocates itself.
+  private final long allocationMeasurementBytes;
+
+  private final List<Result> results = new ArrayList<Result>();
+  private final List<Check> checks = new ArrayList<Check>();
+
+  public static void main(String[] args) throws IOException {
+    BenchmarkRunner runner = new BenchmarkRunner();
+    for (int i = 0; i < args.length; ++i) {
+      String arg = args[i];
+      if (i + 1 == args.length) {
+        usage("Missing value for " + arg);
+      }
+      String value = args[++i];
+      if ("--filter".equals(arg)) {
+        runner.filter = value;
+      } else if ("--json".equals(arg)) {
+        runner.jsonFile = value;
+      } else if ("--warmup".equals(arg)) {
+        runner.warmupIterations = Integer.parseInt(value);
+      } else if ("--iterations".equals(arg)) {
+        runner.measurementIterations = Math.max(Integer.parseInt(value), 1);
+      } else if ("--iteration-ms".equals(arg)) {
+        runner.iterationMs = Math.max(Long.parseLong(value), 1);
+      } else {
+        usage("Unknown option " + arg);
+      }
+    }
+    runner.run();
+  }
+
+  private static void usage(String message) {
+    System.err.println(message);
+    System.err.println("Usage: BenchmarkRunner [--filter substring] [--json file] [--warmup n] " +
+        "[--iterations n] [--iteration-ms n]");
+    System.exit(2);
+  }
+
+  private BenchmarkRunner() {
+    canCountAllocations = allocatedBytes() >= 0;
+    long minMeasurementBytes = Long.MAX_VALUE;
+    for (int i = 0; i < 10; ++i) {
+      long before = allocatedBytes();
+      minMeasurementBytes = Math.min(minMeasurementBytes, allocatedBytes() - before);
+    }
+    allocationMeasurementBytes = Math.max(minMeasurementBytes, 0);
+  }
+
+  private void run() throws IOException {
+    List<Benchmark> benchmarks = GameCoreBenchmarks.create();
+    for (int i = 0; i < benchmarks.size(); ++i) {
+      Benchmark benchmark = benchmarks.get(i);
+      if (filter != null && benchmark.getName().indexOf(filter) < 0) {
+        continue;
+      }
+      System.err.println("Running " + benchmark.getName() + " " + benchmark.getParams());
+      Result result = measure(benchmark);
+      results.add(result);
+      System.err.println(String.format("  %.1f ns/op (+- %.1f), %.1f bytes/op %s",
+          result.meanNanosPerOp, result.stddevNanosPerOp, result.allocatedBytesPerOp,
+          result.metrics.isEmpty() ? "" : result.metrics.toString()));
+      if (benchmark.expectsNoAllocation() && canCountAllocations) {
+        checks.add(new Check("noAllocation " + benchmark.getName() + " " + benchmark.getParams(),
+            result.minAllocatedBytesPerOp,
+            // Anything under a byte an operation is the measurement itself.
+            result.minAllocatedBytesPerOp < 1));
+      }
+    }
+    reportSpeedups();
+    checkPlanarMetricAccuracy();
+
+    PrintWriter out;
+    if (jsonFile == null) {
+      out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+    } else {
+      out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8"));
+    }
+    try {
+      writeJson(out);
+    } finally {
+      out.close();
+    }
+
+    for (int i = 0; i < checks.size(); ++i) {
+      if (!checks.get(i).passed) {
+        System.err.println("Check failed: " + checks.get(i).name);
+        System.exit(1);
+      }
+    }
+  }
+
+  private Result measure(Benchmark benchmark) {
+    // Find a number of operations that takes roughly a tenth of an iteration, then scale it up.
+    long iterationNanos = iterationMs * 1000000;
+    int operations = 1;
+    while (true) {
+      benchmark.setUp();
+      long start = System.nanoTime();
+      benchmark.run(operations);
+      long elapsed = System.nanoTime() - start;
+      if (elapsed >= iterationNanos / 10 || operations >= Integer.MAX_VALUE / 2) {
+        long scaled = ((long) operations) * iterationNanos / Math.max(elapsed, 1);
+        operations = (int) Math.max(1, Math.min(Integer.MAX_VALUE, scaled));
+        break;
+      }
+      operations *= 2;
+    }
+
+    long sink = 0;
+    for (int i = 0; i < warmupIterations; ++i) {
+      benchmark.setUp();
+      sink += benchmark.run(operations);
+    }
+
+    double[] nanosPerOp = new double[measurementIterations];
+    double totalAllocatedBytesPerOp = 0;
+    double minAllocatedBytesPerOp = Double.MAX_VALUE;
+    for (int i = 0; i < measurementIterations; ++i) {
+      benchmark.setUp();
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      sink += benchmark.run(operations);
+      long elapsed = System.nanoTime() - start;
+      long allocated =
+          Math.max(allocatedBytes() - allocatedBefore - allocationMeasurementBytes, 0);
+      nanosPerOp[i] = ((double) elapsed) / operations;
+      double allocatedBytesPerOp = ((double) allocated) / operations;
+      totalAllocatedBytesPerOp += allocatedBytesPerOp;
+      minAllocatedBytesPerOp = Math.min(minAllocatedBytesPerOp, allocatedBytesPerOp);
+    }
+
+    Result result = new Result(benchmark);
+    result.operationsPerIteration = operations;
+    result.meanNanosPerOp = mean(nanosPerOp);
+    result.stddevNanosPerOp = stddev(nanosPerOp, result.meanNanosPerOp);
+    if (canCountAllocations) {
+      result.allocatedBytesPerOp = totalAllocatedBytesPerOp / measurementIterations;
+      result.minAllocatedBytesPerOp = minAllocatedBytesPerOp;
+    } else {
+      result.allocatedBytesPerOp = -1;
+      result.minAllocatedBytesPerOp = -1;
+    }
+    result.sink = sink;
+    return result;
+  }
+
+  /**
+   * For every benchmark run with a parallelism above 1, report its speedup over the same benchmark
+   * run sequentially, with otherwise identical parameters, as its speedupOverSequential metric.
+   */
+  private void reportSpeedups() {
+    for (int i = 0; i < results.size(); ++i) {
+      Result result = results.get(i);
+      String parallelism = result.params.get("parallelism");
+      if (parallelism == null || "1".equals(parallelism)) {
+        continue;
+      }
+      for (int j = 0; j < results.size(); ++j) {
+        Result sequential = results.get(j);
+        if (sequential.name.equals(result.name) &&
+            "1".equals(sequential.params.get("parallelism")) &&
+            isSameExceptParallelism(sequential.params, result.params)) {
+          double speedup = sequential.meanNanosPerOp / result.meanNanosPerOp;
+          result.metrics.put("speedupOverSequential", speedup);
+          System.err.println(String.format("%s %s: %.2fx the sequential speed", result.name,
+              result.params, speedup));
+          break;
+        }
+      }
+    }
+  }
+
+  private static boolean isSameExceptParallelism(Map<String, String> a, Map<String, String> b) {
+    if (a.size() != b.size()) {
+      return false;
+    }
+    for (Map.Entry<String, String> param : a.entrySet()) {
+      if (!"parallelism".equals(param.getKey()) &&
+          !param.getValue().equals(b.get(param.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compare every distance metric with haversine, up to each distance the game compares metric
+   * distances against, over random pairs of points within a few kilometers of a range of reference
+   * latitudes.  Both the distance in meters and the comparable distance, converted back to meters,
+   * are checked, and the largest relative error up to each threshold is reported.
+   */
+  private void checkPlanarMetricAccuracy() {
+    String[] thresholdNames = new String[] {
+        "zombieCatchPlayerDistanceMeters",
+        "reachDestinationTestDistanceMeters",
+        "zombieNearPlayerDistanceMeters",
+        "zombieNoticePlayerDistanceMeters",
+        "zombieFarTierDistanceMeters" };
+    double[] thresholdsMeters = new double[] {
+        Constants.zombieCatchPlayerDistanceMeters,
+        Constants.reachDestinationTestDistanceMeters,
+        Constants.zombieNearPlayerDistanceMeters,
+        Constants.zombieNoticePlayerDistanceMeters,
+        Constants.zombieFarTierDistanceMeters };
+    double[] referenceLatitudes = new double[] { 0, 45, 60, 70 };
+    int distanceSteps = 64;
+    int pairsPerStep = 500;
+    double metersPerDegree = GeoPointUtil.distanceMeters(0, 0, 1, 0);
+    DistanceMetrics.Type[] types = DistanceMetrics.Type.values();
+    for (int t = 0; t < types.length; ++t) {
+      for (int h = 0; h < thresholdsMeters.length; ++h) {
+        GameRandom random = new GameRandom(1);
+        double maxRelativeError = 0;
+        double worstLatitude = 0;
+        for (int i = 0; i < referenceLatitudes.length; ++i) {
+          double referenceLatitude = referenceLatitudes[i];
+          DistanceMetric metric = DistanceMetrics.create(types[t], referenceLatitude);
+          for (int step = 1; step <= distanceSteps; ++step) {
+            double distanceMeters = thresholdsMeters[h] * step / distanceSteps;
+            for (int k = 0; k < pairsPerStep; ++k) {
+              double lat = referenceLatitude + (random.nextDouble() - 0.5) * 0.05;
+              double lon = random.nextDouble();
+              double bearing = random.nextDouble() * 2 * Math.PI;
+              double otherLat = lat + distanceMeters * Math.cos(bearing) / metersPerDegree;
+              double otherLon = lon + distanceMeters * Math.sin(bearing) /
+                  (metersPerDegree * Math.cos(Math.toRadians(lat)));
+              double haversine = GeoPointUtil.distanceMeters(lat, lon, otherLat, otherLon);
+              double meters = metric.distanceMeters(lat, lon, otherLat, otherLon);
+              double comparableMeters = metric.toDistanceMeters(
+                  metric.comparableDistance(lat, lon, otherLat, otherLon));
+              double relativeError = Math.max(Math.abs(meters - haversine),
+                  Math.abs(comparableMeters - haversine)) / haversine;
+              if (relativeError > maxRelativeError) {
+                maxRelativeError = relativeError;
+                worstLatitude = referenceLatitude;
+              }
+            }
+          }
+        }
+        System.err.println(String.format("%s up to %s (%.0fm): max relative error %.2e, at " +
+            "latitude %.0f", types[t], thresholdNames[h], thresholdsMeters[h], maxRelativeError,
+            worstLatitude));
+        checks.add(new Check("metricAccuracy metric=" + types[t] + " threshold=" +
+                thresholdNames[h],
+            maxRelativeError,
+            maxRelativeError <= maxPlanarMetricRelativeError));
+      }
+    }
+  }
+
+  /**
+   * @return The number of bytes allocated by the current thread so far, or -1 if the JVM can't
+   *    say.
+   */
+  private long allocatedBytes() {
+    try {
+      if (threads instanceof com.sun.management.ThreadMXBean) {
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+      }
+    } catch (UnsupportedOperationException e) {
+      // Fall through.
+    } catch (NoClassDefFoundError e) {
+      // Not a HotSpot JVM.
+    }
+    return -1;
+  }
+
+  private void writeJson(PrintWriter out) {
+    out.println("{");
+    out.println("  \"timestamp\": " + System.currentTimeMillis() + ",");
+    out.println("  \"jvm\": " + quote(System.getProperty("java.vm.name") + " " +
+        System.getProperty("java.version")) + ",");
+    out.println("  \"availableProcessors\": " + Runtime.getRuntime().availableProcessors() + ",");
+    out.println("  \"warmupIterations\": " + warmupIterations + ",");
+    out.println("  \"measurementIterations\": " + measurementIterations + ",");
+    out.println("  \"benchmarks\": [");
+    for (int i = 0; i < results.size(); ++i) {
+      Result result = results.get(i);
+      out.println("    {");
+      out.println("      \"name\": " + quote(result.name) + ",");
+      out.print("      \"params\": {");
+      boolean first = true;
+      for (Map.Entry<String, String> param : result.params.entrySet()) {
+        out.print((first ? "" : ", ") + quote(param.getKey()) + ": " + quote(param.getValue()));
+        first = false;
+      }
+      out.println("},");
+      out.println("      \"operationsPerIteration\": " + result.operationsPerIteration + ",");
+      out.println("      \"opsPerSecond\": " + number(1e9 / result.meanNanosPerOp) + ",");
+      out.println("      \"nanosPerOp\": " + number(result.meanNanosPerOp) + ",");
+      out.println("      \"stddevNanosPerOp\": " + number(result.stddevNanosPerOp) + ",");
+      out.println("      \"allocatedBytesPerOp\": " + number(result.allocatedBytesPerOp) + ",");
+      out.print("      \"metrics\": {");
+      first = true;
+      for (Map.Entry<String, Double> metric : result.metrics.entrySet()) {
+        out.print((first ? "" : ", ") + quote(metric.getKey()) + ": " + number(metric.getValue()));
+        first = false;
+      }
+      out.println("}");
+      out.println("    }" + (i + 1 < results.size() ? "," : ""));
+    }
+    out.println("  ],");
+    out.println("  \"checks\": [");
+    for (int i = 0; i < checks.size(); ++i) {
+      Check check = checks.get(i);
+      out.println("    {\"name\": " + quote(check.name) + ", \"value\": " + number(check.value) +
+          ", \"passed\": " + check.passed + "}" + (i + 1 < checks.size() ? "," : ""));
+    }
+    out.println("  ]");
+    out.println("}");
+  }
+
+  private static String quote(String string) {
+    StringBuilder builder = new StringBuilder("\"");
+    for (int i = 0; i < string.length(); ++i) {
+      char c = string.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(String.format("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.append('"').toString();
+  }
+
+  private static String number(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return "null";
+    }
+    return String.valueOf(value);
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (int i = 0; i < values.length; ++i) {
+      sum += values[i];
+    }
+    return sum / values.length;
+  }
+
+  private static double stddev(double[] values, double mean) {
+    if (values.length < 2) {
+      return 0;
+    }
+    double sumOfSquares = 0;
+    for (int i = 0; i < values.length; ++i) {
+      sumOfSquares += (values[i] - mean) * (values[i] - mean);
+    }
+    return Math.sqrt(sumOfSquares / (values.length - 1));
+  }
+
+  private static class Result {
+
+    private final String name;
+    private final Map<String, String> params;
+    private final Map<String, Double> metrics;
+    private int operationsPerIteration;
+    private double meanNanosPerOp;
+    private double stddevNanosPerOp;
+    private double allocatedBytesPerOp;
+    private double minAllocatedBytesPerOp;
+    // Keeps the benchmarks' results alive, so that their work can't be optimized away.
+    private long sink;
+
+    public Result(Benchmark benchmark) {
+      name = benchmark.getName();
+      params = benchmark.getParams();
+      metrics = benchmark.getMetrics();
+    }
+  }
+
+  private static class Check {
+
+    private final String name;
+    private final double value;
+    private final boolean passed;
+
+    public Check(String name, double value, boolean passed) {
+      this.name = name;
+      this.value = value;
+      this.passed = passed;
+    }
+  }
+}
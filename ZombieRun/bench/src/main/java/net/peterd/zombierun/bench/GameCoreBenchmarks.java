@@ -0,0 +1,640 @@
+package net.peterd.zombierun.bench;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.peterd.zombierun.entity.Destination;
+import net.peterd.zombierun.entity.HordeReconciler;
+import net.peterd.zombierun.entity.ParallelHordeAdvancer;
+import net.peterd.zombierun.entity.Player;
+import net.peterd.zombierun.entity.ZombieHorde;
+import net.peterd.zombierun.entity.ZombiePopulator;
+import net.peterd.zombierun.game.GameEvent;
+import net.peterd.zombierun.game.GameState;
+import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.util.DistanceMetric;
+import net.peterd.zombierun.util.DistanceMetrics;
+import net.peterd.zombierun.util.FloatingPointGeoPoint;
+import net.peterd.zombierun.util.GameRandom;
+import net.peterd.zombierun.util.GeoPointUtil;
+import net.peterd.zombierun.util.LocalFrame;
+import net.peterd.zombierun.util.VarintWriter;
+
+/**
+ * The benchmarks for the game core: distance math, advancing the horde, populating a game and the
+ * serializers used to hand game state between devices.
+ *
+ * Every game is seeded, so each run measures exactly the same work.  The games are also used by the
+ * JMH benchmarks in the jmh package.
+ */
+public class GameCoreBenchmarks {
+
+  private static final long seed = 20091L;
+  private static final double startLatitude = 37.7749;
+  private static final double startLongitude = -122.4194;
+  private static final double destinationLatitude = 37.7880;
+  private static final double destinationLongitude = -122.4075;
+  private static final double zombieSpeedMetersPerSecond = 1.5;
+  public static final long tickMs = 100;
+  // How far from the start zombies are scattered by createGame.
+  public static final double hordeRadiusMeters = 2000;
+
+  private GameCoreBenchmarks() { }
+
+  static List<Benchmark> create() {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    benchmarks.add(new HaversineDistance());
+    benchmarks.add(new MetricDistance(DistanceMetrics.Type.EQUIRECTANGULAR));
+    benchmarks.add(new MetricDistance(DistanceMetrics.Type.SQUARED_PLANAR));
+
+    int[] hordeSizes = new int[] { 150, 10000, 100000 };
+    for (int i = 0; i < hordeSizes.length; ++i) {
+      benchmarks.add(new AdvanceZombies(hordeSizes[i], 1, 0, false));
+    }
+    benchmarks.add(new AdvanceZombies(10000, 32, 0, false));
+    benchmarks.add(new AdvanceZombies(100000, 1,
+        Math.max(2, Runtime.getRuntime().availableProcessors()), false));
+    // With nothing parked, every zombie is advanced every tick: the cost of one zombie's advance,
+    // times the horde size.
+    benchmarks.add(new AdvanceZombies(10000, 1, 0, true));
+    // The horde against the object per zombie it replaced, both advancing every zombie every tick.
+    benchmarks.add(new AdvanceHorde(10000, 8));
+    benchmarks.add(new AdvanceObjectZombies(10000, 8));
+    // How the parallel advancer scales with the number of workers, against the sequential advance
+    // of the same horde; the runner reports each one's speedup.
+    benchmarks.add(new AdvanceZombies(100000, 8, 0, true));
+    int processors = Runtime.getRuntime().availableProcessors();
+    for (int parallelism = 2; parallelism <= Math.max(processors, 2); parallelism *= 2) {
+      benchmarks.add(new AdvanceZombies(100000, 8, parallelism, true));
+    }
+
+    benchmarks.add(new Populate());
+    benchmarks.add(new ZombiesToString(150));
+    benchmarks.add(new ZombiesToString(10000));
+    benchmarks.add(new ZombiesFromString(150));
+    benchmarks.add(new ZombiesFromString(10000));
+    benchmarks.add(new ZombiesToBytes(150));
+    benchmarks.add(new ZombiesToBytes(10000));
+    benchmarks.add(new ZombiesFromBytes(150));
+    benchmarks.add(new ZombiesFromBytes(10000));
+    benchmarks.add(new ReconcileZombies(10000, false));
+    benchmarks.add(new ReconcileZombies(10000, true));
+    benchmarks.add(new PlayersToString(8));
+    benchmarks.add(new PlayersFromString(8));
+    benchmarks.add(new PlayersToBytes(8));
+    benchmarks.add(new PlayersFromBytes(8));
+    return benchmarks;
+  }
+
+  /**
+   * Create a game with zombieCount zombies scattered uniformly within hordeRadiusMeters of the
+   * start, and playerCount players spread around the start.
+   */
+  public static GameState createGame(int zombieCount, int playerCount) {
+    Destination destination = new Destination(
+        new FloatingPointGeoPoint(destinationLatitude, destinationLongitude));
+    GameState state = new GameState(destination, seed);
+    LocalFrame frame = new LocalFrame(startLatitude, startLongitude);
+    state.setLocalFrame(frame);
+    GameRandom random = state.getRandom();
+
+    List<Player> players = state.getPlayers();
+    CountingBroadcaster playerEvents = new CountingBroadcaster();
+    for (int i = 0; i < playerCount; ++i) {
+      double east = (random.nextDouble() - 0.5) * hordeRadiusMeters;
+      double north = (random.nextDouble() - 0.5) * hordeRadiusMeters;
+      players.add(new Player(destination,
+          i,
+          new FloatingPointGeoPoint(frame.toLatitude(north), frame.toLongitude(east)),
+          playerEvents));
+    }
+
+    ZombieHorde zombies = state.getZombies();
+    zombies.ensureCapacity(zombieCount);
+    for (int i = 0; i < zombieCount; ++i) {
+      double radius = hordeRadiusMeters * Math.sqrt(random.nextDouble());
+      double bearing = random.nextDouble() * 2 * Math.PI;
+      zombies.add(i,
+          frame.toLatitude(radius * Math.cos(bearing)),
+          frame.toLongitude(radius * Math.sin(bearing)),
+          -1,
+          zombieSpeedMetersPerSecond);
+    }
+    return state;
+  }
+
+  /**
+   * @return The bytes of heap in use once the garbage has been collected, as far as the JVM will
+   *    say; good enough to compare large structures built between two calls.
+   */
+  static long usedHeapBytes() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Counts the events raised, rather than dispatching them.
+   */
+  public static class CountingBroadcaster implements GameEventBroadcaster {
+
+    public long events = 0;
+
+    public void broadcastEvent(GameEvent event) {
+      events++;
+    }
+  }
+
+  /**
+   * Pairs of nearby points, a few meters to a few hundred meters apart, around the start.
+   */
+  private static abstract class DistanceBenchmark extends Benchmark {
+
+    protected static final int pairs = 1024;
+    protected final double[] aLats = new double[pairs];
+    protected final double[] aLons = new double[pairs];
+    protected final double[] bLats = new double[pairs];
+    protected final double[] bLons = new double[pairs];
+
+    protected DistanceBenchmark(String name) {
+      super(name);
+      GameRandom random = new GameRandom(seed);
+      for (int i = 0; i < pairs; ++i) {
+        aLats[i] = startLatitude + (random.nextDouble() - 0.5) * 0.02;
+        aLons[i] = startLongitude + (random.nextDouble() - 0.5) * 0.02;
+        bLats[i] = aLats[i] + (random.nextDouble() - 0.5) * 0.004;
+        bLons[i] = aLons[i] + (random.nextDouble() - 0.5) * 0.004;
+      }
+      expectNoAllocation();
+    }
+  }
+
+  private static class HaversineDistance extends DistanceBenchmark {
+
+    HaversineDistance() {
+      super("GeoPointUtil.distanceMeters");
+    }
+
+    public long run(int operations) {
+      double sum = 0;
+      for (int i = 0; i < operations; ++i) {
+        int pair = i & (pairs - 1);
+        sum += GeoPointUtil.distanceMeters(aLats[pair], aLons[pair], bLats[pair], bLons[pair]);
+      }
+      return (long) sum;
+    }
+  }
+
+  private static class MetricDistance extends DistanceBenchmark {
+
+    private final DistanceMetric metric;
+
+    MetricDistance(DistanceMetrics.Type type) {
+      super("DistanceMetric.comparableDistance");
+      param("metric", type);
+      metric = DistanceMetrics.create(type, startLatitude);
+    }
+
+    public long run(int operations) {
+      DistanceMetric metric = this.metric;
+      double sum = 0;
+      for (int i = 0; i < operations; ++i) {
+        int pair = i & (pairs - 1);
+        sum += metric.comparableDistance(aLats[pair], aLons[pair], bLats[pair], bLons[pair]);
+      }
+      return (long) sum;
+    }
+  }
+
+  /**
+   * One operation is one tick: the players walk a little, then the horde is advanced.
+   */
+  private static class AdvanceZombies extends Benchmark {
+
+    private final int zombieCount;
+    private final int playerCount;
+    private final int parallelism;
+    private final boolean advanceEveryZombie;
+    private final CountingBroadcaster broadcaster = new CountingBroadcaster();
+    private ParallelHordeAdvancer parallelAdvancer;
+    private GameState state;
+
+    AdvanceZombies(int zombieCount, int playerCount, int parallelism,
+        boolean advanceEveryZombie) {
+      super("GameState.AdvanceZombies");
+      this.zombieCount = zombieCount;
+      this.playerCount = playerCount;
+      this.parallelism = parallelism;
+      this.advanceEveryZombie = advanceEveryZombie;
+      param("zombies", zombieCount);
+      param("players", playerCount);
+      param("parallelism", Math.max(parallelism, 1));
+      param("parking", !advanceEveryZombie);
+      if (parallelism == 0) {
+        // The parallel advancer allocates its futures every tick.
+        expectNoAllocation();
+      }
+    }
+
+    public void setUp() {
+      state = createGame(zombieCount, playerCount);
+      if (advanceEveryZombie) {
+        state.getZombies().setMaxParkedMs(0);
+      }
+      if (parallelism > 0) {
+        if (parallelAdvancer == null) {
+          parallelAdvancer = new ParallelHordeAdvancer(parallelism);
+        }
+        state.setParallelAdvancer(parallelAdvancer);
+      }
+      // The first tick sizes the scratch space; steady state starts after it.
+      run(1);
+    }
+
+    public long run(int operations) {
+      GameState state = this.state;
+      List<Player> players = state.getPlayers();
+      for (int i = 0; i < operations; ++i) {
+        // Walk north-east at a little over a meter per second.
+        for (int j = 0; j < players.size(); ++j) {
+          Player player = players.get(j);
+          player.setLocation(player.getLatitude() + 0.000001, player.getLongitude() + 0.000001);
+        }
+        state.AdvanceZombies(tickMs, broadcaster);
+      }
+      return broadcaster.events + state.getZombies().getZombiesAdvancedLastTick();
+    }
+  }
+
+  /**
+   * One operation is one tick of {@link ZombieHorde#advance}, with nothing parked, over a horde
+   * whose players stand still: the horde's own cost, without the players' movement or the game
+   * state around it.
+   */
+  private static class AdvanceHorde extends Benchmark {
+
+    private final int zombieCount;
+    private final int playerCount;
+    private final CountingBroadcaster broadcaster = new CountingBroadcaster();
+    private ZombieHorde zombies;
+
+    AdvanceHorde(int zombieCount, int playerCount) {
+      super("ZombieHorde.advance");
+      this.zombieCount = zombieCount;
+      this.playerCount = playerCount;
+      param("zombies", zombieCount);
+      param("players", playerCount);
+      expectNoAllocation();
+    }
+
+    public void setUp() {
+      if (getMetrics().isEmpty()) {
+        long before = usedHeapBytes();
+        zombies = createGame(zombieCount, playerCount).getZombies();
+        metric("retainedBytesPerZombie", (double) (usedHeapBytes() - before) / zombieCount);
+      } else {
+        zombies = createGame(zombieCount, playerCount).getZombies();
+      }
+      zombies.setMaxParkedMs(0);
+      // The first tick sizes the scratch space; steady state starts after it.
+      run(1);
+    }
+
+    public long run(int operations) {
+      ZombieHorde zombies = this.zombies;
+      for (int i = 0; i < operations; ++i) {
+        zombies.advance(tickMs, TimeUnit.MILLISECONDS, broadcaster);
+      }
+      return broadcaster.events + zombies.getZombiesAdvancedLastTick();
+    }
+  }
+
+  /**
+   * One operation is one tick of the same game as {@link AdvanceHorde}, with its zombies kept as
+   * {@link ObjectZombie}s instead.
+   */
+  private static class AdvanceObjectZombies extends Benchmark {
+
+    private final int zombieCount;
+    private final int playerCount;
+    private final CountingBroadcaster broadcaster = new CountingBroadcaster();
+    private List<ObjectZombie> zombies;
+
+    AdvanceObjectZombies(int zombieCount, int playerCount) {
+      super("ObjectZombie.advance");
+      this.zombieCount = zombieCount;
+      this.playerCount = playerCount;
+      param("zombies", zombieCount);
+      param("players", playerCount);
+    }
+
+    public void setUp() {
+      GameState state = createGame(zombieCount, playerCount);
+      if (getMetrics().isEmpty()) {
+        long before = usedHeapBytes();
+        zombies = toObjectZombies(state);
+        metric("retainedBytesPerZombie", (double) (usedHeapBytes() - before) / zombieCount);
+      } else {
+        zombies = toObjectZombies(state);
+      }
+      state.getZombies().clear();
+      run(1);
+    }
+
+    private List<ObjectZombie> toObjectZombies(GameState state) {
+      ZombieHorde horde = state.getZombies();
+      List<ObjectZombie> zombies = new ArrayList<ObjectZombie>(horde.size());
+      for (int i = 0; i < horde.size(); ++i) {
+        zombies.add(new ObjectZombie(horde.getId(i),
+            horde.getLatitude(i),
+            horde.getLongitude(i),
+            state.getPlayers(),
+            horde.getSpeedMetersPerSecond(i),
+            broadcaster));
+      }
+      return zombies;
+    }
+
+    public long run(int operations) {
+      List<ObjectZombie> zombies = this.zombies;
+      long result = 0;
+      for (int i = 0; i < operations; ++i) {
+        for (int j = 0; j < zombies.size(); ++j) {
+          zombies.get(j).advance(tickMs, TimeUnit.MILLISECONDS);
+        }
+        result += zombies.size();
+      }
+      return broadcaster.events + result;
+    }
+  }
+
+  private static class Populate extends Benchmark {
+
+    private static final double zombiesPerSquareKilometer = 500;
+
+    Populate() {
+      super("ZombiePopulator.populate");
+      param("zombiesPerSquareKilometer", zombiesPerSquareKilometer);
+    }
+
+    public long run(int operations) {
+      FloatingPointGeoPoint start = new FloatingPointGeoPoint(startLatitude, startLongitude);
+      FloatingPointGeoPoint destination =
+          new FloatingPointGeoPoint(destinationLatitude, destinationLongitude);
+      long zombies = 0;
+      for (int i = 0; i < operations; ++i) {
+        GameState state = new GameState(new Destination(destination), seed + i);
+        LocalFrame frame = new LocalFrame(start);
+        state.setLocalFrame(frame);
+        new ZombiePopulator(state,
+            frame,
+            start,
+            destination,
+            zombieSpeedMetersPerSecond,
+            zombiesPerSquareKilometer).populate();
+        zombies += state.getZombies().size();
+      }
+      return zombies;
+    }
+  }
+
+  private static class ZombiesToString extends Benchmark {
+
+    private final ZombieHorde zombies;
+
+    ZombiesToString(int zombieCount) {
+      super("ZombieListSerializer.toString");
+      param("zombies", zombieCount);
+      zombies = createGame(zombieCount, 1).getZombies();
+      metric("bytesPerZombie",
+          ((double) encodedLength(ZombieHorde.ZombieListSerializer.toString(zombies))) /
+              zombieCount);
+    }
+
+    public long run(int operations) {
+      long length = 0;
+      for (int i = 0; i < operations; ++i) {
+        length += ZombieHorde.ZombieListSerializer.toString(zombies).length();
+      }
+      return length;
+    }
+  }
+
+  private static class ZombiesFromString extends Benchmark {
+
+    private final String encodedZombies;
+    private final ZombieHorde zombies;
+
+    ZombiesFromString(int zombieCount) {
+      super("ZombieListSerializer.fromString");
+      param("zombies", zombieCount);
+      GameState state = createGame(zombieCount, 1);
+      encodedZombies = ZombieHorde.ZombieListSerializer.toString(state.getZombies());
+      zombies = createGame(0, 1).getZombies();
+    }
+
+    public long run(int operations) {
+      long size = 0;
+      for (int i = 0; i < operations; ++i) {
+        zombies.clear();
+        ZombieHorde.ZombieListSerializer.fromString(encodedZombies, zombies);
+        size += zombies.size();
+      }
+      return size;
+    }
+  }
+
+  private static class ZombiesToBytes extends Benchmark {
+
+    private final ZombieHorde zombies;
+    private final VarintWriter writer = new VarintWriter();
+
+    ZombiesToBytes(int zombieCount) {
+      super("ZombieListBinarySerializer.write");
+      param("zombies", zombieCount);
+      zombies = createGame(zombieCount, 1).getZombies();
+      byte[] bytes = ZombieHorde.ZombieListBinarySerializer.toBytes(zombies);
+      metric("bytesPerZombie", ((double) bytes.length) / zombieCount);
+      metric("encodedStringBytesPerZombie",
+          ((double) ZombieHorde.ZombieListBinarySerializer.toEncodedString(zombies).length()) /
+              zombieCount);
+    }
+
+    public long run(int operations) {
+      long size = 0;
+      for (int i = 0; i < operations; ++i) {
+        writer.reset();
+        ZombieHorde.ZombieListBinarySerializer.write(zombies, writer);
+        size += writer.size();
+      }
+      return size;
+    }
+  }
+
+  private static class ZombiesFromBytes extends Benchmark {
+
+    private final byte[] encodedZombies;
+    private final ZombieHorde zombies;
+
+    ZombiesFromBytes(int zombieCount) {
+      super("ZombieListBinarySerializer.fromBytes");
+      param("zombies", zombieCount);
+      GameState state = createGame(zombieCount, 1);
+      encodedZombies = ZombieHorde.ZombieListBinarySerializer.toBytes(state.getZombies());
+      zombies = createGame(0, 1).getZombies();
+    }
+
+    public long run(int operations) {
+      long size = 0;
+      for (int i = 0; i < operations; ++i) {
+        zombies.clear();
+        ZombieHorde.ZombieListBinarySerializer.fromBytes(encodedZombies, zombies);
+        size += zombies.size();
+      }
+      return size;
+    }
+  }
+
+  /**
+   * Applies alternating snapshots of a moving horde to one that already holds the same zombies,
+   * the steady state of a participant in a multiplayer game.
+   */
+  private static class ReconcileZombies extends Benchmark {
+
+    private final String[] snapshots = new String[2];
+    private final HordeReconciler reconciler;
+
+    ReconcileZombies(int zombieCount, boolean binary) {
+      super("HordeReconciler.reconcile");
+      param("zombies", zombieCount);
+      param("format", binary ? "binary" : "text");
+      GameState state = createGame(zombieCount, 1);
+      for (int i = 0; i < snapshots.length; ++i) {
+        state.getZombies().advance(1, TimeUnit.SECONDS, new CountingBroadcaster());
+        snapshots[i] = binary ?
+            ZombieHorde.ZombieListBinarySerializer.toEncodedString(state.getZombies()) :
+            ZombieHorde.ZombieListSerializer.toString(state.getZombies());
+      }
+      reconciler = new HordeReconciler(createGame(zombieCount, 1).getZombies());
+      if (!binary) {
+        // The binary form allocates a reader per snapshot.
+        expectNoAllocation();
+      }
+    }
+
+    public void setUp() {
+      run(snapshots.length);
+    }
+
+    public long run(int operations) {
+      long changes = 0;
+      for (int i = 0; i < operations; ++i) {
+        reconciler.reconcile(snapshots[i % snapshots.length]);
+        changes += reconciler.getAdded() + reconciler.getRemoved();
+      }
+      return changes;
+    }
+  }
+
+  private static class PlayersToString extends Benchmark {
+
+    private final List<Player> players;
+
+    PlayersToString(int playerCount) {
+      super("PlayerListSerializer.toString");
+      param("players", playerCount);
+      players = createGame(0, playerCount).getPlayers();
+    }
+
+    public long run(int operations) {
+      long length = 0;
+      for (int i = 0; i < operations; ++i) {
+        length += Player.PlayerListSerializer.toString(players).length();
+      }
+      return length;
+    }
+  }
+
+  private static class PlayersFromString extends Benchmark {
+
+    private final String encodedPlayers;
+    private final Destination destination;
+    private final CountingBroadcaster events = new CountingBroadcaster();
+
+    PlayersFromString(int playerCount) {
+      super("PlayerListSerializer.fromString");
+      param("players", playerCount);
+      GameState state = createGame(0, playerCount);
+      encodedPlayers = Player.PlayerListSerializer.toString(state.getPlayers());
+      destination = state.getDestination();
+    }
+
+    public long run(int operations) {
+      long size = 0;
+      for (int i = 0; i < operations; ++i) {
+        size += Player.PlayerListSerializer.fromString(encodedPlayers, destination, events).size();
+      }
+      return size;
+    }
+  }
+
+  private static class PlayersToBytes extends Benchmark {
+
+    private final List<Player> players;
+
+    PlayersToBytes(int playerCount) {
+      super("PlayerListBinarySerializer.toBytes");
+      param("players", playerCount);
+      players = createGame(0, playerCount).getPlayers();
+      metric("bytesPerPlayer",
+          ((double) Player.PlayerListBinarySerializer.toBytes(players).length) / playerCount);
+    }
+
+    public long run(int operations) {
+      long length = 0;
+      for (int i = 0; i < operations; ++i) {
+        length += Player.PlayerListBinarySerializer.toBytes(players).length;
+      }
+      return length;
+    }
+  }
+
+  private static class PlayersFromBytes extends Benchmark {
+
+    private final byte[] encodedPlayers;
+    private final Destination destination;
+    private final CountingBroadcaster events = new CountingBroadcaster();
+
+    PlayersFromBytes(int playerCount) {
+      super("PlayerListBinarySerializer.fromBytes");
+      param("players", playerCount);
+      GameState state = createGame(0, playerCount);
+      encodedPlayers = Player.PlayerListBinarySerializer.toBytes(state.getPlayers());
+      destination = state.getDestination();
+    }
+
+    public long run(int operations) {
+      long size = 0;
+      for (int i = 0; i < operations; ++i) {
+        size += Player.PlayerListBinarySerializer.fromBytes(encodedPlayers, destination, events)
+            .size();
+      }
+      return size;
+    }
+  }
+
+  /**
+   * @return The length of the string in UTF-8, as sent to the game server.
+   */
+  private static int encodedLength(String string) {
+    try {
+      return string.getBytes("UTF-8").length;
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
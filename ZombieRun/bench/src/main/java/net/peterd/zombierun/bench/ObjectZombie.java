@@ -0,0 +1,136 @@
+package net.peterd.zombierun.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.entity.Player;
+import net.peterd.zombierun.entity.ZombieHorde;
+import net.peterd.zombierun.game.GameEvent;
+import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.util.FloatingPointGeoPoint;
+import net.peterd.zombierun.util.GeoPointUtil;
+
+/**
+ * A zombie as the game kept them before {@link ZombieHorde}: one object per zombie, with its own
+ * references to the players and the broadcaster, advanced with haversine distances and a
+ * FloatingPointGeoPoint allocated for every step.  Kept, without its serialization, so that the
+ * benchmarks can compare the horde's memory and speed with the layout it replaced.
+ */
+class ObjectZombie {
+
+  private final int id;
+  private double lat;
+  private double lon;
+  private final List<Player> players;
+  private final double zombieSpeedMetersPerSecond;
+  private final GameEventBroadcaster gameEventBroadcaster;
+  private boolean isNoticingPlayer = false;
+  private boolean isNearPlayer = false;
+  private Player playerZombieIsChasing;
+
+  private Player nearestPlayer = null;
+  private double distanceToNearestPlayer = 0;
+
+  ObjectZombie(int id,
+      double lat,
+      double lon,
+      List<Player> players,
+      double zombieSpeedMetersPerSecond,
+      GameEventBroadcaster gameEventBroadcaster) {
+    this.id = id;
+    this.lat = lat;
+    this.lon = lon;
+    this.players = players;
+    this.zombieSpeedMetersPerSecond = zombieSpeedMetersPerSecond;
+    this.gameEventBroadcaster = gameEventBroadcaster;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public double getLatitude() {
+    return lat;
+  }
+
+  public double getLongitude() {
+    return lon;
+  }
+
+  public void advance(long time, TimeUnit timeUnit) {
+    computeNearestPlayer();
+
+    long intervalMs = Math.min(timeUnit.toMillis(time), Constants.gameUpdateDelayMs);
+    double movementDistanceMeters = zombieSpeedMetersPerSecond * (((float) intervalMs) / 1000);
+
+    if (hasNoticedPlayer()) {
+      movementDistanceMeters = Math.min(movementDistanceMeters, distanceToNearestPlayer);
+      moveTowardPlayer(playerZombieIsChasing, movementDistanceMeters);
+      if (!isNoticingPlayer) {
+        gameEventBroadcaster.broadcastEvent(GameEvent.ZOMBIE_NOTICE_PLAYER);
+      }
+      isNoticingPlayer = true;
+    } else {
+      meander(movementDistanceMeters);
+      isNoticingPlayer = false;
+    }
+
+    if (playerZombieIsChasing != null &&
+        distanceToNearestPlayer < Constants.zombieNearPlayerDistanceMeters) {
+      if (!isNearPlayer) {
+        gameEventBroadcaster.broadcastEvent(GameEvent.ZOMBIE_NEAR_PLAYER);
+      }
+      isNearPlayer = true;
+    } else {
+      isNearPlayer = false;
+    }
+
+    if (playerZombieIsChasing != null &&
+        distanceToNearestPlayer < Constants.zombieCatchPlayerDistanceMeters) {
+      gameEventBroadcaster.broadcastEvent(GameEvent.ZOMBIE_CATCH_PLAYER);
+    }
+  }
+
+  private void computeNearestPlayer() {
+    distanceToNearestPlayer = Double.MAX_VALUE;
+    for (int i = 0; i < players.size(); ++i) {
+      Player player = players.get(i);
+      double distance = GeoPointUtil.distanceMeters(lat,
+          lon,
+          player.getLatitude(),
+          player.getLongitude());
+      if (distance < distanceToNearestPlayer) {
+        nearestPlayer = player;
+        distanceToNearestPlayer = distance;
+      }
+    }
+  }
+
+  private boolean hasNoticedPlayer() {
+    if (distanceToNearestPlayer < Constants.zombieNoticePlayerDistanceMeters) {
+      playerZombieIsChasing = nearestPlayer;
+      return true;
+    } else {
+      playerZombieIsChasing = null;
+      return false;
+    }
+  }
+
+  private void meander(double movementDistanceMeters) {
+    FloatingPointGeoPoint location =
+        GeoPointUtil.getGeoPointNear(lat, lon, movementDistanceMeters);
+    lat = location.getLatitude();
+    lon = location.getLongitude();
+  }
+
+  private void moveTowardPlayer(Player player, double movementDistanceMeters) {
+    FloatingPointGeoPoint location = GeoPointUtil.geoPointTowardsTarget(lat,
+        lon,
+        player.getLatitude(),
+        player.getLongitude(),
+        movementDistanceMeters);
+    lat = location.getLatitude();
+    lon = location.getLongitude();
+  }
+}
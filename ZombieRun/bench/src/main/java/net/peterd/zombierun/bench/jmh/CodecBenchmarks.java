@@ -0,0 +1,171 @@
+package net.peterd.zombierun.bench.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.peterd.zombierun.bench.GameCoreBenchmarks;
+import net.peterd.zombierun.entity.Destination;
+import net.peterd.zombierun.entity.HordeReconciler;
+import net.peterd.zombierun.entity.Player;
+import net.peterd.zombierun.entity.ZombieHorde;
+import net.peterd.zombierun.game.GameState;
+import net.peterd.zombierun.util.VarintWriter;
+
+/**
+ * The serializers used to hand game state between devices, as measured by the serializer and
+ * reconciler benchmarks of {@link GameCoreBenchmarks}.  One operation is one horde, or one list of
+ * players, encoded or decoded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmarks {
+
+  @State(Scope.Thread)
+  public static class HordeState {
+
+    @Param({ "150", "10000" })
+    public int zombies;
+
+    ZombieHorde horde;
+    String text;
+    byte[] bytes;
+    final VarintWriter writer = new VarintWriter();
+    // Decoded into, cleared before each decode.
+    ZombieHorde decoded;
+
+    // Alternating snapshots of a moving horde, and participants' hordes that already hold the
+    // same zombies, in the text and binary forms.
+    final String[] textSnapshots = new String[2];
+    final String[] binarySnapshots = new String[2];
+    HordeReconciler textReconciler;
+    HordeReconciler binaryReconciler;
+    int snapshot = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      horde = GameCoreBenchmarks.createGame(zombies, 1).getZombies();
+      text = ZombieHorde.ZombieListSerializer.toString(horde);
+      bytes = ZombieHorde.ZombieListBinarySerializer.toBytes(horde);
+      decoded = GameCoreBenchmarks.createGame(0, 1).getZombies();
+
+      ZombieHorde moving = GameCoreBenchmarks.createGame(zombies, 1).getZombies();
+      for (int i = 0; i < textSnapshots.length; ++i) {
+        moving.advance(1, TimeUnit.SECONDS, new GameCoreBenchmarks.CountingBroadcaster());
+        textSnapshots[i] = ZombieHorde.ZombieListSerializer.toString(moving);
+        binarySnapshots[i] = ZombieHorde.ZombieListBinarySerializer.toEncodedString(moving);
+      }
+      textReconciler =
+          new HordeReconciler(GameCoreBenchmarks.createGame(zombies, 1).getZombies());
+      binaryReconciler =
+          new HordeReconciler(GameCoreBenchmarks.createGame(zombies, 1).getZombies());
+    }
+
+    int nextSnapshot() {
+      snapshot = (snapshot + 1) % textSnapshots.length;
+      return snapshot;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class PlayersState {
+
+    @Param({ "8" })
+    public int players;
+
+    List<Player> list;
+    Destination destination;
+    String text;
+    byte[] bytes;
+    final GameCoreBenchmarks.CountingBroadcaster events =
+        new GameCoreBenchmarks.CountingBroadcaster();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      GameState game = GameCoreBenchmarks.createGame(0, players);
+      list = game.getPlayers();
+      destination = game.getDestination();
+      text = Player.PlayerListSerializer.toString(list);
+      bytes = Player.PlayerListBinarySerializer.toBytes(list);
+    }
+  }
+
+  @Benchmark
+  public String zombiesToString(HordeState state) {
+    return ZombieHorde.ZombieListSerializer.toString(state.horde);
+  }
+
+  @Benchmark
+  public int zombiesFromString(HordeState state) {
+    ZombieHorde decoded = state.decoded;
+    decoded.clear();
+    ZombieHorde.ZombieListSerializer.fromString(state.text, decoded);
+    return decoded.size();
+  }
+
+  @Benchmark
+  public int zombiesWrite(HordeState state) {
+    VarintWriter writer = state.writer;
+    writer.reset();
+    ZombieHorde.ZombieListBinarySerializer.write(state.horde, writer);
+    return writer.size();
+  }
+
+  @Benchmark
+  public int zombiesFromBytes(HordeState state) {
+    ZombieHorde decoded = state.decoded;
+    decoded.clear();
+    ZombieHorde.ZombieListBinarySerializer.fromBytes(state.bytes, decoded);
+    return decoded.size();
+  }
+
+  @Benchmark
+  public int reconcileText(HordeState state) {
+    HordeReconciler reconciler = state.textReconciler;
+    reconciler.reconcile(state.textSnapshots[state.nextSnapshot()]);
+    return reconciler.getAdded() + reconciler.getRemoved();
+  }
+
+  @Benchmark
+  public int reconcileBinary(HordeState state) {
+    HordeReconciler reconciler = state.binaryReconciler;
+    reconciler.reconcile(state.binarySnapshots[state.nextSnapshot()]);
+    return reconciler.getAdded() + reconciler.getRemoved();
+  }
+
+  @Benchmark
+  public String playersToString(PlayersState state) {
+    return Player.PlayerListSerializer.toString(state.list);
+  }
+
+  @Benchmark
+  public List<Player> playersFromString(PlayersState state) {
+    return Player.PlayerListSerializer.fromString(state.text, state.destination, state.events);
+  }
+
+  @Benchmark
+  public byte[] playersToBytes(PlayersState state) {
+    return Player.PlayerListBinarySerializer.toBytes(state.list);
+  }
+
+  @Benchmark
+  public List<Player> playersFromBytes(PlayersState state) {
+    return Player.PlayerListBinarySerializer.fromBytes(state.bytes, state.destination,
+        state.events);
+  }
+}
@@ -0,0 +1,78 @@
+package net.peterd.zombierun.bench.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.peterd.zombierun.bench.GameCoreBenchmarks;
+import net.peterd.zombierun.entity.Player;
+import net.peterd.zombierun.entity.ZombieHorde;
+import net.peterd.zombierun.game.GameState;
+
+/**
+ * Advancing the horde, as measured by the GameState.AdvanceZombies and ZombieHorde.advance
+ * benchmarks of {@link GameCoreBenchmarks}.  One operation is one tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HordeBenchmarks {
+
+  @Param({ "150", "10000", "100000" })
+  public int zombies;
+
+  @Param({ "1", "8" })
+  public int players;
+
+  private final GameCoreBenchmarks.CountingBroadcaster broadcaster =
+      new GameCoreBenchmarks.CountingBroadcaster();
+  private GameState game;
+  private ZombieHorde unparkedZombies;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    game = GameCoreBenchmarks.createGame(zombies, players);
+    unparkedZombies = GameCoreBenchmarks.createGame(zombies, players).getZombies();
+    unparkedZombies.setMaxParkedMs(0);
+  }
+
+  /**
+   * The players walk a little, then the horde is advanced, far-off zombies parked and all.
+   */
+  @Benchmark
+  public long advanceZombies() {
+    GameState game = this.game;
+    List<Player> players = game.getPlayers();
+    for (int i = 0; i < players.size(); ++i) {
+      Player player = players.get(i);
+      player.setLocation(player.getLatitude() + 0.000001, player.getLongitude() + 0.000001);
+    }
+    game.AdvanceZombies(GameCoreBenchmarks.tickMs, broadcaster);
+    return broadcaster.events + game.getZombies().getZombiesAdvancedLastTick();
+  }
+
+  /**
+   * The horde's own cost, with nothing parked and the players standing still.
+   */
+  @Benchmark
+  public long advanceEveryZombie() {
+    ZombieHorde zombies = unparkedZombies;
+    zombies.advance(GameCoreBenchmarks.tickMs, TimeUnit.MILLISECONDS, broadcaster);
+    return broadcaster.events + zombies.getZombiesAdvancedLastTick();
+  }
+}
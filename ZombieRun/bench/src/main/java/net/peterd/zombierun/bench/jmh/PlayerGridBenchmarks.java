@@ -0,0 +1,127 @@
+package net.peterd.zombierun.bench.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.peterd.zombierun.bench.GameCoreBenchmarks;
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.entity.PlayerGrid;
+import net.peterd.zombierun.game.GameState;
+import net.peterd.zombierun.util.DistanceMetric;
+import net.peterd.zombierun.util.DistanceMetrics;
+import net.peterd.zombierun.util.GameRandom;
+import net.peterd.zombierun.util.LocalFrame;
+
+/**
+ * Finding the players near a zombie: the player grid's lookup, which every zombie makes on every
+ * advance, and the distance metrics measured by the DistanceMetric benchmarks of
+ * {@link GameCoreBenchmarks}.  One operation is one lookup, or one distance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerGridBenchmarks {
+
+  private static final int points = 1024;
+
+  /**
+   * Zombie positions scattered over the game, against a grid of its players.
+   */
+  @State(Scope.Thread)
+  public static class GridState {
+
+    @Param({ "1", "8", "32" })
+    public int players;
+
+    final double[] easts = new double[points];
+    final double[] norths = new double[points];
+    final double[] distanceMeters = new double[1];
+    PlayerGrid grid;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      GameState game = GameCoreBenchmarks.createGame(0, players);
+      grid = new PlayerGrid(game.getPlayers());
+      grid.setLocalFrame(game.getLocalFrame());
+      grid.refresh();
+      GameRandom random = new GameRandom(points);
+      for (int i = 0; i < points; ++i) {
+        easts[i] = (random.nextDouble() - 0.5) * 2 * GameCoreBenchmarks.hordeRadiusMeters;
+        norths[i] = (random.nextDouble() - 0.5) * 2 * GameCoreBenchmarks.hordeRadiusMeters;
+      }
+    }
+  }
+
+  /**
+   * Pairs of nearby points, a few meters to a few hundred meters apart, around the start.
+   */
+  @State(Scope.Thread)
+  public static class MetricState {
+
+    @Param({ "HAVERSINE", "EQUIRECTANGULAR", "SQUARED_PLANAR" })
+    public String metric;
+
+    final double[] aLats = new double[points];
+    final double[] aLons = new double[points];
+    final double[] bLats = new double[points];
+    final double[] bLons = new double[points];
+    DistanceMetric distanceMetric;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      LocalFrame frame = GameCoreBenchmarks.createGame(0, 0).getLocalFrame();
+      distanceMetric = DistanceMetrics.create(DistanceMetrics.Type.valueOf(metric),
+          frame.getOriginLatitude());
+      GameRandom random = new GameRandom(points);
+      for (int i = 0; i < points; ++i) {
+        aLats[i] = frame.getOriginLatitude() + (random.nextDouble() - 0.5) * 0.02;
+        aLons[i] = frame.getOriginLongitude() + (random.nextDouble() - 0.5) * 0.02;
+        bLats[i] = aLats[i] + (random.nextDouble() - 0.5) * 0.004;
+        bLons[i] = aLons[i] + (random.nextDouble() - 0.5) * 0.004;
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(points)
+  public long nearestPlayerWithin(GridState state) {
+    PlayerGrid grid = state.grid;
+    double[] easts = state.easts;
+    double[] norths = state.norths;
+    long found = 0;
+    for (int i = 0; i < points; ++i) {
+      found += grid.nearestPlayerWithin(easts[i],
+          norths[i],
+          Constants.zombieNoticePlayerDistanceMeters,
+          state.distanceMeters);
+    }
+    return found;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(points)
+  public double comparableDistance(MetricState state) {
+    DistanceMetric metric = state.distanceMetric;
+    double sum = 0;
+    for (int i = 0; i < points; ++i) {
+      sum += metric.comparableDistance(state.aLats[i], state.aLons[i], state.bLats[i],
+          state.bLons[i]);
+    }
+    return sum;
+  }
+}
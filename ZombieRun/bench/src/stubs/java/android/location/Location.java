@@ -0,0 +1,20 @@
+package android.location;
+
+/**
+ * Compile-time stand-in for the Android class of the same name; see android.os.Bundle in this
+ * source tree.
+ */
+public class Location {
+
+  public Location(String provider) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public double getLatitude() {
+    throw new RuntimeException("Stub!");
+  }
+
+  public double getLongitude() {
+    throw new RuntimeException("Stub!");
+  }
+}
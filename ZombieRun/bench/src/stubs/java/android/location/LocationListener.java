@@ -0,0 +1,18 @@
+package android.location;
+
+import android.os.Bundle;
+
+/**
+ * Compile-time stand-in for the Android interface of the same name; see android.os.Bundle in this
+ * source tree.
+ */
+public interface LocationListener {
+
+  public void onLocationChanged(Location location);
+
+  public void onProviderDisabled(String provider);
+
+  public void onProviderEnabled(String provider);
+
+  public void onStatusChanged(String provider, int status, Bundle extras);
+}
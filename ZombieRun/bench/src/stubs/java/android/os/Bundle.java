@@ -0,0 +1,49 @@
+package android.os;
+
+/**
+ * Compile-time stand-in for the Android class of the same name, declaring only what the game core
+ * uses, so that the core builds on a plain JVM.  Like the SDK's android.jar, every method throws;
+ * nothing benchmarked or tested touches a Bundle.
+ */
+public final class Bundle {
+
+  public Bundle() {
+    throw new RuntimeException("Stub!");
+  }
+
+  public boolean containsKey(String key) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public void putBoolean(String key, boolean value) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public void putDouble(String key, double value) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public void putString(String key, String value) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public void putByteArray(String key, byte[] value) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public boolean getBoolean(String key) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public double getDouble(String key) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public String getString(String key) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public byte[] getByteArray(String key) {
+    throw new RuntimeException("Stub!");
+  }
+}
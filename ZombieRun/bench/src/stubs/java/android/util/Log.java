@@ -0,0 +1,18 @@
+package android.util;
+
+/**
+ * Compile-time stand-in for the Android class of the same name; see android.os.Bundle in this
+ * source tree.  net.peterd.zombierun.util.Log only calls it when running on Android.
+ */
+public final class Log {
+
+  private Log() { }
+
+  public static int println(int priority, String tag, String msg) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public static String getStackTraceString(Throwable tr) {
+    throw new RuntimeException("Stub!");
+  }
+}
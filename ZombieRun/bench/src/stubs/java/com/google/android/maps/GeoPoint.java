@@ -0,0 +1,20 @@
+package com.google.android.maps;
+
+/**
+ * Compile-time stand-in for the Maps add-on class of the same name; see android.os.Bundle in this
+ * source tree.
+ */
+public class GeoPoint {
+
+  public GeoPoint(int latitudeE6, int longitudeE6) {
+    throw new RuntimeException("Stub!");
+  }
+
+  public int getLatitudeE6() {
+    throw new RuntimeException("Stub!");
+  }
+
+  public int getLongitudeE6() {
+    throw new RuntimeException("Stub!");
+  }
+}
@@ -0,0 +1,16 @@
+package net.peterd.zombierun;
+
+/**
+ * Stand-in for the R class aapt generates from the resources, with only the ids the game core
+ * refers to.  Their values are never looked up off Android.
+ */
+public final class R {
+
+  public static final class string {
+    public static final int menu_pause = 0x7f050001;
+    public static final int menu_stop = 0x7f050002;
+    public static final int menu_my_location = 0x7f050003;
+    public static final int menu_map_view = 0x7f050004;
+    public static final int menu_satellite_view = 0x7f050005;
+  }
+}
@@ -0,0 +1,141 @@
+package net.peterd.zombierun.entity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.peterd.zombierun.game.GameEvent;
+import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.util.FloatingPointGeoPoint;
+import net.peterd.zombierun.util.GameRandom;
+import net.peterd.zombierun.util.LocalFrame;
+
+/**
+ * The horde is advanced on every tick of every game, so once it has sized its scratch space a tick
+ * must not allocate at all.  Counts the bytes the ticking thread allocates over many steady-state
+ * ticks, with zombies meandering, parked, chasing and catching players.
+ */
+public class ZombieHordeAllocationTest {
+
+  private static final int zombieCount = 5000;
+  private static final int playerCount = 8;
+  private static final double hordeRadiusMeters = 1000;
+  private static final long tickMs = 100;
+  private static final int warmupTicks = 3000;
+  private static final int measuredTicks = 500;
+
+  private com.sun.management.ThreadMXBean threads;
+  private long threadId;
+  private final GameEventBroadcaster broadcaster = new GameEventBroadcaster() {
+    public void broadcastEvent(GameEvent event) {
+      events++;
+    }
+  };
+  private long events = 0;
+
+  @Before
+  public void setUp() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    this.threads = (com.sun.management.ThreadMXBean) threads;
+    assumeTrue(this.threads.isThreadAllocatedMemorySupported());
+    this.threads.setThreadAllocatedMemoryEnabled(true);
+    threadId = Thread.currentThread().getId();
+  }
+
+  @Test
+  public void steadyStateTickDoesNotAllocate() {
+    ZombieHorde zombies = createHorde();
+    List<Player> players = zombies.getPlayers();
+    for (int i = 0; i < warmupTicks; ++i) {
+      tick(zombies, players);
+    }
+
+    long overheadBytes = measurementOverheadBytes();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < measuredTicks; ++i) {
+      tick(zombies, players);
+    }
+    long allocatedBytes = threads.getThreadAllocatedBytes(threadId) - before - overheadBytes;
+
+    assertEquals("Bytes allocated over " + measuredTicks + " ticks", 0, allocatedBytes);
+    // Make sure the ticks did the work that matters: zombies noticed and chased players.
+    assertTrue(events > 0);
+  }
+
+  @Test
+  public void steadyStateTickWithoutParkingDoesNotAllocate() {
+    ZombieHorde zombies = createHorde();
+    zombies.setMaxParkedMs(0);
+    List<Player> players = zombies.getPlayers();
+    for (int i = 0; i < warmupTicks; ++i) {
+      tick(zombies, players);
+    }
+
+    long overheadBytes = measurementOverheadBytes();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < measuredTicks; ++i) {
+      tick(zombies, players);
+    }
+    long allocatedBytes = threads.getThreadAllocatedBytes(threadId) - before - overheadBytes;
+
+    assertEquals("Bytes allocated over " + measuredTicks + " ticks", 0, allocatedBytes);
+    assertEquals(zombieCount, zombies.getZombiesAdvancedLastTick());
+  }
+
+  /**
+   * Zombies scattered around players that walk north-east, so that some zombies are always near
+   * enough to chase them.
+   */
+  private static ZombieHorde createHorde() {
+    GameRandom random = new GameRandom(20091L);
+    LocalFrame frame = new LocalFrame(37.7749, -122.4194);
+    List<Player> players = new ArrayList<Player>();
+    for (int i = 0; i < playerCount; ++i) {
+      double east = (random.nextDouble() - 0.5) * hordeRadiusMeters;
+      double north = (random.nextDouble() - 0.5) * hordeRadiusMeters;
+      players.add(new Player(null,
+          i,
+          new FloatingPointGeoPoint(frame.toLatitude(north), frame.toLongitude(east)),
+          null));
+    }
+
+    ZombieHorde zombies = new ZombieHorde(players, zombieCount);
+    zombies.setLocalFrame(frame);
+    zombies.setRandomSeed(random.nextLong());
+    for (int i = 0; i < zombieCount; ++i) {
+      double radius = hordeRadiusMeters * Math.sqrt(random.nextDouble());
+      double bearing = random.nextDouble() * 2 * Math.PI;
+      zombies.addInFrame(i, radius * Math.cos(bearing), radius * Math.sin(bearing), -1, 1.5);
+    }
+    return zombies;
+  }
+
+  private void tick(ZombieHorde zombies, List<Player> players) {
+    for (int i = 0; i < players.size(); ++i) {
+      Player player = players.get(i);
+      player.setLocation(player.getLatitude() + 0.000001, player.getLongitude() + 0.000001);
+    }
+    zombies.advance(tickMs, TimeUnit.MILLISECONDS, broadcaster);
+  }
+
+  /**
+   * @return What reading the allocation counter allocates itself, if anything.
+   */
+  private long measurementOverheadBytes() {
+    long overheadBytes = Long.MAX_VALUE;
+    for (int i = 0; i < 10; ++i) {
+      long before = threads.getThreadAllocatedBytes(threadId);
+      overheadBytes = Math.min(overheadBytes, threads.getThreadAllocatedBytes(threadId) - before);
+    }
+    return overheadBytes;
+  }
+}
@@ -1,6 +1,7 @@
 package net.peterd.zombierun.activity;
 
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.peterd.zombierun.NotImplementedException;
@@ -25,6 +26,13 @@ import com.google.android.maps.MapView;
 
 public abstract class Game extends GameMapActivity implements GameEventListener {
 
+  private static final EnumSet<GameEvent> subscribedGameEvents = EnumSet.of(GameEvent.GAME_WIN,
+      GameEvent.GAME_LOSE,
+      GameEvent.GAME_QUIT,
+      GameEvent.ZOMBIE_NEAR_PLAYER,
+      GameEvent.ZOMBIE_CATCH_PLAYER,
+      GameEvent.PLAYER_REACHES_DESTINATION);
+
   protected Drawable zombieMeanderingDrawable;
   protected Drawable zombieNoticingPlayerDrawable;
   protected Drawable destinationDrawable;
@@ -76,7 +84,7 @@ public abstract class Game extends GameMapActivity implements GameEventListener
   @Override
   protected void onResume() {
     super.onResume();
-    service.getEventHandler().addListener(this);
+    service.getEventHandler().addListener(this, subscribedGameEvents);
   }
 
   @Override
@@ -111,7 +119,7 @@ public abstract class Game extends GameMapActivity implements GameEventListener
             map,
             zombieMeanderingDrawable,
             zombieNoticingPlayerDrawable);
-    service.getEventHandler().addListener(overlay);
+    service.getEventHandler().addListener(overlay, ZombieOverlay.subscribedGameEvents);
     map.getOverlays().add(overlay);
     map.postInvalidate();
   }
@@ -173,9 +181,9 @@ public abstract class Game extends GameMapActivity implements GameEventListener
     } else if (event == GameEvent.ZOMBIE_NEAR_PLAYER) {
       onZombieNearPlayer(service.getGameState().getThisDevicePlayer());
     } else if (event == GameEvent.ZOMBIE_CATCH_PLAYER) {
-      service.getEventHandler().broadcastEvent(GameEvent.GAME_LOSE);
+      service.getEventDispatcher().broadcastEvent(GameEvent.GAME_LOSE);
     } else if (event == GameEvent.PLAYER_REACHES_DESTINATION) {
-      service.getEventHandler().broadcastEvent(GameEvent.GAME_WIN);
+      service.getEventDispatcher().broadcastEvent(GameEvent.GAME_WIN);
     }
   }
 }
@@ -6,13 +6,41 @@ public class Constants {
   public static final float minDeviceAccuracyMeters = 120.0f;
   public static final int defaultMapZoomLevel = 16;
   public static final int gameUpdateDelayMs = 500;
+  // The most fixed timesteps a single run of the game loop will simulate to catch up after a stall.
+  public static final int maxCatchUpSubsteps = 4;
+  // How long a run of the game loop may take before the loop starts shedding work.
+  public static final long gameTickBudgetMs = 100;
+  // Consecutive runs within budget before the loop sheds one level less work.
+  public static final int ticksWithinBudgetBeforeRecovery = 20;
+  // How much longer far-off zombies may be parked at the heaviest level of shedding.
+  public static final int overloadedMaxParkedMsMultiplier = 4;
+  // Events the simulation can raise before the UI thread gets around to dispatching them.
+  public static final int gameEventQueueCapacity = 256;
+  // The resolution, and number of buckets, of the timer wheel a GameHost schedules its games on.
+  public static final long gameHostTimerTickMs = 10;
+  public static final int gameHostTimerWheelSize = 512;
   public static final float gameTargetDistanceMeters = 250;
   public static final long radiusOfEarthMeters = 6378100;
   public static final int multiPlayerGameSynchronizationIntervalMs = 5000;
+  // Bounds on the adaptive multiplayer sync interval, and on its backoff after failed requests.
+  public static final int minSynchronizationIntervalMs = 1000;
+  public static final int maxSynchronizationIntervalMs = 30000;
+  public static final int maxSynchronizationBackoffMs = 60000;
+  // Games sync at the maximum interval when no zombie is within this distance of the player.
+  public static final float relaxedSynchronizationDistanceMeters = 1000f;
+  // Games sync often enough that the player moves no more than this in between.
+  public static final float maxPlayerMovementBetweenSynchronizationsMeters = 20f;
+  // Hordes from other devices older than this are only fast-forwarded by this much.
+  public static final long maxSnapshotFastForwardMs = 10000;
+  // Zombies that have moved less than this since they were last uploaded are left out of deltas.
+  public static final float hordeSyncPositionQuantumMeters = 1f;
+  public static final int hordeSyncKeyframeInterval = 12;
 
   // Const Zombie settings
   public static final float zombieSpeedPercentageDeviationFromMean = 0.2f;
   public static final int maxZombieCount = 150;
+  // Hordes are only split across worker threads in chunks of at least this many zombies.
+  public static final int minZombiesPerParallelAdvanceChunk = 1024;
   public static final float minZombieDistanceFromStartingPointMeters = 100f;
   public static final float maxZombieClusterSizeMeters = 10f;
   public static final int maxZombieClusterSize = 3;
@@ -21,6 +49,17 @@ public class Constants {
   public static final float zombieNearPlayerDistanceMeters = 50f;
   public static final int onZombieNearPlayerVibrationTimeMs = 250;
   public static final float zombieCatchPlayerDistanceMeters = 2f;
+  // Faster than any player on foot is going to move; used to bound how soon a zombie could
+  // possibly reach a player.
+  public static final float maxPlayerSpeedMetersPerSecond = 12f;
+  // Zombies with no player within this distance are in the far level-of-detail tier.
+  public static final float zombieFarTierDistanceMeters = 500f;
+  // The longest a zombie outside the notice distance may be parked without being advanced.
+  public static final long maxZombieParkedMs = 4000;
+  // How fast a zombie a snapshot from another device has put somewhere else than it was predicted
+  // to be is moved there, on top of its own movement, and how far off it must be to jump instead.
+  public static final float maxZombieCorrectionMetersPerSecond = 3f;
+  public static final float zombieCorrectionSnapDistanceMeters = 50f;
   public static final int onGameEndVibrationTimeMs = 2000;
   
   public static final float reachDestinationTestDistanceMeters = 30f;
@@ -3,6 +3,16 @@ package net.peterd.zombierun.constants;
 public class MultiplayerConstants {
   public static final String multiplayerBaseUrl = "http://zombie-run-game-server.appspot.com";
   // public static final String multiplayerBaseUrl = "http://gameserver.zrli.com";
+  public static final int connectTimeoutMs = 10000;
+  public static final int readTimeoutMs = 20000;
+  // Gzip request bodies of at least minCompressedRequestBytes.  Only for a game server that
+  // decodes Content-Encoding: gzip requests; responses are always accepted gzipped.
+  public static final boolean compressRequestBodies = false;
+  public static final int minCompressedRequestBytes = 1024;
+  // Enough for a game's put and fetch to be in flight together.
+  public static final int serverRequestThreads = 2;
+  // Requests the server's clock offset is estimated from.
+  public static final int serverClockSamples = 8;
 
   public enum MultiplayerUrls {
     CREATE_GAME("/game/create"),
@@ -27,6 +37,8 @@ public class MultiplayerConstants {
     PLAYER_ID("pid"),
     PLAYER_DATA("pd"),
     ZOMBIES_DATA("z"),
+    // The sequence of the latest horde upload a participant has applied.
+    ZOMBIES_ACK("za"),
     SECRET_KEY("s");
     
     private final String param;
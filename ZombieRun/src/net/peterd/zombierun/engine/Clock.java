@@ -0,0 +1,14 @@
+package net.peterd.zombierun.engine;
+
+/**
+ * A source of game time, so that the engine can run against the wall clock, a sped-up clock or a
+ * purely virtual one.
+ */
+public interface Clock {
+
+  /**
+   * @return The current time in milliseconds.  Must never go backwards; only differences between
+   *    readings are meaningful.
+   */
+  public long currentTimeMillis();
+}
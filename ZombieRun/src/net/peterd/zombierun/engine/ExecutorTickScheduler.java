@@ -0,0 +1,132 @@
+package net.peterd.zombierun.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TickScheduler} that runs tasks in real time on a {@link ScheduledExecutorService},
+ * optionally sped up: at a speedup of 100, a task scheduled 500ms out runs after 5ms of wall-clock
+ * time, and the scheduler's clock runs 100 times faster than the wall clock to match.
+ *
+ * Tasks run on the executor's threads; use a single-threaded executor to keep a game's ticks from
+ * overlapping.
+ */
+public class ExecutorTickScheduler implements TickScheduler {
+
+  private final ScheduledExecutorService executor;
+  private final double speedup;
+  private final ScaledClock clock;
+  // Every scheduled run of each task that hasn't run or been cancelled yet.
+  private final Map<Runnable, List<ScheduledRun>> pending =
+      new HashMap<Runnable, List<ScheduledRun>>();
+
+  public ExecutorTickScheduler(ScheduledExecutorService executor) {
+    this(executor, 1);
+  }
+
+  public ExecutorTickScheduler(ScheduledExecutorService executor, double speedup) {
+    if (speedup <= 0) {
+      throw new IllegalArgumentException("speedup must be positive.");
+    }
+    this.executor = executor;
+    this.speedup = speedup;
+    clock = new ScaledClock(speedup);
+  }
+
+  public Clock getClock() {
+    return clock;
+  }
+
+  public void schedule(Runnable task, long delayMs) {
+    long delayNanos = (long) (TimeUnit.MILLISECONDS.toNanos(delayMs) / speedup);
+    // Pending before it's scheduled, so that it can't run, or be cancelled, before it's recorded.
+    ScheduledRun run = new ScheduledRun(task);
+    synchronized (pending) {
+      List<ScheduledRun> runs = pending.get(task);
+      if (runs == null) {
+        runs = new ArrayList<ScheduledRun>(1);
+        pending.put(task, runs);
+      }
+      runs.add(run);
+    }
+    try {
+      run.future = executor.schedule(run, delayNanos, TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      removePending(run);
+      throw e;
+    }
+  }
+
+  public void cancel(Runnable task) {
+    List<ScheduledRun> runs;
+    synchronized (pending) {
+      runs = pending.remove(task);
+    }
+    if (runs == null) {
+      return;
+    }
+    for (int i = 0; i < runs.size(); ++i) {
+      // A run whose future isn't set yet won't run anyway, as it's no longer pending.
+      ScheduledFuture<?> future = runs.get(i).future;
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * @return Whether the run was pending, and so hadn't been cancelled.
+   */
+  private boolean removePending(ScheduledRun run) {
+    synchronized (pending) {
+      List<ScheduledRun> runs = pending.get(run.task);
+      if (runs == null || !runs.remove(run)) {
+        return false;
+      }
+      if (runs.isEmpty()) {
+        pending.remove(run.task);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * One scheduled run of a task, which only runs the task if it's still pending when it's due.
+   */
+  private class ScheduledRun implements Runnable {
+
+    private final Runnable task;
+    private volatile ScheduledFuture<?> future;
+
+    ScheduledRun(Runnable task) {
+      this.task = task;
+    }
+
+    public void run() {
+      if (removePending(this)) {
+        task.run();
+      }
+    }
+  }
+
+  private static class ScaledClock implements Clock {
+
+    private final double speedup;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+
+    public ScaledClock(double speedup) {
+      this.speedup = speedup;
+    }
+
+    public long currentTimeMillis() {
+      return startMillis + (long) ((System.nanoTime() - startNanos) * speedup / 1000000);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package net.peterd.zombierun.engine;
+
+import java.util.EnumSet;
+
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.entity.ZombieHorde;
+import net.peterd.zombierun.game.GameEvent;
+import net.peterd.zombierun.game.GameState;
+import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.service.GameEventListener;
+import net.peterd.zombierun.util.Log;
+
+/**
+ * Runs a game's simulation loop on a fixed timestep of {@link Constants#gameUpdateDelayMs}.  Each
+ * run of the loop adds the time that has passed on the scheduler's clock to an accumulator,
+ * simulates as many whole timesteps as it holds, broadcasts
+ * {@link GameEvent#UPDATED_ZOMBIE_LOCATIONS}, and schedules the next run for when the next
+ * timestep falls due.  Simulation time therefore tracks the clock, rather than falling behind
+ * whenever the scheduler runs late.
+ *
+ * After a stall the loop catches up by at most {@link Constants#maxCatchUpSubsteps} timesteps, and
+ * drops any time beyond that.  When runs take longer than {@link Constants#gameTickBudgetMs}, the
+ * loop sheds work one {@link LoadShedding} level at a time, and recovers a level at a time once
+ * runs have been within budget for a while.
+ *
+ * The engine has no dependency on Android; given an {@link ExecutorTickScheduler} or a
+ * {@link VirtualTickScheduler} it runs on a plain JVM, at or faster than real time.
+ */
+public class GameEngine implements GameEventListener, Runnable {
+
+  public static final EnumSet<GameEvent> subscribedGameEvents = EnumSet.of(GameEvent.GAME_START,
+      GameEvent.GAME_PAUSE,
+      GameEvent.GAME_RESUME,
+      GameEvent.GAME_WIN,
+      GameEvent.GAME_LOSE,
+      GameEvent.GAME_QUIT);
+
+  /**
+   * Work the loop sheds when it runs over budget, in the order it sheds it.
+   */
+  public enum LoadShedding {
+    NONE,
+    // Only broadcast UPDATED_ZOMBIE_LOCATIONS on every other run, so the map redraws less.
+    SKIP_RENDER_NOTIFICATIONS,
+    // Also park far-off zombies for longer; see ZombieHorde#setMaxParkedMs(long).
+    REDUCE_LEVEL_OF_DETAIL;
+
+    private static final LoadShedding[] levels = values();
+  }
+
+  private final GameState state;
+  private final TickScheduler scheduler;
+  private final Clock clock;
+  private final GameEventBroadcaster broadcaster;
+  private final long timestepMs = Constants.gameUpdateDelayMs;
+  private volatile boolean gameActive = true;
+  private volatile boolean running = false;
+  private long lastRunMs;
+  private long accumulatedMs;
+
+  private LoadShedding loadShedding = LoadShedding.NONE;
+  private int runsWithinBudget = 0;
+  private boolean skippedLastRenderNotification = false;
+  private long normalMaxParkedMs;
+
+  private long tickCount = 0;
+  private long zombieUpdateCount = 0;
+  private long overrunCount = 0;
+  private long droppedMs = 0;
+  private long lastRunNanos = 0;
+  private long maxRunNanos = 0;
+
+  public GameEngine(GameState state, TickScheduler scheduler, GameEventBroadcaster broadcaster) {
+    this.state = state;
+    this.scheduler = scheduler;
+    this.clock = scheduler.getClock();
+    this.broadcaster = broadcaster;
+  }
+
+  /**
+   * Run the first timestep now, and keep running until {@link #stop()}.
+   */
+  public void start() {
+    running = true;
+    lastRunMs = clock.currentTimeMillis();
+    accumulatedMs = timestepMs;
+    normalMaxParkedMs = state.getZombies().getMaxParkedMs();
+    run();
+  }
+
+  public void stop() {
+    running = false;
+    scheduler.cancel(this);
+  }
+
+  /**
+   * @return The number of timesteps simulated.
+   */
+  public long getTickCount() {
+    return tickCount;
+  }
+
+  /**
+   * @return The number of times a zombie has been advanced, summed over every timestep.
+   */
+  public long getZombieUpdateCount() {
+    return zombieUpdateCount;
+  }
+
+  /**
+   * @return The number of runs of the loop that took longer than the budget.
+   */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+
+  /**
+   * @return Game time that was never simulated, because the loop had fallen too far behind.
+   */
+  public long getDroppedMs() {
+    return droppedMs;
+  }
+
+  public long getLastRunNanos() {
+    return lastRunNanos;
+  }
+
+  public long getMaxRunNanos() {
+    return maxRunNanos;
+  }
+
+  public LoadShedding getLoadShedding() {
+    return loadShedding;
+  }
+
+  public void receiveEvent(GameEvent event) {
+    if (event == GameEvent.GAME_RESUME ||
+        event == GameEvent.GAME_START) {
+      gameActive = true;
+    } else if (event == GameEvent.GAME_LOSE ||
+        event == GameEvent.GAME_PAUSE ||
+        event == GameEvent.GAME_QUIT ||
+        event == GameEvent.GAME_WIN) {
+      gameActive = false;
+    }
+  }
+
+  public void run() {
+    if (!running) {
+      return;
+    }
+    long startNanos = System.nanoTime();
+    long nowMs = clock.currentTimeMillis();
+    if (gameActive) {
+      accumulatedMs += nowMs - lastRunMs;
+    } else {
+      // Time spent paused isn't simulated.
+      accumulatedMs = 0;
+    }
+    lastRunMs = nowMs;
+
+    int substeps = 0;
+    ZombieHorde zombies = state.getZombies();
+    // Snapshots from other devices are applied to the horde holding its lock.
+    synchronized (zombies) {
+      while (accumulatedMs >= timestepMs && substeps < Constants.maxCatchUpSubsteps) {
+        state.AdvanceZombies(timestepMs, broadcaster);
+        zombieUpdateCount += zombies.getZombiesAdvancedLastTick();
+        accumulatedMs -= timestepMs;
+        tickCount++;
+        substeps++;
+      }
+    }
+    if (accumulatedMs >= timestepMs) {
+      long behindMs = accumulatedMs - accumulatedMs % timestepMs;
+      droppedMs += behindMs;
+      accumulatedMs -= behindMs;
+      Log.w("ZombieRun.GameEngine", "Fell " + behindMs + "ms behind; dropping it.");
+    }
+
+    if (substeps > 0) {
+      // While shedding, only every other run notifies the renderers.
+      if (loadShedding == LoadShedding.NONE || skippedLastRenderNotification) {
+        broadcaster.broadcastEvent(GameEvent.UPDATED_ZOMBIE_LOCATIONS);
+        skippedLastRenderNotification = false;
+      } else {
+        skippedLastRenderNotification = true;
+      }
+    }
+
+    long runNanos = System.nanoTime() - startNanos;
+    lastRunNanos = runNanos;
+    if (runNanos > maxRunNanos) {
+      maxRunNanos = runNanos;
+    }
+    if (substeps > 0) {
+      updateLoadShedding(runNanos);
+    }
+
+    scheduler.schedule(this, timestepMs - accumulatedMs);
+  }
+
+  private void updateLoadShedding(long runNanos) {
+    int level = loadShedding.ordinal();
+    if (runNanos > Constants.gameTickBudgetMs * 1000000) {
+      overrunCount++;
+      runsWithinBudget = 0;
+      if (level + 1 < LoadShedding.levels.length) {
+        setLoadShedding(LoadShedding.levels[level + 1], runNanos);
+      }
+    } else if (level > 0 && ++runsWithinBudget >= Constants.ticksWithinBudgetBeforeRecovery) {
+      runsWithinBudget = 0;
+      setLoadShedding(LoadShedding.levels[level - 1], runNanos);
+    }
+  }
+
+  private void setLoadShedding(LoadShedding loadShedding, long runNanos) {
+    Log.w("ZombieRun.GameEngine", "Last run took " + runNanos / 1000000 + "ms against a budget " +
+        "of " + Constants.gameTickBudgetMs + "ms; load shedding now " + loadShedding + ".");
+    this.loadShedding = loadShedding;
+    ZombieHorde zombies = state.getZombies();
+    if (loadShedding == LoadShedding.REDUCE_LEVEL_OF_DETAIL) {
+      zombies.setMaxParkedMs(normalMaxParkedMs * Constants.overloadedMaxParkedMsMultiplier);
+    } else {
+      zombies.setMaxParkedMs(normalMaxParkedMs);
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package net.peterd.zombierun.engine;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.game.GameState;
+import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.util.Log;
+
+/**
+ * Runs many games in one process.  Every game has its own {@link GameEngine}; the engines are
+ * scheduled on one shared {@link TimerWheel}, driven by a single timer thread, and run on a fixed
+ * pool of worker threads.
+ *
+ * Each game is pinned to one worker, and its engine never has more than one run pending, so a
+ * game's state is only ever touched by one thread at a time and needs no locks.  A game whose tick
+ * throws is stopped and marked failed without affecting the others.  However a game ends, removed
+ * or failed, it's retired once, on its worker, which is when it stops counting against the host.
+ */
+public class GameHost {
+
+  private static final Clock monotonicClock = new Clock() {
+        public long currentTimeMillis() {
+          return System.nanoTime() / 1000000;
+        }
+      };
+
+  private final TimerWheel wheel;
+  private final ExecutorService[] workers;
+  private final int[] gamesPerWorker;
+  private final Thread timerThread;
+  private volatile boolean running = true;
+
+  private final AtomicInteger gameCount = new AtomicInteger();
+  private final AtomicLong totalTicks = new AtomicLong();
+  private final AtomicLong totalZombieUpdates = new AtomicLong();
+  private final long startNanos = System.nanoTime();
+
+  public GameHost(int workerCount) {
+    if (workerCount < 1) {
+      throw new IllegalArgumentException("workerCount must be at least 1.");
+    }
+    wheel = new TimerWheel(monotonicClock,
+        Constants.gameHostTimerTickMs,
+        Constants.gameHostTimerWheelSize);
+    workers = new ExecutorService[workerCount];
+    gamesPerWorker = new int[workerCount];
+    for (int i = 0; i < workerCount; ++i) {
+      workers[i] =
+          Executors.newSingleThreadExecutor(new NamedThreadFactory("ZombieRun.GameHost-" + i));
+    }
+    timerThread = new NamedThreadFactory("ZombieRun.GameHostTimer").newThread(new Runnable() {
+          public void run() {
+            runTimer();
+          }
+        });
+    timerThread.start();
+  }
+
+  private void runTimer() {
+    while (running) {
+      wheel.advance();
+      try {
+        Thread.sleep(wheel.getTickMs());
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Start running a game on the least loaded worker.
+   *
+   * @param broadcaster Receives the game's events, on the game's worker thread.
+   */
+  public HostedGame addGame(GameState state, GameEventBroadcaster broadcaster) {
+    int worker;
+    synchronized (gamesPerWorker) {
+      worker = 0;
+      for (int i = 1; i < gamesPerWorker.length; ++i) {
+        if (gamesPerWorker[i] < gamesPerWorker[worker]) {
+          worker = i;
+        }
+      }
+      gamesPerWorker[worker]++;
+    }
+    final HostedGame game = new HostedGame(state, worker);
+    game.engine = new GameEngine(state, game, broadcaster);
+    gameCount.incrementAndGet();
+    workers[worker].execute(new Runnable() {
+          public void run() {
+            game.start();
+          }
+        });
+    return game;
+  }
+
+  public void removeGame(final HostedGame game) {
+    workers[game.worker].execute(new Runnable() {
+          public void run() {
+            game.retire();
+          }
+        });
+  }
+
+  public void shutDown() {
+    running = false;
+    timerThread.interrupt();
+    for (int i = 0; i < workers.length; ++i) {
+      workers[i].shutdown();
+    }
+  }
+
+  public int getGameCount() {
+    return gameCount.get();
+  }
+
+  public long getTotalTicks() {
+    return totalTicks.get();
+  }
+
+  public long getTotalZombieUpdates() {
+    return totalZombieUpdates.get();
+  }
+
+  /**
+   * @return Zombie updates per second of wall-clock time, over the life of the host.
+   */
+  public double getZombieUpdatesPerSecond() {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    return seconds > 0 ? totalZombieUpdates.get() / seconds : 0;
+  }
+
+  /**
+   * A game running on the host.  Serves as its engine's {@link TickScheduler}, and as its node on
+   * the timer wheel.
+   */
+  public class HostedGame extends TimerWheel.Timeout implements TickScheduler, Runnable {
+
+    private final GameState state;
+    private final int worker;
+    private GameEngine engine;
+    // The engine's next run, if one is scheduled.
+    private volatile Runnable pendingTask = null;
+    private volatile long deadlineMs;
+    private volatile boolean failed = false;
+    // Only touched on the game's worker.
+    private boolean retired = false;
+
+    private volatile long lastTickNanos = 0;
+    private volatile long maxTickNanos = 0;
+    private volatile long totalTickNanos = 0;
+    private volatile long tickCount = 0;
+    private volatile long lastLatenessMs = 0;
+    private volatile long maxLatenessMs = 0;
+
+    private HostedGame(GameState state, int worker) {
+      this.state = state;
+      this.worker = worker;
+    }
+
+    public GameState getState() {
+      return state;
+    }
+
+    public GameEngine getEngine() {
+      return engine;
+    }
+
+    public Clock getClock() {
+      return wheel.getClock();
+    }
+
+    public void schedule(Runnable task, long delayMs) {
+      pendingTask = task;
+      deadlineMs = wheel.getClock().currentTimeMillis() + delayMs;
+      wheel.schedule(this, deadlineMs);
+    }
+
+    public void cancel(Runnable task) {
+      if (pendingTask == task) {
+        pendingTask = null;
+        wheel.cancel(this);
+      }
+    }
+
+    protected void expire() {
+      workers[worker].execute(this);
+    }
+
+    public void run() {
+      Runnable task = pendingTask;
+      pendingTask = null;
+      if (task == null || retired) {
+        return;
+      }
+      long startNanos = System.nanoTime();
+      long latenessMs = startNanos / 1000000 - deadlineMs;
+      long zombieUpdatesBefore = engine.getZombieUpdateCount();
+      long ticksBefore = engine.getTickCount();
+      try {
+        task.run();
+      } catch (Throwable t) {
+        fail(t);
+        return;
+      }
+      long tickNanos = System.nanoTime() - startNanos;
+
+      lastTickNanos = tickNanos;
+      if (tickNanos > maxTickNanos) {
+        maxTickNanos = tickNanos;
+      }
+      totalTickNanos += tickNanos;
+      tickCount++;
+      lastLatenessMs = latenessMs;
+      if (latenessMs > maxLatenessMs) {
+        maxLatenessMs = latenessMs;
+      }
+      totalTicks.addAndGet(engine.getTickCount() - ticksBefore);
+      totalZombieUpdates.addAndGet(engine.getZombieUpdateCount() - zombieUpdatesBefore);
+    }
+
+    /**
+     * Start the game's engine, which runs its first tick.  Only called on the game's worker.
+     */
+    private void start() {
+      if (retired) {
+        // Removed before it started.
+        return;
+      }
+      try {
+        engine.start();
+      } catch (Throwable t) {
+        fail(t);
+      }
+    }
+
+    private void fail(Throwable t) {
+      failed = true;
+      Log.e("ZombieRun.GameHost", "Stopping game after its tick failed.", t);
+      retire();
+    }
+
+    /**
+     * Stop the game and stop counting it against the host and its worker, the first time it's
+     * called.  Only called on the game's worker.
+     */
+    private void retire() {
+      if (retired) {
+        return;
+      }
+      retired = true;
+      try {
+        engine.stop();
+      } catch (Throwable t) {
+        Log.e("ZombieRun.GameHost", "Could not stop game.", t);
+      } finally {
+        pendingTask = null;
+        wheel.cancel(this);
+        synchronized (gamesPerWorker) {
+          gamesPerWorker[worker]--;
+        }
+        gameCount.decrementAndGet();
+      }
+    }
+
+    public boolean isFailed() {
+      return failed;
+    }
+
+    /**
+     * @return How long the game's last run of its loop took.
+     */
+    public long getLastTickNanos() {
+      return lastTickNanos;
+    }
+
+    public long getMaxTickNanos() {
+      return maxTickNanos;
+    }
+
+    public long getMeanTickNanos() {
+      long tickCount = this.tickCount;
+      return tickCount == 0 ? 0 : totalTickNanos / tickCount;
+    }
+
+    /**
+     * @return How long after it was due the game's last run of its loop started.
+     */
+    public long getLastLatenessMs() {
+      return lastLatenessMs;
+    }
+
+    public long getMaxLatenessMs() {
+      return maxLatenessMs;
+    }
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+
+    private final String name;
+
+    public NamedThreadFactory(String name) {
+      this.name = name;
+    }
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
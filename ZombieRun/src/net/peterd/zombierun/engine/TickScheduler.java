@@ -0,0 +1,20 @@
+package net.peterd.zombierun.engine;
+
+/**
+ * Runs tasks after a delay, measured on the scheduler's {@link Clock}.  This is all the engine
+ * needs of its host: an Android Handler, a thread pool or a virtual-time loop.
+ */
+public interface TickScheduler {
+
+  public Clock getClock();
+
+  /**
+   * Run the task once, delayMs from now on this scheduler's clock.
+   */
+  public void schedule(Runnable task, long delayMs);
+
+  /**
+   * Cancel every pending run of the task.
+   */
+  public void cancel(Runnable task);
+}
@@ -0,0 +1,150 @@
+package net.peterd.zombierun.engine;
+
+import java.util.ArrayList;
+
+/**
+ * A hashed timer wheel: a ring of buckets, each covering one tick of tickMs, holding the timeouts
+ * due in that tick (or in the same slot on a later turn of the wheel).  Scheduling and cancelling
+ * are O(1) and O(bucket), and advancing only looks at the buckets the clock has passed, which is
+ * what lets one timer thread drive thousands of games.
+ *
+ * Timeouts are intrusive list nodes, so scheduling doesn't allocate.  A timeout can be scheduled
+ * once at a time.
+ */
+public class TimerWheel {
+
+  /**
+   * Something to be done when its deadline passes.  Subclasses are the wheel's list nodes.
+   */
+  public static abstract class Timeout {
+
+    private long deadlineTick;
+    private Timeout next;
+    private boolean scheduled = false;
+
+    /**
+     * Called on the thread advancing the wheel, which should not be held up; hand real work off
+     * to another thread.
+     */
+    protected abstract void expire();
+  }
+
+  private final Clock clock;
+  private final long tickMs;
+  private final long startMs;
+  private final Timeout[] buckets;
+  private final int mask;
+  // The next tick to expire.
+  private long currentTick = 0;
+  // Only touched by the thread advancing the wheel.
+  private final ArrayList<Timeout> expired = new ArrayList<Timeout>();
+
+  /**
+   * @param wheelSize The number of buckets; rounded up to a power of two.
+   */
+  public TimerWheel(Clock clock, long tickMs, int wheelSize) {
+    if (tickMs < 1) {
+      throw new IllegalArgumentException("tickMs must be at least 1.");
+    }
+    int roundedWheelSize = 1;
+    while (roundedWheelSize < wheelSize) {
+      roundedWheelSize <<= 1;
+    }
+    this.clock = clock;
+    this.tickMs = tickMs;
+    startMs = clock.currentTimeMillis();
+    buckets = new Timeout[roundedWheelSize];
+    mask = roundedWheelSize - 1;
+  }
+
+  public Clock getClock() {
+    return clock;
+  }
+
+  public long getTickMs() {
+    return tickMs;
+  }
+
+  public synchronized void schedule(Timeout timeout, long deadlineMs) {
+    if (timeout.scheduled) {
+      throw new IllegalStateException("Timeout is already scheduled.");
+    }
+    // Never schedule into a tick that has already been expired.
+    long deadlineTick = Math.max((deadlineMs - startMs + tickMs - 1) / tickMs, currentTick);
+    int slot = (int) deadlineTick & mask;
+    timeout.deadlineTick = deadlineTick;
+    timeout.next = buckets[slot];
+    timeout.scheduled = true;
+    buckets[slot] = timeout;
+  }
+
+  /**
+   * @return true if the timeout was scheduled, and now won't expire.
+   */
+  public synchronized boolean cancel(Timeout timeout) {
+    if (!timeout.scheduled) {
+      return false;
+    }
+    int slot = (int) timeout.deadlineTick & mask;
+    Timeout previous = null;
+    for (Timeout current = buckets[slot]; current != null; current = current.next) {
+      if (current == timeout) {
+        if (previous == null) {
+          buckets[slot] = current.next;
+        } else {
+          previous.next = current.next;
+        }
+        timeout.next = null;
+        timeout.scheduled = false;
+        return true;
+      }
+      previous = current;
+    }
+    return false;
+  }
+
+  /**
+   * Expire every timeout whose deadline has passed on the clock.  Only one thread may advance the
+   * wheel.
+   *
+   * @return The number of timeouts expired.
+   */
+  public int advance() {
+    long nowTick = (clock.currentTimeMillis() - startMs) / tickMs;
+    ArrayList<Timeout> expired = this.expired;
+    synchronized (this) {
+      for (; currentTick <= nowTick; ++currentTick) {
+        int slot = (int) currentTick & mask;
+        Timeout previous = null;
+        Timeout current = buckets[slot];
+        while (current != null) {
+          Timeout next = current.next;
+          if (current.deadlineTick <= currentTick) {
+            if (previous == null) {
+              buckets[slot] = next;
+            } else {
+              previous.next = next;
+            }
+            current.scheduled = false;
+            current.next = null;
+            expired.add(current);
+          } else {
+            previous = current;
+          }
+          current = next;
+        }
+      }
+    }
+
+    // Expire outside the lock, so that expiring can schedule again.
+    int expiredCount = expired.size();
+    try {
+      for (int i = 0; i < expiredCount; ++i) {
+        expired.get(i).expire();
+      }
+    } finally {
+      expired.clear();
+    }
+    return expiredCount;
+  }
+}
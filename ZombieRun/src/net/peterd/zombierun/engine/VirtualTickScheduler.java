@@ -0,0 +1,96 @@
+package net.peterd.zombierun.engine;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link TickScheduler} on virtual time: nothing runs until {@link #runFor(long)} or
+ * {@link #runUntil(long)} is called, which then runs the due tasks in time order, back to back,
+ * jumping the clock forward to each one.  A game runs as fast as the CPU allows, and
+ * deterministically.  Not thread safe; drive it from a single thread.
+ */
+public class VirtualTickScheduler implements TickScheduler {
+
+  private final PriorityQueue<ScheduledTask> tasks = new PriorityQueue<ScheduledTask>();
+  private long nowMs;
+  // Breaks ties between tasks due at the same time in the order they were scheduled.
+  private long nextSequenceNumber = 0;
+
+  private final Clock clock = new Clock() {
+        public long currentTimeMillis() {
+          return nowMs;
+        }
+      };
+
+  public VirtualTickScheduler() {
+    this(0);
+  }
+
+  public VirtualTickScheduler(long startMs) {
+    nowMs = startMs;
+  }
+
+  public Clock getClock() {
+    return clock;
+  }
+
+  public void schedule(Runnable task, long delayMs) {
+    tasks.add(new ScheduledTask(task, nowMs + Math.max(delayMs, 0), nextSequenceNumber++));
+  }
+
+  public void cancel(Runnable task) {
+    for (Iterator<ScheduledTask> iterator = tasks.iterator(); iterator.hasNext();) {
+      if (iterator.next().task == task) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Run every task due in the next durationMs of virtual time, including tasks they schedule, and
+   * leave the clock durationMs later.
+   */
+  public void runFor(long durationMs) {
+    runUntil(nowMs + durationMs);
+  }
+
+  /**
+   * Run every task due at or before timeMs, including tasks they schedule, and leave the clock at
+   * timeMs.
+   */
+  public void runUntil(long timeMs) {
+    while (!tasks.isEmpty() && tasks.peek().timeMs <= timeMs) {
+      ScheduledTask next = tasks.poll();
+      nowMs = Math.max(nowMs, next.timeMs);
+      next.task.run();
+    }
+    nowMs = Math.max(nowMs, timeMs);
+  }
+
+  public int getPendingTaskCount() {
+    return tasks.size();
+  }
+
+  private static class ScheduledTask implements Comparable<ScheduledTask> {
+
+    private final Runnable task;
+    private final long timeMs;
+    private final long sequenceNumber;
+
+    public ScheduledTask(Runnable task, long timeMs, long sequenceNumber) {
+      this.task = task;
+      this.timeMs = timeMs;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    public int compareTo(ScheduledTask other) {
+      if (timeMs != other.timeMs) {
+        return timeMs < other.timeMs ? -1 : 1;
+      }
+      if (sequenceNumber != other.sequenceNumber) {
+        return sequenceNumber < other.sequenceNumber ? -1 : 1;
+      }
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,425 @@
+package net.peterd.zombierun.entity;
+
+import net.peterd.zombierun.util.LocalFrame;
+import net.peterd.zombierun.util.Log;
+import net.peterd.zombierun.util.UrlSafeBase64;
+import net.peterd.zombierun.util.VarintReader;
+import net.peterd.zombierun.util.VarintWriter;
+
+/**
+ * Sequence-numbered horde synchronization: the game owner uploads either a keyframe, the whole
+ * horde, or a delta holding only the zombies that have changed, and participants apply them to
+ * their copy of the horde in place.
+ *
+ * Every upload has a sequence number and a base sequence, the latest upload every participant has
+ * acknowledged applying.  A delta holds every zombie that has moved more than a position quantum
+ * since it was last uploaded, plus every zombie uploaded after the base, so a participant that has
+ * applied the base or anything later can apply it, whichever uploads it missed in between.  Such a
+ * participant also has every zombie last uploaded at or before the base exactly as it was
+ * uploaded, so those zombies are sent as small offsets from that.  A participant that can't apply a
+ * delta waits for the next keyframe, which the {@link Encoder} sends periodically, whenever it
+ * doesn't know what the participants have, and whenever the horde has changed size.
+ *
+ * Version 1 is the magic byte 'D', the version, a type byte (0 for a keyframe, 1 for a delta), and
+ * the sequence and base sequence as varints.  A keyframe follows with a
+ * {@link ZombieHorde.ZombieListBinarySerializer} horde.  A delta follows with the horde size and
+ * the number of zombies in the delta as varints, then for each zombie a varint whose bits above
+ * the lowest two are the gap between its index and the previous one's, and whose lowest two bits
+ * say whether its position is relative to the last uploaded one (bit 1) and whether the index of
+ * the player it's chasing follows (bit 0).  Then come that index plus one, if present, as a varint,
+ * and the position east and north of the keyframe's origin, or relative to the last uploaded one,
+ * in whole centimeters as signed varints.
+ */
+public class HordeDelta {
+
+  private static final int magic = 'D';
+  public static final int version = 1;
+  private static final int typeKeyframe = 0;
+  private static final int typeDelta = 1;
+  private static final int flagRelative = 2;
+  private static final int flagChasing = 1;
+  // Starts the text form, which is otherwise unpadded URL-safe base64.
+  public static final char encodedStringPrefix = '#';
+
+  private HordeDelta() { }
+
+  public static boolean isEncodedString(String encodedString) {
+    return encodedString.length() > 0 && encodedString.charAt(0) == encodedStringPrefix;
+  }
+
+  /**
+   * Tracks what has been uploaded of the owner's horde, and encodes the next upload.  Only for
+   * use by one thread at a time, though the horde may be advanced concurrently.
+   */
+  public static class Encoder {
+
+    private final ZombieHorde zombies;
+    private final double positionQuantumCentimeters;
+    private final int keyframeInterval;
+    private final VarintWriter writer = new VarintWriter();
+
+    private long sequence = 0;
+    private int uploadsSinceKeyframe = 0;
+    private int keyframeSize = -1;
+    // Per zombie, what was last uploaded, with positions in centimeters, and in which upload.
+    private long[] sentEasts = new long[0];
+    private long[] sentNorths = new long[0];
+    private int[] sentChasingPlayerIndices = new int[0];
+    private long[] sentAtSequences = new long[0];
+    // Scratch space for the next upload.
+    private long[] nextEasts = new long[0];
+    private long[] nextNorths = new long[0];
+    private int[] nextChasingPlayerIndices = new int[0];
+    private int[] changedIndices = new int[0];
+
+    private int lastZombiesSent = 0;
+    private boolean lastWasKeyframe = false;
+
+    public Encoder(ZombieHorde zombies, float positionQuantumMeters, int keyframeInterval) {
+      this.zombies = zombies;
+      this.positionQuantumCentimeters = positionQuantumMeters * 100;
+      this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * @return The sequence number of the last upload encoded, or 0 if there hasn't been one.
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    public int getLastZombiesSent() {
+      return lastZombiesSent;
+    }
+
+    public boolean wasLastKeyframe() {
+      return lastWasKeyframe;
+    }
+
+    /**
+     * Encode the next upload.
+     *
+     * @param acknowledgedSequence The latest sequence every participant has applied, or 0 if that
+     *    isn't known, which forces a keyframe.
+     */
+    public byte[] encode(long acknowledgedSequence) {
+      ZombieHorde zombies = this.zombies;
+      int size = zombies.size();
+      long sequence = ++this.sequence;
+      boolean keyframe = acknowledgedSequence <= 0 ||
+          acknowledgedSequence >= sequence ||
+          size != keyframeSize ||
+          zombies.getLocalFrame() == null ||
+          uploadsSinceKeyframe >= keyframeInterval;
+
+      // Take each position once, so that what's written and what's remembered as sent agree even
+      // if the horde is being advanced meanwhile.
+      ensureCapacity(size);
+      long[] nextEasts = this.nextEasts;
+      long[] nextNorths = this.nextNorths;
+      int[] nextChasingPlayerIndices = this.nextChasingPlayerIndices;
+      for (int i = 0; i < size; ++i) {
+        nextEasts[i] = Math.round(zombies.getEastMeters(i) * 100);
+        nextNorths[i] = Math.round(zombies.getNorthMeters(i) * 100);
+        nextChasingPlayerIndices[i] = zombies.getChasingPlayerIndex(i);
+      }
+
+      VarintWriter writer = this.writer;
+      writer.reset();
+      writer.writeByte(magic);
+      writer.writeByte(version);
+      writer.writeByte(keyframe ? typeKeyframe : typeDelta);
+      writer.writeVarint(sequence);
+      writer.writeVarint(keyframe ? 0 : acknowledgedSequence);
+      if (keyframe) {
+        ZombieHorde.ZombieListBinarySerializer.write(zombies, writer, size, nextEasts, nextNorths,
+            nextChasingPlayerIndices);
+        for (int i = 0; i < size; ++i) {
+          markSent(i, sequence);
+        }
+        keyframeSize = size;
+        uploadsSinceKeyframe = 0;
+        lastZombiesSent = size;
+      } else {
+        writer.writeVarint(size);
+        double quantumSquared = positionQuantumCentimeters * positionQuantumCentimeters;
+        int[] changedIndices = this.changedIndices;
+        int changed = 0;
+        for (int i = 0; i < size; ++i) {
+          if (hasChanged(i, acknowledgedSequence, quantumSquared)) {
+            changedIndices[changed++] = i;
+          }
+        }
+        writer.writeVarint(changed);
+        int previousIndex = -1;
+        for (int i = 0; i < changed; ++i) {
+          int index = changedIndices[i];
+          boolean relative = sentAtSequences[index] <= acknowledgedSequence;
+          boolean chasing =
+              !relative || nextChasingPlayerIndices[index] != sentChasingPlayerIndices[index];
+          writer.writeVarint(((long) (index - previousIndex - 1) << 2) |
+              (relative ? flagRelative : 0) |
+              (chasing ? flagChasing : 0));
+          if (chasing) {
+            writer.writeVarint(nextChasingPlayerIndices[index] + 1);
+          }
+          if (relative) {
+            writer.writeSignedVarint(nextEasts[index] - sentEasts[index]);
+            writer.writeSignedVarint(nextNorths[index] - sentNorths[index]);
+          } else {
+            writer.writeSignedVarint(nextEasts[index]);
+            writer.writeSignedVarint(nextNorths[index]);
+          }
+          markSent(index, sequence);
+          previousIndex = index;
+        }
+        uploadsSinceKeyframe++;
+        lastZombiesSent = changed;
+      }
+      lastWasKeyframe = keyframe;
+      return writer.toByteArray();
+    }
+
+    public String encodeString(long acknowledgedSequence) {
+      return encodedStringPrefix + UrlSafeBase64.encode(encode(acknowledgedSequence));
+    }
+
+    private boolean hasChanged(int index, long acknowledgedSequence, double quantumSquared) {
+      if (sentAtSequences[index] > acknowledgedSequence ||
+          sentChasingPlayerIndices[index] != nextChasingPlayerIndices[index]) {
+        return true;
+      }
+      double deltaEast = nextEasts[index] - sentEasts[index];
+      double deltaNorth = nextNorths[index] - sentNorths[index];
+      return deltaEast * deltaEast + deltaNorth * deltaNorth > quantumSquared;
+    }
+
+    private void markSent(int index, long sequence) {
+      sentEasts[index] = nextEasts[index];
+      sentNorths[index] = nextNorths[index];
+      sentChasingPlayerIndices[index] = nextChasingPlayerIndices[index];
+      sentAtSequences[index] = sequence;
+    }
+
+    private void ensureCapacity(int size) {
+      if (sentEasts.length >= size) {
+        return;
+      }
+      sentEasts = grow(sentEasts, size);
+      sentNorths = grow(sentNorths, size);
+      sentAtSequences = grow(sentAtSequences, size);
+      int[] grownSentChasingPlayerIndices = new int[size];
+      System.arraycopy(sentChasingPlayerIndices, 0, grownSentChasingPlayerIndices, 0,
+          sentChasingPlayerIndices.length);
+      sentChasingPlayerIndices = grownSentChasingPlayerIndices;
+      nextEasts = new long[size];
+      nextNorths = new long[size];
+      nextChasingPlayerIndices = new int[size];
+      changedIndices = new int[size];
+    }
+  }
+
+  /**
+   * Applies uploads to a participant's horde, and tracks the latest one applied, which the
+   * participant acknowledges to the owner.  Only for use by one thread at a time.
+   */
+  public static class Decoder {
+
+    private final ZombieHorde zombies;
+    private final HordeReconciler reconciler;
+    private byte[] decoded = new byte[0];
+    private long appliedSequence = 0;
+    private long snapshotAgeMs = 0;
+    // The frame uploaded positions are relative to, and per zombie, what was last received, with
+    // positions in centimeters in that frame.
+    private LocalFrame keyframeFrame;
+    private long[] receivedEasts = new long[0];
+    private long[] receivedNorths = new long[0];
+    private int[] receivedChasingPlayerIndices = new int[0];
+
+    public Decoder(ZombieHorde zombies) {
+      this.zombies = zombies;
+      this.reconciler = new HordeReconciler(zombies);
+    }
+
+    /**
+     * Set how old the uploads applied from now on are; see
+     * {@link HordeReconciler#setSnapshotAgeMs(long)}.
+     */
+    public void setSnapshotAgeMs(long snapshotAgeMs) {
+      this.snapshotAgeMs = snapshotAgeMs;
+      reconciler.setSnapshotAgeMs(snapshotAgeMs);
+    }
+
+    /**
+     * @return The sequence of the last upload applied, or 0 if none has been.
+     */
+    public long getAppliedSequence() {
+      return appliedSequence;
+    }
+
+    public boolean applyString(String encodedString) {
+      int length;
+      try {
+        length = UrlSafeBase64.decodedLength(encodedString, 1);
+        if (decoded.length < length) {
+          decoded = new byte[length];
+        }
+        UrlSafeBase64.decode(encodedString, 1, decoded);
+      } catch (IllegalArgumentException e) {
+        Log.e("ZombieRun.HordeDelta", "Could not decode horde upload string.", e);
+        return false;
+      }
+      return apply(new VarintReader(decoded, 0, length));
+    }
+
+    /**
+     * Apply an upload.  Uploads already applied, and deltas whose base hasn't been applied, are
+     * ignored.
+     *
+     * @return true if the upload was applied.
+     */
+    public boolean apply(byte[] bytes) {
+      return apply(new VarintReader(bytes));
+    }
+
+    /**
+     * Apply the upload in length bytes of the array from offset; see {@link #apply(byte[])}.
+     */
+    public boolean apply(byte[] bytes, int offset, int length) {
+      return apply(new VarintReader(bytes, offset, length));
+    }
+
+    private boolean apply(VarintReader reader) {
+      try {
+        int magic = reader.readByte();
+        int version = reader.readByte();
+        if (magic != HordeDelta.magic || version != HordeDelta.version) {
+          Log.e("ZombieRun.HordeDelta", "Unsupported horde upload format, magic " + magic +
+              " version " + version + ".");
+          return false;
+        }
+        int type = reader.readByte();
+        long sequence = reader.readVarint();
+        long baseSequence = reader.readVarint();
+        if (sequence <= appliedSequence) {
+          return false;
+        }
+
+        if (type == typeKeyframe) {
+          applyKeyframe(reader);
+          appliedSequence = sequence;
+          return true;
+        } else if (type != typeDelta) {
+          Log.e("ZombieRun.HordeDelta", "Unknown horde upload type " + type + ".");
+          return false;
+        }
+
+        if (appliedSequence == 0 || baseSequence > appliedSequence) {
+          // Missed the base; wait for a keyframe.
+          return false;
+        }
+        int size = reader.readVarintInt();
+        if (size != zombies.size()) {
+          Log.w("ZombieRun.HordeDelta", "Delta for a horde of " + size + " zombies, but the " +
+              "horde has " + zombies.size() + "; waiting for a keyframe.");
+          return false;
+        }
+        applyDelta(reader, size);
+        appliedSequence = sequence;
+        return true;
+      } catch (IllegalArgumentException e) {
+        // What was received may no longer match what the owner thinks was; start again from the
+        // next keyframe.
+        Log.e("ZombieRun.HordeDelta", "Could not parse horde upload.", e);
+        appliedSequence = 0;
+        return false;
+      }
+    }
+
+    private void applyKeyframe(VarintReader reader) {
+      ZombieHorde zombies = this.zombies;
+      // Deltas address zombies by their index in the keyframe, so the horde has to match it.
+      LocalFrame keyframeFrame = reconciler.reconcile(reader, true);
+      if (keyframeFrame == null) {
+        throw new IllegalArgumentException("Could not parse keyframe horde.");
+      }
+      this.keyframeFrame = keyframeFrame;
+      LocalFrame frame = zombies.getLocalFrame();
+      boolean sameFrame = isSameFrame(keyframeFrame, frame);
+      int size = zombies.size();
+      if (receivedEasts.length < size) {
+        receivedEasts = new long[size];
+        receivedNorths = new long[size];
+        receivedChasingPlayerIndices = new int[size];
+      }
+      // What was received, rather than the horde's positions, which may still be correcting
+      // towards it.
+      for (int i = 0; i < size; ++i) {
+        double eastMeters = reconciler.getSnapshotEastMeters(i);
+        double northMeters = reconciler.getSnapshotNorthMeters(i);
+        if (!sameFrame) {
+          eastMeters = keyframeFrame.toEastMeters(frame.toLongitude(eastMeters));
+          northMeters = keyframeFrame.toNorthMeters(frame.toLatitude(northMeters));
+        }
+        receivedEasts[i] = Math.round(eastMeters * 100);
+        receivedNorths[i] = Math.round(northMeters * 100);
+        receivedChasingPlayerIndices[i] = reconciler.getSnapshotChasingPlayerIndex(i);
+      }
+    }
+
+    private void applyDelta(VarintReader reader, int size) {
+      ZombieHorde zombies = this.zombies;
+      int playerCount = zombies.getPlayers().size();
+      LocalFrame frame = zombies.getLocalFrame();
+      LocalFrame keyframeFrame = this.keyframeFrame;
+      boolean sameFrame = isSameFrame(keyframeFrame, frame);
+      int changed = reader.readVarintInt();
+      int index = -1;
+      for (int i = 0; i < changed; ++i) {
+        long header = reader.readVarint();
+        index += (int) (header >>> 2) + 1;
+        if (index < 0 || index >= size) {
+          throw new IllegalArgumentException("Zombie index " + index + " out of range.");
+        }
+        if ((header & flagChasing) != 0) {
+          receivedChasingPlayerIndices[index] = reader.readVarintInt() - 1;
+        }
+        if ((header & flagRelative) != 0) {
+          receivedEasts[index] += reader.readSignedVarint();
+          receivedNorths[index] += reader.readSignedVarint();
+        } else {
+          receivedEasts[index] = reader.readSignedVarint();
+          receivedNorths[index] = reader.readSignedVarint();
+        }
+
+        double eastMeters = receivedEasts[index] / 100.0;
+        double northMeters = receivedNorths[index] / 100.0;
+        if (!sameFrame) {
+          double lat = keyframeFrame.toLatitude(northMeters);
+          double lon = keyframeFrame.toLongitude(eastMeters);
+          eastMeters = frame.toEastMeters(lon);
+          northMeters = frame.toNorthMeters(lat);
+        }
+        int chasingPlayerIndex = receivedChasingPlayerIndices[index];
+        zombies.moveInFrame(index,
+            eastMeters,
+            northMeters,
+            chasingPlayerIndex < playerCount ? chasingPlayerIndex : -1,
+            snapshotAgeMs);
+      }
+    }
+
+    private static boolean isSameFrame(LocalFrame a, LocalFrame b) {
+      return a == b ||
+          (a.getOriginLatitude() == b.getOriginLatitude() &&
+              a.getOriginLongitude() == b.getOriginLongitude());
+    }
+  }
+
+  private static long[] grow(long[] array, int capacity) {
+    long[] grown = new long[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+}
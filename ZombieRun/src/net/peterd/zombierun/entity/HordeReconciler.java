@@ -0,0 +1,329 @@
+package net.peterd.zombierun.entity;
+
+import net.peterd.zombierun.util.LocalFrame;
+import net.peterd.zombierun.util.Log;
+import net.peterd.zombierun.util.StringScanner;
+import net.peterd.zombierun.util.UrlSafeBase64;
+import net.peterd.zombierun.util.VarintReader;
+
+/**
+ * Brings a horde up to date with a snapshot of another device's horde, matching zombies by id:
+ * zombies in both are moved in place, zombies only in the snapshot are added, and zombies missing
+ * from it are removed.  Unlike clearing the horde and parsing the snapshot into it, zombies that
+ * survive keep their random streams, level-of-detail tiers and whether they've noticed a player,
+ * and the parse reuses this reconciler's buffers, so applying a snapshot of a large horde every
+ * sync doesn't churn the heap.
+ *
+ * Accepts both the text and binary forms of {@link ZombieHorde.ZombieListSerializer}.  Only for
+ * use by one thread at a time.
+ */
+public class HordeReconciler {
+
+  private final ZombieHorde zombies;
+  private final Visitor visitor = new Visitor();
+  private final StringScanner scanner = new StringScanner();
+  private byte[] decoded = new byte[0];
+
+  // Maps the id of each zombie in the horde before the snapshot to its index, by open addressing
+  // with linear probing; a slot is empty if its index is -1.
+  private int[] slotIds = new int[0];
+  private int[] slotIndices = new int[0];
+  private int slotMask;
+  // Which zombies appeared in the snapshot, by index.
+  private long[] seenBits = new long[0];
+  // The zombies in the snapshot, in order, as it had them; the horde's own positions may differ
+  // while it corrects towards these.
+  private int[] snapshotIds = new int[0];
+  // The index in the horde each zombie in the snapshot was matched to or added at.
+  private int[] snapshotIndices = new int[0];
+  private double[] snapshotEasts = new double[0];
+  private double[] snapshotNorths = new double[0];
+  private int[] snapshotChasingPlayerIndices = new int[0];
+  private int snapshotSize;
+  // Whether to put the horde in the snapshot's order once it's been reconciled.
+  private boolean arrangeInSnapshotOrder;
+
+  private long snapshotAgeMs = 0;
+  private int added;
+  private int removed;
+
+  public HordeReconciler(ZombieHorde zombies) {
+    this.zombies = zombies;
+  }
+
+  /**
+   * Set how old the snapshots reconciled from now on are; their zombies are fast-forwarded by this
+   * much, as {@link ZombieHorde#fastForward(int, long)} does, before the horde is moved towards
+   * them.
+   */
+  public void setSnapshotAgeMs(long snapshotAgeMs) {
+    this.snapshotAgeMs = snapshotAgeMs;
+  }
+
+  /**
+   * Reconcile the horde with a snapshot in either text form.
+   *
+   * @return true if the whole snapshot was applied.  If it couldn't be parsed to the end, the
+   *    zombies before the error have been applied, and none have been removed.
+   */
+  public boolean reconcile(String encodedString) {
+    if (ZombieHorde.ZombieListBinarySerializer.isEncodedString(encodedString)) {
+      int length;
+      try {
+        length = UrlSafeBase64.decodedLength(encodedString, 1);
+        if (decoded.length < length) {
+          decoded = new byte[length];
+        }
+        UrlSafeBase64.decode(encodedString, 1, decoded);
+      } catch (IllegalArgumentException e) {
+        Log.e("ZombieRun.HordeReconciler", "Could not decode binary horde string.", e);
+        return false;
+      }
+      return reconcile(decoded, 0, length);
+    }
+
+    begin();
+    boolean complete = true;
+    StringScanner scanner = this.scanner.reset(encodedString);
+    int playerCount = zombies.getPlayers().size();
+    while (scanner.hasMore()) {
+      if (scanner.skip('\n')) {
+        continue;
+      }
+      int lineStart = scanner.getPosition();
+      try {
+        int id = scanner.nextInt();
+        scanner.expect(':');
+        int chasingPlayerIndex = scanner.nextInt();
+        if (chasingPlayerIndex < 0 || chasingPlayerIndex >= playerCount) {
+          chasingPlayerIndex = -1;
+        }
+        scanner.expect(':');
+        double latitude = scanner.nextDouble();
+        scanner.expect('x');
+        double longitude = scanner.nextDouble();
+        scanner.expect(':');
+        double speedMetersPerSecond = scanner.nextDouble();
+        if (scanner.hasMore()) {
+          scanner.expect('\n');
+        }
+
+        LocalFrame frame = zombies.getLocalFrame();
+        if (frame == null) {
+          frame = new LocalFrame(latitude, longitude);
+          zombies.setLocalFrame(frame);
+        }
+        visitor.visit(id,
+            frame.toEastMeters(longitude),
+            frame.toNorthMeters(latitude),
+            chasingPlayerIndex,
+            speedMetersPerSecond);
+      } catch (IllegalArgumentException e) {
+        // Skip the zombie, as ZombieHorde#addFromString would.
+        Log.e("ZombieRun.HordeReconciler", "Could not parse zombie at " + lineStart + ".", e);
+        complete = false;
+        scanner.skipPast('\n');
+      }
+    }
+    end(complete);
+    return complete;
+  }
+
+  /**
+   * Reconcile the horde with a snapshot in {@link ZombieHorde.ZombieListBinarySerializer}'s
+   * format, in length bytes of the array from offset.
+   *
+   * @return true if the whole snapshot was applied.
+   */
+  public boolean reconcile(byte[] bytes, int offset, int length) {
+    return reconcile(new VarintReader(bytes, offset, length)) != null;
+  }
+
+  /**
+   * Reconcile the horde with a snapshot in {@link ZombieHorde.ZombieListBinarySerializer}'s
+   * format.
+   *
+   * @return The frame the snapshot's positions were relative to, or null if it couldn't be parsed.
+   */
+  LocalFrame reconcile(VarintReader reader) {
+    return reconcile(reader, false);
+  }
+
+  /**
+   * Reconcile the horde with a snapshot, as {@link #reconcile(VarintReader)} does, and if it was
+   * parsed to the end and inSnapshotOrder is set, then put the horde's zombies in the snapshot's
+   * order, so that the snapshot's indices can be used for the horde.
+   */
+  LocalFrame reconcile(VarintReader reader, boolean inSnapshotOrder) {
+    arrangeInSnapshotOrder = inSnapshotOrder;
+    begin();
+    LocalFrame encodedFrame =
+        ZombieHorde.ZombieListBinarySerializer.readHorde(reader, zombies, visitor);
+    end(encodedFrame != null);
+    arrangeInSnapshotOrder = false;
+    return encodedFrame;
+  }
+
+  /**
+   * @return Where the last snapshot put the zombie at the given position in it, in meters east in
+   *    the horde's frame.
+   */
+  double getSnapshotEastMeters(int position) {
+    return snapshotEasts[position];
+  }
+
+  double getSnapshotNorthMeters(int position) {
+    return snapshotNorths[position];
+  }
+
+  int getSnapshotChasingPlayerIndex(int position) {
+    return snapshotChasingPlayerIndices[position];
+  }
+
+  /**
+   * @return The number of zombies the last reconciliation added.
+   */
+  public int getAdded() {
+    return added;
+  }
+
+  /**
+   * @return The number of zombies the last reconciliation removed.
+   */
+  public int getRemoved() {
+    return removed;
+  }
+
+  private void begin() {
+    ZombieHorde zombies = this.zombies;
+    int size = zombies.size();
+    snapshotSize = 0;
+    added = 0;
+    removed = 0;
+
+    int capacity = 16;
+    while (capacity < size * 2) {
+      capacity <<= 1;
+    }
+    if (slotIds.length < capacity) {
+      slotIds = new int[capacity];
+      slotIndices = new int[capacity];
+    }
+    capacity = slotIds.length;
+    slotMask = capacity - 1;
+    int[] slotIds = this.slotIds;
+    int[] slotIndices = this.slotIndices;
+    for (int i = 0; i < capacity; ++i) {
+      slotIndices[i] = -1;
+    }
+    for (int i = 0; i < size; ++i) {
+      int id = zombies.getId(i);
+      int slot = slot(id);
+      while (slotIndices[slot] >= 0 && slotIds[slot] != id) {
+        slot = (slot + 1) & slotMask;
+      }
+      if (slotIndices[slot] < 0) {
+        // With duplicate ids, the first zombie is the one matched.
+        slotIds[slot] = id;
+        slotIndices[slot] = i;
+      }
+    }
+
+    ensureSeenCapacity(size);
+    int words = (size + 63) >> 6;
+    for (int i = 0; i < words; ++i) {
+      seenBits[i] = 0;
+    }
+  }
+
+  private void end(boolean complete) {
+    if (!complete) {
+      return;
+    }
+    if (arrangeInSnapshotOrder) {
+      removed = zombies.arrange(snapshotIndices, snapshotSize);
+    } else {
+      removed = zombies.retain(seenBits);
+    }
+  }
+
+  private int slot(int id) {
+    int hash = id * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & slotMask;
+  }
+
+  private int indexOf(int id) {
+    int slot = slot(id);
+    while (slotIndices[slot] >= 0) {
+      if (slotIds[slot] == id) {
+        return slotIndices[slot];
+      }
+      slot = (slot + 1) & slotMask;
+    }
+    return -1;
+  }
+
+  private void ensureSeenCapacity(int zombieCount) {
+    int words = (zombieCount + 63) >> 6;
+    if (seenBits.length < words) {
+      long[] grown = new long[Math.max(words, seenBits.length * 2)];
+      System.arraycopy(seenBits, 0, grown, 0, seenBits.length);
+      seenBits = grown;
+    }
+  }
+
+  private int[] grow(int[] array, int capacity) {
+    int[] grown = new int[capacity];
+    System.arraycopy(array, 0, grown, 0, snapshotSize);
+    return grown;
+  }
+
+  private double[] grow(double[] array, int capacity) {
+    double[] grown = new double[capacity];
+    System.arraycopy(array, 0, grown, 0, snapshotSize);
+    return grown;
+  }
+
+  private class Visitor implements ZombieHorde.ZombieVisitor {
+
+    public void visit(int id,
+        double eastMeters,
+        double northMeters,
+        int chasingPlayerIndex,
+        double zombieSpeedMetersPerSecond) {
+      ZombieHorde zombies = HordeReconciler.this.zombies;
+      if (snapshotSize == snapshotIds.length) {
+        int capacity = Math.max(16, snapshotIds.length * 2);
+        snapshotIds = grow(snapshotIds, capacity);
+        snapshotIndices = grow(snapshotIndices, capacity);
+        snapshotEasts = grow(snapshotEasts, capacity);
+        snapshotNorths = grow(snapshotNorths, capacity);
+        snapshotChasingPlayerIndices = grow(snapshotChasingPlayerIndices, capacity);
+      }
+      snapshotIds[snapshotSize] = id;
+      snapshotEasts[snapshotSize] = eastMeters;
+      snapshotNorths[snapshotSize] = northMeters;
+      snapshotChasingPlayerIndices[snapshotSize] = chasingPlayerIndex;
+      snapshotSize++;
+
+      int index = indexOf(id);
+      if (index >= 0 && (seenBits[index >> 6] & (1L << index)) == 0) {
+        // The speed first, as the zombie is fast-forwarded at it.
+        if (zombies.getSpeedMetersPerSecond(index) != zombieSpeedMetersPerSecond) {
+          zombies.setSpeedMetersPerSecond(index, zombieSpeedMetersPerSecond);
+        }
+        zombies.moveInFrame(index, eastMeters, northMeters, chasingPlayerIndex, snapshotAgeMs);
+      } else {
+        index = zombies.addInFrame(id, eastMeters, northMeters, chasingPlayerIndex,
+            zombieSpeedMetersPerSecond);
+        if (snapshotAgeMs > 0) {
+          zombies.fastForward(index, snapshotAgeMs);
+        }
+        added++;
+        ensureSeenCapacity(index + 1);
+      }
+      seenBits[index >> 6] |= 1L << index;
+      snapshotIndices[snapshotSize - 1] = index;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package net.peterd.zombierun.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.service.GameEventBuffer;
+
+/**
+ * Advances a {@link ZombieHorde} by splitting it into chunks and advancing the chunks concurrently
+ * on a pool of worker threads.  Intended for large hordes on multi-core simulation hosts; on a
+ * phone the sequential {@link ZombieHorde#advance(long, TimeUnit, GameEventBroadcaster)} is the
+ * better choice.
+ *
+ * Events raised while advancing a chunk are buffered per chunk and broadcast from the calling
+ * thread once every chunk has finished, in the same order a sequential advance would have raised
+ * them, so listeners are never called from a worker thread.  The tick isn't finished until no
+ * worker is still writing to the horde, even if the calling thread is interrupted or a chunk
+ * fails.
+ */
+public class ParallelHordeAdvancer {
+
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final List<ChunkAdvancer> chunks = new ArrayList<ChunkAdvancer>();
+
+  /**
+   * Create an advancer with its own pool of worker threads, which must be released with
+   * {@link #shutDown()}.
+   */
+  public ParallelHordeAdvancer(int parallelism) {
+    this(Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory()), parallelism);
+  }
+
+  public ParallelHordeAdvancer(ExecutorService executor, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1.");
+    }
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  public void advance(ZombieHorde horde,
+      long time,
+      TimeUnit timeUnit,
+      GameEventBroadcaster gameEventBroadcaster) {
+    long intervalMs = ZombieHorde.clampAdvanceIntervalMs(time, timeUnit);
+    int dueCount = horde.beginTick(intervalMs);
+    int chunkCount = Math.min(parallelism,
+        dueCount / Constants.minZombiesPerParallelAdvanceChunk);
+    List<ChunkAdvancer> chunks = this.chunks;
+    while (chunks.size() < Math.max(chunkCount, 1)) {
+      chunks.add(new ChunkAdvancer());
+    }
+    if (chunkCount <= 1) {
+      ChunkAdvancer chunk = chunks.get(0);
+      chunk.set(horde, 0, dueCount);
+      horde.advanceDue(0, dueCount, gameEventBroadcaster, chunk.advanceContext);
+      horde.endRange(chunk.advanceContext);
+      horde.endTick();
+      return;
+    }
+
+    // The due zombies are in index order.  Chunk boundaries are pushed forward until they fall
+    // between flag words, so that no two workers share a flag word.
+    int chunksUsed = 0;
+    int from = 0;
+    for (int i = 1; i <= chunkCount && from < dueCount; ++i) {
+      int to = (int) (((long) dueCount) * i / chunkCount);
+      while (to > from && to < dueCount &&
+          horde.getDue(to) / ZombieHorde.flagWordBits ==
+              horde.getDue(to - 1) / ZombieHorde.flagWordBits) {
+        to++;
+      }
+      if (to > from) {
+        chunks.get(chunksUsed++).set(horde, from, to);
+        from = to;
+      }
+    }
+
+    for (int i = 0; i < chunksUsed; ++i) {
+      ChunkAdvancer chunk = chunks.get(i);
+      try {
+        executor.execute(chunk);
+      } catch (RejectedExecutionException e) {
+        // The pool has been shut down; the tick still has to be finished.
+        chunk.run();
+      }
+    }
+
+    // Wait for every chunk.  If this thread is interrupted, the chunks that haven't started are
+    // skipped, but the ones already running are still waited for, as they're writing to the horde.
+    boolean interrupted = false;
+    for (int i = 0; i < chunksUsed; ++i) {
+      ChunkAdvancer chunk = chunks.get(i);
+      if (interrupted) {
+        chunk.skip();
+      }
+      while (true) {
+        try {
+          chunk.await();
+          break;
+        } catch (InterruptedException e) {
+          if (!interrupted) {
+            interrupted = true;
+            for (int j = i; j < chunksUsed; ++j) {
+              chunks.get(j).skip();
+            }
+          }
+        }
+      }
+    }
+
+    // The events of the chunks that finished are delivered in index order, as a sequential advance
+    // would have raised them, even if another chunk failed.  Every due zombie goes back into the
+    // schedule; those in skipped chunks are due again on the next tick.
+    Throwable failure = null;
+    for (int i = 0; i < chunksUsed; ++i) {
+      ChunkAdvancer chunk = chunks.get(i);
+      if (chunk.failure != null) {
+        chunk.events.clear();
+        if (failure == null) {
+          failure = chunk.failure;
+        }
+      } else {
+        chunk.events.drainTo(gameEventBroadcaster);
+      }
+      horde.endRange(chunk.advanceContext);
+    }
+    horde.endTick();
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw new RuntimeException("Error advancing zombie horde chunk.", failure);
+    }
+  }
+
+  public void shutDown() {
+    executor.shutdown();
+  }
+
+  private static class ChunkAdvancer implements Runnable {
+
+    private static final int pending = 0;
+    private static final int running = 1;
+    private static final int finished = 2;
+    private static final int skipped = 3;
+
+    private final GameEventBuffer events = new GameEventBuffer();
+    private final ZombieHorde.AdvanceContext advanceContext = new ZombieHorde.AdvanceContext();
+    private ZombieHorde horde;
+    private int from;
+    private int to;
+    // Guarded by this.
+    private int state;
+    // What the chunk failed with, if it did.
+    private Throwable failure;
+
+    public void set(ZombieHorde horde, int from, int to) {
+      this.horde = horde;
+      this.from = from;
+      this.to = to;
+      advanceContext.reset();
+      events.clear();
+      failure = null;
+      synchronized (this) {
+        state = pending;
+      }
+    }
+
+    public void run() {
+      synchronized (this) {
+        if (state != pending) {
+          return;
+        }
+        state = running;
+      }
+      try {
+        horde.advanceDue(from, to, events, advanceContext);
+      } catch (RuntimeException e) {
+        failure = e;
+      } catch (Error e) {
+        failure = e;
+      } finally {
+        synchronized (this) {
+          state = finished;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Stop the chunk from running, if it hasn't started.
+     */
+    public synchronized void skip() {
+      if (state == pending) {
+        state = skipped;
+      }
+    }
+
+    /**
+     * Wait until the chunk has finished or been skipped.
+     */
+    public synchronized void await() throws InterruptedException {
+      while (state == pending || state == running) {
+        wait();
+      }
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+
+    private int threadCount = 0;
+
+    public synchronized Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "ZombieRun.HordeWorker-" + threadCount++);
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -14,6 +14,9 @@ import net.peterd.zombierun.service.GameEventBroadcaster;
 import net.peterd.zombierun.service.GameEventListener;
 import net.peterd.zombierun.util.FloatingPointGeoPoint;
 import net.peterd.zombierun.util.GeoPointUtil;
+import net.peterd.zombierun.util.UrlSafeBase64;
+import net.peterd.zombierun.util.VarintReader;
+import net.peterd.zombierun.util.VarintWriter;
 
 public class Player implements LocationListener, GameEventListener {
 
@@ -22,6 +25,9 @@ public class Player implements LocationListener, GameEventListener {
   private final Destination destination;
   private final int playerId;
   private final GameEventBroadcaster gameEventBroadcaster;
+  // Incremented on every location update, so that indexes over player locations can tell when
+  // they are stale.
+  private int locationVersion = 0;
   
   /**
    * Construct a player.
@@ -66,6 +72,14 @@ public class Player implements LocationListener, GameEventListener {
     return lon;
   }
   
+  public int getLocationVersion() {
+    return locationVersion;
+  }
+
+  public int getPlayerId() {
+    return playerId;
+  }
+  
   /**
    * Serialize the player to a string.
    */
@@ -131,11 +145,13 @@ public class Player implements LocationListener, GameEventListener {
   public void setLocation(double latitude, double longitude) {
     lat = latitude;
     lon = longitude;
+    locationVersion++;
     if (Log.loggingEnabled()) {
       Log.d("ZombieRun.Player", "Player location updated to " +
           FloatingPointGeoPoint.toString(lat, lon));
     }
-    if (GeoPointUtil.distanceMeters(lat,
+    // A player that joined a game before the server sent its destination can't reach it.
+    if (destination != null && GeoPointUtil.distanceMeters(lat,
             lon,
             destination.getLocation().getLatitude(), 
             destination.getLocation().getLongitude()) <
@@ -144,6 +160,17 @@ public class Player implements LocationListener, GameEventListener {
     }
   }
   
+  /**
+   * Update the location of a player on another device, as reported by the game server.  Unlike
+   * {@link #setLocation(double, double)}, doesn't check whether the player has reached the
+   * destination; their own device does that.
+   */
+  public void setRemoteLocation(double latitude, double longitude) {
+    lat = latitude;
+    lon = longitude;
+    locationVersion++;
+  }
+
   public void onLocationChanged(Location location) {
     FloatingPointGeoPoint point =
         new FloatingPointGeoPoint(GeoPointUtil.fromLocation(location));
@@ -184,4 +211,101 @@ public class Player implements LocationListener, GameEventListener {
       return players;
     }
   }
+
+  /**
+   * A compact, versioned binary encoding of a player list, the counterpart of
+   * {@link ZombieHorde.ZombieListBinarySerializer}.
+   *
+   * Version 1 is the magic byte 'P', the version and the player count as a varint, followed by,
+   * for each player, its id as a varint and a flag byte; if the flag is set, the player's location
+   * follows in E7 fixed point (about a centimeter), as signed varint differences from the previous
+   * located player's, or from 0,0 for the first.
+   */
+  public static class PlayerListBinarySerializer {
+
+    private static final int magic = 'P';
+    public static final int version = 1;
+    // Starts the text form; the text format always starts with the player's id.
+    public static final char encodedStringPrefix = '!';
+    private static final double e7 = 1e7;
+
+    public static byte[] toBytes(List<Player> players) {
+      VarintWriter writer = new VarintWriter(8 + players.size() * 12);
+      writer.writeByte(magic);
+      writer.writeByte(version);
+      writer.writeVarint(players.size());
+      long previousLatE7 = 0;
+      long previousLonE7 = 0;
+      for (int i = 0; i < players.size(); ++i) {
+        Player player = players.get(i);
+        writer.writeVarint(player.playerId);
+        // Same test as toString: a player at 0,0 hasn't got a location yet.
+        boolean hasLocation = player.lat != 0 && player.lon != 0;
+        writer.writeByte(hasLocation ? 1 : 0);
+        if (hasLocation) {
+          long latE7 = Math.round(player.lat * e7);
+          long lonE7 = Math.round(player.lon * e7);
+          writer.writeSignedVarint(latE7 - previousLatE7);
+          writer.writeSignedVarint(lonE7 - previousLonE7);
+          previousLatE7 = latE7;
+          previousLonE7 = lonE7;
+        }
+      }
+      return writer.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes can't be parsed, as
+     *    {@link Player#fromString(String, Destination, GameEventBroadcaster)} does.
+     */
+    public static List<Player> fromBytes(byte[] bytes,
+        Destination destinationReference,
+        GameEventBroadcaster gameEventBroadcaster) {
+      VarintReader reader = new VarintReader(bytes);
+      int magic = reader.readByte();
+      int version = reader.readByte();
+      if (magic != PlayerListBinarySerializer.magic ||
+          version != PlayerListBinarySerializer.version) {
+        throw new IllegalArgumentException("Unsupported binary player list format, magic " +
+            magic + " version " + version + ".");
+      }
+      int count = reader.readVarintInt();
+      List<Player> players = new ArrayList<Player>(Math.min(count, 64));
+      long latE7 = 0;
+      long lonE7 = 0;
+      for (int i = 0; i < count; ++i) {
+        int playerId = reader.readVarintInt();
+        FloatingPointGeoPoint location = null;
+        if (reader.readByte() != 0) {
+          latE7 += reader.readSignedVarint();
+          lonE7 += reader.readSignedVarint();
+          location = new FloatingPointGeoPoint(latE7 / e7, lonE7 / e7);
+        }
+        players.add(new Player(destinationReference, playerId, location, gameEventBroadcaster));
+      }
+      return players;
+    }
+
+    /**
+     * Encode the players as text, for the game server, which only carries strings.
+     */
+    public static String toEncodedString(List<Player> players) {
+      return encodedStringPrefix + UrlSafeBase64.encode(toBytes(players));
+    }
+
+    public static boolean isEncodedString(String encodedString) {
+      return encodedString.length() > 0 && encodedString.charAt(0) == encodedStringPrefix;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the string can't be decoded or parsed.
+     */
+    public static List<Player> fromEncodedString(String encodedString,
+        Destination destinationReference,
+        GameEventBroadcaster gameEventBroadcaster) {
+      return fromBytes(UrlSafeBase64.decode(encodedString, 1),
+          destinationReference,
+          gameEventBroadcaster);
+    }
+  }
 }
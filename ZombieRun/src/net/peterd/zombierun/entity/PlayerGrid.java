@@ -0,0 +1,225 @@
+package net.peterd.zombierun.entity;
+
+import java.util.List;
+
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.util.LocalFrame;
+
+/**
+ * A uniform grid over the game's {@link LocalFrame} that buckets players by cell, so that a zombie
+ * only has to measure the distance to players in the cells around it instead of to every player in
+ * the game.
+ *
+ * The grid is rebuilt lazily by {@link #refresh()} whenever a player has moved (through
+ * {@link Player#setLocation(double, double)}) or the player list has changed since the last
+ * refresh.  Refreshing projects every player into the frame, so lookups work purely in meters and
+ * do not allocate.
+ */
+public class PlayerGrid {
+
+  // Square cells, sized so that the notice radius spans about one cell.
+  private static final double cellSizeMeters = Constants.zombieNoticePlayerDistanceMeters;
+  private static final long emptyCell = Long.MIN_VALUE;
+
+  private final List<Player> players;
+  private LocalFrame frame;
+
+  private Player[] indexedPlayers = new Player[0];
+  private int[] indexedLocationVersions = new int[0];
+  private double[] playerEasts = new double[0];
+  private double[] playerNorths = new double[0];
+  private int indexedPlayerCount = 0;
+  private boolean indexed = false;
+
+  // Open-addressed table from packed cell coordinates to the first player in that cell.
+  private long[] cellKeys = new long[0];
+  private int[] cellHeads = new int[0];
+  // The next player in the same cell, or -1.
+  private int[] nextPlayerInCell = new int[0];
+
+  public PlayerGrid(List<Player> players) {
+    this.players = players;
+  }
+
+  public void setLocalFrame(LocalFrame frame) {
+    this.frame = frame;
+    indexed = false;
+  }
+
+  /**
+   * Rebuild the grid if any player has moved, or players have been added, removed or replaced,
+   * since the last refresh.
+   *
+   * @return -1 if the grid was already up to date, otherwise the furthest any player moved since
+   *    the grid was last rebuilt, which is infinite for a player new to the grid or if the frame
+   *    has changed.
+   */
+  public double refresh() {
+    if (!isStale()) {
+      return -1;
+    }
+    boolean frameChanged = !indexed;
+    LocalFrame frame = this.frame;
+    List<Player> players = this.players;
+    int playerCount = frame == null ? 0 : players.size();
+    if (indexedPlayers.length < playerCount) {
+      indexedPlayers = grow(indexedPlayers, playerCount);
+      indexedLocationVersions = new int[playerCount];
+      playerEasts = grow(playerEasts, playerCount);
+      playerNorths = grow(playerNorths, playerCount);
+      nextPlayerInCell = new int[playerCount];
+    }
+    int tableSize = 4;
+    while (tableSize < playerCount * 2) {
+      tableSize <<= 1;
+    }
+    if (cellKeys.length != tableSize) {
+      cellKeys = new long[tableSize];
+      cellHeads = new int[tableSize];
+    }
+    long[] cellKeys = this.cellKeys;
+    for (int i = 0; i < cellKeys.length; ++i) {
+      cellKeys[i] = emptyCell;
+    }
+
+    double largestPlayerMoveMeters = 0;
+    for (int i = 0; i < playerCount; ++i) {
+      Player player = players.get(i);
+      double east = frame.toEastMeters(player.getLongitude());
+      double north = frame.toNorthMeters(player.getLatitude());
+      if (frameChanged || i >= indexedPlayerCount || indexedPlayers[i] != player) {
+        largestPlayerMoveMeters = Double.POSITIVE_INFINITY;
+      } else {
+        double eastMove = east - playerEasts[i];
+        double northMove = north - playerNorths[i];
+        largestPlayerMoveMeters = Math.max(largestPlayerMoveMeters,
+            Math.sqrt(eastMove * eastMove + northMove * northMove));
+      }
+      indexedPlayers[i] = player;
+      indexedLocationVersions[i] = player.getLocationVersion();
+      playerEasts[i] = east;
+      playerNorths[i] = north;
+      long key = cellKey(cellOf(east), cellOf(north));
+      int slot = findSlot(key);
+      if (cellKeys[slot] == emptyCell) {
+        cellKeys[slot] = key;
+        nextPlayerInCell[i] = -1;
+      } else {
+        nextPlayerInCell[i] = cellHeads[slot];
+      }
+      cellHeads[slot] = i;
+    }
+    for (int i = playerCount; i < indexedPlayerCount; ++i) {
+      indexedPlayers[i] = null;
+    }
+    indexedPlayerCount = playerCount;
+    indexed = true;
+    return largestPlayerMoveMeters;
+  }
+
+  private boolean isStale() {
+    List<Player> players = this.players;
+    if (!indexed || players.size() != indexedPlayerCount) {
+      return true;
+    }
+    for (int i = 0; i < indexedPlayerCount; ++i) {
+      Player player = players.get(i);
+      if (player != indexedPlayers[i] ||
+          player.getLocationVersion() != indexedLocationVersions[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public double getPlayerEastMeters(int playerIndex) {
+    return playerEasts[playerIndex];
+  }
+
+  public double getPlayerNorthMeters(int playerIndex) {
+    return playerNorths[playerIndex];
+  }
+
+  /**
+   * Find the nearest player that is strictly within maxDistanceMeters of the given point, as of
+   * the last {@link #refresh()}.
+   *
+   * @param distanceMetersOut Receives the distance to the nearest player in element 0, or
+   *    {@link Double#MAX_VALUE} if there is none.
+   * @return The index of the nearest player, or -1 if no player is within range.
+   */
+  public int nearestPlayerWithin(double east,
+      double north,
+      double maxDistanceMeters,
+      double[] distanceMetersOut) {
+    distanceMetersOut[0] = Double.MAX_VALUE;
+    if (indexedPlayerCount == 0) {
+      return -1;
+    }
+
+    int minEastCell = cellOf(east - maxDistanceMeters);
+    int maxEastCell = cellOf(east + maxDistanceMeters);
+    int minNorthCell = cellOf(north - maxDistanceMeters);
+    int maxNorthCell = cellOf(north + maxDistanceMeters);
+
+    double[] playerEasts = this.playerEasts;
+    double[] playerNorths = this.playerNorths;
+    int[] nextPlayerInCell = this.nextPlayerInCell;
+    int nearestPlayerIndex = -1;
+    // Compare squared distances, and only take a square root for the winner.
+    double squaredDistanceToNearestPlayer = maxDistanceMeters * maxDistanceMeters;
+    for (int eastCell = minEastCell; eastCell <= maxEastCell; ++eastCell) {
+      for (int northCell = minNorthCell; northCell <= maxNorthCell; ++northCell) {
+        long key = cellKey(eastCell, northCell);
+        int slot = findSlot(key);
+        if (cellKeys[slot] != key) {
+          continue;
+        }
+        for (int i = cellHeads[slot]; i >= 0; i = nextPlayerInCell[i]) {
+          double eastDistance = playerEasts[i] - east;
+          double northDistance = playerNorths[i] - north;
+          double squaredDistance = eastDistance * eastDistance + northDistance * northDistance;
+          if (squaredDistance < squaredDistanceToNearestPlayer) {
+            nearestPlayerIndex = i;
+            squaredDistanceToNearestPlayer = squaredDistance;
+          }
+        }
+      }
+    }
+    if (nearestPlayerIndex >= 0) {
+      distanceMetersOut[0] = Math.sqrt(squaredDistanceToNearestPlayer);
+    }
+    return nearestPlayerIndex;
+  }
+
+  private static Player[] grow(Player[] array, int capacity) {
+    Player[] grown = new Player[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static double[] grow(double[] array, int capacity) {
+    double[] grown = new double[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private int findSlot(long key) {
+    long[] cellKeys = this.cellKeys;
+    int mask = cellKeys.length - 1;
+    // Fibonacci hashing of the packed cell coordinates.
+    int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    while (cellKeys[slot] != emptyCell && cellKeys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int cellOf(double meters) {
+    return (int) Math.floor(meters / cellSizeMeters);
+  }
+
+  private static long cellKey(int eastCell, int northCell) {
+    return (((long) eastCell) << 32) | (northCell & 0xffffffffL);
+  }
+}
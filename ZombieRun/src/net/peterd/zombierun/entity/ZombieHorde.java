@@ -0,0 +1,1243 @@
+package net.peterd.zombierun.entity;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.game.GameEvent;
+import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.util.DistanceHistogram;
+import net.peterd.zombierun.util.FloatingPointGeoPoint;
+import net.peterd.zombierun.util.GameRandom;
+import net.peterd.zombierun.util.LocalFrame;
+import net.peterd.zombierun.util.Log;
+import net.peterd.zombierun.util.UrlSafeBase64;
+import net.peterd.zombierun.util.VarintReader;
+import net.peterd.zombierun.util.VarintWriter;
+
+/**
+ * The zombies in a game, stored as parallel primitive arrays rather than as one object per zombie.
+ * A zombie is identified by its index into the horde, which is stable until the horde is cleared.
+ *
+ * Keeping the horde in flat arrays saves an object header and a handful of references per zombie,
+ * and lets a tick walk the positions sequentially instead of chasing pointers, which is what allows
+ * hordes much larger than {@link Constants#maxZombieCount}.
+ *
+ * Positions are kept in meters east and north of the origin of the game's {@link LocalFrame}, and
+ * only converted to latitude and longitude at the edges.
+ */
+public class ZombieHorde {
+
+  private static final int defaultInitialCapacity = 16;
+  static final int flagWordBits = 64;
+
+  private final List<Player> players;
+  private final PlayerGrid playerGrid;
+  private final ZombieScheduler scheduler = new ZombieScheduler();
+  private final AdvanceContext advanceContext = new AdvanceContext();
+  private final int[] zombiesPerLodTier = new int[LodTier.count];
+  private LocalFrame frame;
+  private long randomSeed = 0;
+  // Game time, advanced by every tick.
+  private int clockMs = 0;
+  // How far the clock moved on the current tick.
+  private long tickIntervalMs = 0;
+  private int playerGridRebuiltAtMs = 0;
+  private long maxParkedMs = Constants.maxZombieParkedMs;
+  // Set when zombies have been moved from outside the simulation, which invalidates their parking.
+  private boolean wakeAllOnNextTick = false;
+  private double maxCorrectionMetersPerSecond = Constants.maxZombieCorrectionMetersPerSecond;
+  private double correctionSnapDistanceMeters = Constants.zombieCorrectionSnapDistanceMeters;
+  private final DistanceHistogram predictionErrors = new DistanceHistogram();
+  // Where a zombie from another device has been fast-forwarded to.  Fast-forwarding is done with
+  // the horde locked against ticks, so it also borrows the sequential tick's advanceContext.
+  private final double[] fastForwardScratch = new double[2];
+
+  private int size = 0;
+  private int[] ids;
+  private double[] easts;
+  private double[] norths;
+  private double[] speedsMetersPerSecond;
+  // Index into players of the player each zombie is chasing, or -1 for none.
+  private int[] chasingPlayerIndices;
+  // How many numbers each zombie has drawn from its own random stream, which is determined by the
+  // horde's seed and the zombie's id, so that its trajectory doesn't depend on any other zombie or
+  // on how the horde is split between threads.
+  private int[] randomDraws;
+  // The game time each zombie was last advanced at, and the time it is parked until.  Game times
+  // are kept in ints, which last a game 24 days.
+  private int[] advancedAtMs;
+  private int[] wakeAtMs;
+  // What's left of each zombie's correction towards where another device put it, in meters; see
+  // #moveInFrame.  Only hordes from other devices are corrected, so these are null until the first
+  // correction.
+  private double[] correctionEasts;
+  private double[] correctionNorths;
+  private byte[] lodTiers;
+  // One bit per zombie.
+  private long[] noticingPlayerBits;
+  private long[] nearPlayerBits;
+  // Allocated on the first #arrange, and kept for the next.
+  private long[] arrangeScratch;
+
+  public ZombieHorde(List<Player> players) {
+    this(players, defaultInitialCapacity);
+  }
+
+  public ZombieHorde(List<Player> players, int initialCapacity) {
+    this.players = players;
+    this.playerGrid = new PlayerGrid(players);
+    allocate(Math.max(initialCapacity, 1));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Make room for at least capacity zombies, so that adding that many doesn't grow the horde, and
+   * leave it with room to spare, along the way.
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > ids.length) {
+      allocate(capacity);
+    }
+  }
+
+  public void clear() {
+    size = 0;
+    scheduler.clear();
+    for (int i = 0; i < zombiesPerLodTier.length; ++i) {
+      zombiesPerLodTier[i] = 0;
+    }
+  }
+
+  public List<Player> getPlayers() {
+    return players;
+  }
+
+  /**
+   * @return The frame the horde is simulated in, or null if it has not been set and no zombie has
+   *    been added yet.
+   */
+  public LocalFrame getLocalFrame() {
+    return frame;
+  }
+
+  /**
+   * Set the frame the horde is simulated in.  Zombies already in the horde keep their geographic
+   * positions.  If no frame is set, the horde anchors one at the first zombie added.
+   */
+  public void setLocalFrame(LocalFrame frame) {
+    LocalFrame oldFrame = this.frame;
+    if (oldFrame != null) {
+      for (int i = 0; i < size; ++i) {
+        double lat = oldFrame.toLatitude(norths[i]);
+        double lon = oldFrame.toLongitude(easts[i]);
+        easts[i] = frame.toEastMeters(lon);
+        norths[i] = frame.toNorthMeters(lat);
+      }
+    }
+    this.frame = frame;
+    playerGrid.setLocalFrame(frame);
+  }
+
+  /**
+   * Set the seed the zombies' random streams are derived from.  A zombie's stream is determined by
+   * this seed and its id, so the seed should be set before any zombie is added.
+   */
+  public void setRandomSeed(long randomSeed) {
+    this.randomSeed = randomSeed;
+  }
+
+  /**
+   * Add a zombie to the horde.
+   *
+   * @param chasingPlayerIndex The index of the player the zombie is chasing, or -1 for none.
+   * @return The index of the new zombie in the horde.
+   */
+  public int add(int id,
+      double latitude,
+      double longitude,
+      int chasingPlayerIndex,
+      double zombieSpeedMetersPerSecond) {
+    if (frame == null) {
+      setLocalFrame(new LocalFrame(latitude, longitude));
+    }
+    return addInFrame(id,
+        frame.toEastMeters(longitude),
+        frame.toNorthMeters(latitude),
+        chasingPlayerIndex,
+        zombieSpeedMetersPerSecond);
+  }
+
+  /**
+   * Set how zombies reported elsewhere by another device are corrected; see
+   * {@link #moveInFrame(int, double, double, int, long)}.
+   *
+   * @param maxCorrectionMetersPerSecond How fast a zombie is moved towards where it was reported,
+   *    on top of its own movement, or 0 to always jump there.
+   * @param correctionSnapDistanceMeters How far a zombie must be from where it was reported to
+   *    jump there rather than be moved.
+   */
+  public void setCorrection(double maxCorrectionMetersPerSecond,
+      double correctionSnapDistanceMeters) {
+    this.maxCorrectionMetersPerSecond = maxCorrectionMetersPerSecond;
+    this.correctionSnapDistanceMeters = correctionSnapDistanceMeters;
+  }
+
+  /**
+   * @return How far each zombie reported by another device was from where this horde had
+   *    predicted it would be, correction still to be made included.
+   */
+  public DistanceHistogram getPredictionErrors() {
+    return predictionErrors;
+  }
+
+  /**
+   * Move a zombie to a position in the horde's frame, as reported by another device ageMs ago.
+   * The position is first fast-forwarded to now, as {@link #fastForward(int, long)} would.  The
+   * zombie keeps moving as it was, and the difference is made up on the ticks that follow, no
+   * faster than the maximum correction speed, so that it doesn't visibly jump; unless the
+   * difference is over the snap distance, in which case the zombie is put there at once, and
+   * advanced from there on the next tick.
+   */
+  void moveInFrame(int index,
+      double eastMeters,
+      double northMeters,
+      int chasingPlayerIndex,
+      long ageMs) {
+    if (ageMs > 0) {
+      double[] fastForwarded = fastForwardScratch;
+      int chased = fastForward(eastMeters,
+          northMeters,
+          speedsMetersPerSecond[index],
+          ageMs,
+          fastForwarded);
+      if (chased >= 0) {
+        eastMeters = fastForwarded[0];
+        northMeters = fastForwarded[1];
+        chasingPlayerIndex = chased;
+      }
+    }
+
+    double[] correctionEasts = this.correctionEasts;
+    double[] correctionNorths = this.correctionNorths;
+    if (correctionEasts == null) {
+      correctionEasts = this.correctionEasts = new double[ids.length];
+      correctionNorths = this.correctionNorths = new double[ids.length];
+    }
+    double errorEastMeters = eastMeters - (easts[index] + correctionEasts[index]);
+    double errorNorthMeters = northMeters - (norths[index] + correctionNorths[index]);
+    predictionErrors.record(
+        Math.sqrt(errorEastMeters * errorEastMeters + errorNorthMeters * errorNorthMeters));
+
+    double correctionEastMeters = eastMeters - easts[index];
+    double correctionNorthMeters = northMeters - norths[index];
+    double correctionMeters = Math.sqrt(correctionEastMeters * correctionEastMeters +
+        correctionNorthMeters * correctionNorthMeters);
+    if (maxCorrectionMetersPerSecond > 0 && correctionMeters <= correctionSnapDistanceMeters) {
+      correctionEasts[index] = correctionEastMeters;
+      correctionNorths[index] = correctionNorthMeters;
+    } else {
+      easts[index] = eastMeters;
+      norths[index] = northMeters;
+      correctionEasts[index] = 0;
+      correctionNorths[index] = 0;
+      advancedAtMs[index] = clockMs;
+    }
+    chasingPlayerIndices[index] = chasingPlayerIndex;
+    wakeAllOnNextTick = true;
+  }
+
+  /**
+   * Move a zombie added as reported by another device ageMs ago on to where it would be now: as on
+   * a tick, straight towards the nearest player within the notice distance, if there is one, as
+   * far as it could have gone.  A zombie that isn't chasing anyone is left where it is, as its
+   * meandering is as likely to have taken it one way as any other.
+   */
+  void fastForward(int index, long ageMs) {
+    double[] fastForwarded = fastForwardScratch;
+    int chased = fastForward(easts[index],
+        norths[index],
+        speedsMetersPerSecond[index],
+        ageMs,
+        fastForwarded);
+    if (chased >= 0) {
+      easts[index] = fastForwarded[0];
+      norths[index] = fastForwarded[1];
+      chasingPlayerIndices[index] = chased;
+      wakeAllOnNextTick = true;
+    }
+  }
+
+  /**
+   * @return The index of the player a zombie at the given position would chase, or -1, in which
+   *    case it isn't moved; its position ageMs later is left in the first two elements of
+   *    fastForwarded.
+   */
+  private int fastForward(double eastMeters,
+      double northMeters,
+      double zombieSpeedMetersPerSecond,
+      long ageMs,
+      double[] fastForwarded) {
+    fastForwarded[0] = eastMeters;
+    fastForwarded[1] = northMeters;
+    double[] distanceToNearestPlayerScratch = advanceContext.distanceToNearestPlayer;
+    int nearestPlayerIndex = playerGrid.nearestPlayerWithin(eastMeters,
+        northMeters,
+        Constants.zombieNoticePlayerDistanceMeters,
+        distanceToNearestPlayerScratch);
+    if (nearestPlayerIndex < 0) {
+      return -1;
+    }
+    double distanceMeters = distanceToNearestPlayerScratch[0];
+    double movementDistanceMeters =
+        Math.min(zombieSpeedMetersPerSecond * ageMs / 1000, distanceMeters);
+    if (distanceMeters > 0) {
+      double scale = movementDistanceMeters / distanceMeters;
+      fastForwarded[0] += (playerGrid.getPlayerEastMeters(nearestPlayerIndex) - eastMeters) * scale;
+      fastForwarded[1] +=
+          (playerGrid.getPlayerNorthMeters(nearestPlayerIndex) - northMeters) * scale;
+    }
+    return nearestPlayerIndex;
+  }
+
+  /**
+   * Change a zombie's speed, as reported by another device.
+   */
+  void setSpeedMetersPerSecond(int index, double zombieSpeedMetersPerSecond) {
+    speedsMetersPerSecond[index] = zombieSpeedMetersPerSecond;
+  }
+
+  /**
+   * Remove the zombies whose bits are clear in keepBits, keeping the rest in order.  Kept zombies
+   * move to lower indices, so any index held outside the horde is invalid afterwards; every kept
+   * zombie is woken on the next tick.
+   *
+   * @return The number of zombies removed.
+   */
+  int retain(long[] keepBits) {
+    int kept = 0;
+    for (int i = 0; i < size; ++i) {
+      if (!getBit(keepBits, i)) {
+        continue;
+      }
+      if (kept != i) {
+        ids[kept] = ids[i];
+        easts[kept] = easts[i];
+        norths[kept] = norths[i];
+        speedsMetersPerSecond[kept] = speedsMetersPerSecond[i];
+        chasingPlayerIndices[kept] = chasingPlayerIndices[i];
+        randomDraws[kept] = randomDraws[i];
+        advancedAtMs[kept] = advancedAtMs[i];
+        if (correctionEasts != null) {
+          correctionEasts[kept] = correctionEasts[i];
+          correctionNorths[kept] = correctionNorths[i];
+        }
+        lodTiers[kept] = lodTiers[i];
+        setBit(noticingPlayerBits, kept, getBit(noticingPlayerBits, i));
+        setBit(nearPlayerBits, kept, getBit(nearPlayerBits, i));
+      }
+      kept++;
+    }
+    int removed = size - kept;
+    if (removed == 0) {
+      return 0;
+    }
+    size = kept;
+    rescheduleAll();
+    return removed;
+  }
+
+  /**
+   * Keep only the zombies at the first count indices in order, in that order: afterwards, the
+   * zombie at index i is the one that was at order[i].  No index may appear twice.  As with
+   * {@link #retain(long[])}, any index held outside the horde is invalid afterwards, and every
+   * zombie is woken on the next tick, unless the horde was already in that order.
+   *
+   * @return The number of zombies removed.
+   */
+  int arrange(int[] order, int count) {
+    boolean unchanged = count == size;
+    for (int i = 0; unchanged && i < count; ++i) {
+      unchanged = order[i] == i;
+    }
+    if (unchanged) {
+      return 0;
+    }
+    long[] scratch = arrangeScratch;
+    if (scratch == null || scratch.length < ids.length) {
+      scratch = arrangeScratch = new long[ids.length];
+    }
+    gather(ids, order, count, scratch);
+    gather(easts, order, count, scratch);
+    gather(norths, order, count, scratch);
+    gather(speedsMetersPerSecond, order, count, scratch);
+    gather(chasingPlayerIndices, order, count, scratch);
+    gather(randomDraws, order, count, scratch);
+    gather(advancedAtMs, order, count, scratch);
+    if (correctionEasts != null) {
+      gather(correctionEasts, order, count, scratch);
+      gather(correctionNorths, order, count, scratch);
+    }
+    gather(lodTiers, order, count, scratch);
+    gatherBits(noticingPlayerBits, order, count, scratch);
+    gatherBits(nearPlayerBits, order, count, scratch);
+    int removed = size - count;
+    size = count;
+    rescheduleAll();
+    return removed;
+  }
+
+  /**
+   * Park every zombie until the next tick, and recount the level-of-detail tiers, after zombies
+   * have moved between indices.
+   */
+  private void rescheduleAll() {
+    scheduler.clear();
+    for (int i = 0; i < zombiesPerLodTier.length; ++i) {
+      zombiesPerLodTier[i] = 0;
+    }
+    for (int i = 0; i < size; ++i) {
+      zombiesPerLodTier[lodTiers[i]]++;
+      wakeAtMs[i] = clockMs;
+      scheduler.park(i, clockMs);
+    }
+    wakeAllOnNextTick = true;
+  }
+
+  int addInFrame(int id,
+      double eastMeters,
+      double northMeters,
+      int chasingPlayerIndex,
+      double zombieSpeedMetersPerSecond) {
+    if (size == ids.length) {
+      // Grow by half, as ArrayList does, to leave less of the arrays unused.
+      allocate(ids.length + (ids.length >> 1) + 1);
+    }
+    int index = size++;
+    ids[index] = id;
+    easts[index] = eastMeters;
+    norths[index] = northMeters;
+    chasingPlayerIndices[index] = chasingPlayerIndex;
+    speedsMetersPerSecond[index] = zombieSpeedMetersPerSecond;
+    randomDraws[index] = 0;
+    advancedAtMs[index] = clockMs;
+    if (correctionEasts != null) {
+      correctionEasts[index] = 0;
+      correctionNorths[index] = 0;
+    }
+    lodTiers[index] = (byte) LodTier.NEAR.ordinal();
+    zombiesPerLodTier[LodTier.NEAR.ordinal()]++;
+    scheduler.park(index, clockMs);
+    setBit(noticingPlayerBits, index, false);
+    setBit(nearPlayerBits, index, false);
+    return index;
+  }
+
+  public int getId(int index) {
+    return ids[index];
+  }
+
+  public double getEastMeters(int index) {
+    return easts[index];
+  }
+
+  public double getNorthMeters(int index) {
+    return norths[index];
+  }
+
+  public double getLatitude(int index) {
+    return frame.toLatitude(norths[index]);
+  }
+
+  public int getLatitudeE6(int index) {
+    return (int) (getLatitude(index) * 1e6);
+  }
+
+  public double getLongitude(int index) {
+    return frame.toLongitude(easts[index]);
+  }
+
+  public int getLongitudeE6(int index) {
+    return (int) (getLongitude(index) * 1e6);
+  }
+
+  public double getSpeedMetersPerSecond(int index) {
+    return speedsMetersPerSecond[index];
+  }
+
+  public int getChasingPlayerIndex(int index) {
+    return chasingPlayerIndices[index];
+  }
+
+  /**
+   * @return The distance in meters from the point to the nearest zombie, or positive infinity if
+   *    there are none.
+   */
+  public double distanceToNearestZombieMeters(double latitude, double longitude) {
+    if (size == 0 || frame == null) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double east = frame.toEastMeters(longitude);
+    double north = frame.toNorthMeters(latitude);
+    double nearestSquared = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < size; ++i) {
+      double dEast = easts[i] - east;
+      double dNorth = norths[i] - north;
+      double squared = dEast * dEast + dNorth * dNorth;
+      if (squared < nearestSquared) {
+        nearestSquared = squared;
+      }
+    }
+    return Math.sqrt(nearestSquared);
+  }
+
+  public boolean isNoticingPlayer(int index) {
+    return getBit(noticingPlayerBits, index);
+  }
+
+  public boolean isNearPlayer(int index) {
+    return getBit(nearPlayerBits, index);
+  }
+
+  /**
+   * Level-of-detail tiers, by distance from the zombie to the nearest player.  Zombies near a
+   * player are advanced every tick.  Zombies further away are parked until the earliest time they
+   * could possibly come within the notice distance of a player, with the time they were parked for
+   * folded into their next advance.  A zombie never misses noticing, nearing or catching a player
+   * because it was parked.
+   */
+  public enum LodTier {
+    // Within the notice distance of a player.
+    NEAR,
+    // Within the far tier distance of a player.
+    MID,
+    // No player within the far tier distance.
+    FAR;
+
+    static final int count = values().length;
+    private static final LodTier[] tiers = values();
+  }
+
+  /**
+   * @return The number of zombies in the given tier, as of the last time each was advanced.
+   */
+  public int getZombiesInLodTier(LodTier tier) {
+    return zombiesPerLodTier[tier.ordinal()];
+  }
+
+  /**
+   * @return The number of zombies that were due, and so advanced, on the last tick.
+   */
+  public int getZombiesAdvancedLastTick() {
+    return scheduler.getDueCount();
+  }
+
+  public LodTier getLodTier(int index) {
+    return LodTier.tiers[lodTiers[index]];
+  }
+
+  /**
+   * Set the longest a zombie outside the notice distance may be parked, however far it is from
+   * every player.  Raising it lowers the level of detail of far-off zombies; it never lets a zombie
+   * miss noticing a player.
+   */
+  public void setMaxParkedMs(long maxParkedMs) {
+    this.maxParkedMs = maxParkedMs;
+  }
+
+  public long getMaxParkedMs() {
+    return maxParkedMs;
+  }
+
+  public void advance(long time, TimeUnit timeUnit, GameEventBroadcaster gameEventBroadcaster) {
+    int dueCount = beginTick(clampAdvanceIntervalMs(time, timeUnit));
+    AdvanceContext advanceContext = this.advanceContext;
+    advanceContext.reset();
+    advanceDue(0, dueCount, gameEventBroadcaster, advanceContext);
+    endRange(advanceContext);
+    endTick();
+  }
+
+  static long clampAdvanceIntervalMs(long time, TimeUnit timeUnit) {
+    // If we get an interval that's too long, it'll screw up the distance that the zombies move,
+    // which can make them completely overshoot or something.
+    return Math.min(timeUnit.toMillis(time), Constants.gameUpdateDelayMs);
+  }
+
+  /**
+   * Start a tick: move the game clock forward, bring the player grid up to date and collect the
+   * zombies that are due.  If a player has moved further than the fastest player could have since
+   * the grid was last rebuilt, as when a GPS fix jumps, the bounds every parked zombie was parked
+   * with no longer hold, so every zombie is due.
+   *
+   * @param intervalMs The amount of time to advance the game by, already clamped by
+   *    {@link #clampAdvanceIntervalMs(long, TimeUnit)}.
+   * @return The number of due zombies, to be advanced with
+   *    {@link #advanceDue(int, int, GameEventBroadcaster, AdvanceContext)}.
+   */
+  int beginTick(long intervalMs) {
+    clockMs += intervalMs;
+    tickIntervalMs = intervalMs;
+    boolean wakeAll = wakeAllOnNextTick;
+    wakeAllOnNextTick = false;
+    double largestPlayerMoveMeters = playerGrid.refresh();
+    if (largestPlayerMoveMeters >= 0) {
+      double maxPlayerMoveMeters = Constants.maxPlayerSpeedMetersPerSecond *
+          (clockMs - playerGridRebuiltAtMs) / 1000;
+      wakeAll = largestPlayerMoveMeters > maxPlayerMoveMeters;
+      playerGridRebuiltAtMs = clockMs;
+    }
+    return scheduler.collectDue(clockMs, wakeAll, size);
+  }
+
+  /**
+   * @return The index in the horde of the zombie at the given position in this tick's due list.
+   */
+  int getDue(int position) {
+    return scheduler.getDue(position);
+  }
+
+  /**
+   * Must be called, on the ticking thread, for each range of due zombies once it has been
+   * advanced.
+   */
+  void endRange(AdvanceContext advanceContext) {
+    int[] lodTierChanges = advanceContext.lodTierChanges;
+    for (int i = 0; i < lodTierChanges.length; ++i) {
+      zombiesPerLodTier[i] += lodTierChanges[i];
+    }
+  }
+
+  /**
+   * Finish a tick by parking every zombie that was advanced until it is next due.  Must be called
+   * on the ticking thread once every range of due zombies has been advanced.
+   */
+  void endTick() {
+    ZombieScheduler scheduler = this.scheduler;
+    int[] wakeAtMs = this.wakeAtMs;
+    int dueCount = scheduler.getDueCount();
+    for (int i = 0; i < dueCount; ++i) {
+      int index = scheduler.getDue(i);
+      scheduler.park(index, wakeAtMs[index]);
+    }
+  }
+
+  /**
+   * Scratch space and statistics for advancing one range of the horde on one thread.
+   */
+  static class AdvanceContext {
+    final double[] distanceToNearestPlayer = new double[1];
+    final int[] lodTierChanges = new int[LodTier.count];
+
+    void reset() {
+      for (int i = 0; i < lodTierChanges.length; ++i) {
+        lodTierChanges[i] = 0;
+      }
+    }
+  }
+
+  /**
+   * Advance the due zombies at positions [from, to) of this tick's due list.  Disjoint ranges may
+   * be advanced concurrently, provided that no two ranges contain zombies whose indices fall in
+   * the same block of {@link #flagWordBits} (flags for 64 zombies share a word), and each caller
+   * has its own broadcaster and context.
+   */
+  void advanceDue(int from,
+      int to,
+      GameEventBroadcaster gameEventBroadcaster,
+      AdvanceContext advanceContext) {
+    ZombieScheduler scheduler = this.scheduler;
+    // Don't allocate an iterator.
+    for (int i = from; i < to; ++i) {
+      advance(scheduler.getDue(i), gameEventBroadcaster, advanceContext);
+    }
+  }
+
+  /**
+   * Advance a single zombie to the current game time, and decide when it next needs advancing.
+   */
+  private void advance(int index,
+      GameEventBroadcaster gameEventBroadcaster,
+      AdvanceContext advanceContext) {
+    int clockMs = this.clockMs;
+    int elapsedMs = clockMs - advancedAtMs[index];
+    double[] correctionEasts = this.correctionEasts;
+    if (correctionEasts != null &&
+        (correctionEasts[index] != 0 || correctionNorths[index] != 0)) {
+      correct(index, maxCorrectionMetersPerSecond * elapsedMs / 1000);
+    }
+
+    // Every threshold we care about is within the notice distance, so players any further away
+    // than that don't need to be considered at all.
+    double[] distanceToNearestPlayerScratch = advanceContext.distanceToNearestPlayer;
+    PlayerGrid playerGrid = this.playerGrid;
+    int nearestPlayerIndex = playerGrid.nearestPlayerWithin(easts[index],
+        norths[index],
+        Constants.zombieNoticePlayerDistanceMeters,
+        distanceToNearestPlayerScratch);
+    double distanceToNearestPlayer = distanceToNearestPlayerScratch[0];
+
+    // Covers the time the zombie was parked for, too.
+    double movementDistanceMeters =
+        speedsMetersPerSecond[index] * (((float) elapsedMs) / 1000);
+    advancedAtMs[index] = clockMs;
+
+    if (nearestPlayerIndex >= 0) {
+      chasingPlayerIndices[index] = nearestPlayerIndex;
+      // A parked zombie was out of reach of every player until it was woken, which may have been
+      // early, after a player jumped or the zombie was moved; only this tick's time is spent on the
+      // chase, and the time it was parked for is dropped, as meandering goes nowhere on average.
+      if (elapsedMs > tickIntervalMs) {
+        movementDistanceMeters =
+            speedsMetersPerSecond[index] * (((float) tickIntervalMs) / 1000);
+      }
+      movementDistanceMeters = Math.min(movementDistanceMeters, distanceToNearestPlayer);
+      moveToward(index,
+          playerGrid.getPlayerEastMeters(nearestPlayerIndex),
+          playerGrid.getPlayerNorthMeters(nearestPlayerIndex),
+          distanceToNearestPlayer,
+          movementDistanceMeters);
+
+      // The noticing bit must be set after checking it, as its previous value is what tells us
+      // whether this is the point at which the zombie switches from 'not noticed player' to
+      // 'noticed player.'
+      if (!getBit(noticingPlayerBits, index)) {
+        gameEventBroadcaster.broadcastEvent(GameEvent.ZOMBIE_NOTICE_PLAYER);
+      }
+      setBit(noticingPlayerBits, index, true);
+
+      // The player it's chasing moves between fixes, so a chasing zombie is due every tick; within
+      // a tick, the step is cut short at the player, which is what catches them.
+      setLodTier(index, LodTier.NEAR, advanceContext);
+      wakeAtMs[index] = clockMs;
+    } else {
+      chasingPlayerIndices[index] = -1;
+      meander(index, movementDistanceMeters);
+      setBit(noticingPlayerBits, index, false);
+      scheduleWake(index, advanceContext);
+    }
+
+    boolean isChasing = chasingPlayerIndices[index] >= 0;
+    if (isChasing && distanceToNearestPlayer < Constants.zombieNearPlayerDistanceMeters) {
+      if (!getBit(nearPlayerBits, index)) {
+        gameEventBroadcaster.broadcastEvent(GameEvent.ZOMBIE_NEAR_PLAYER);
+      }
+      setBit(nearPlayerBits, index, true);
+    } else {
+      setBit(nearPlayerBits, index, false);
+    }
+
+    if (isChasing && distanceToNearestPlayer < Constants.zombieCatchPlayerDistanceMeters) {
+      gameEventBroadcaster.broadcastEvent(GameEvent.ZOMBIE_CATCH_PLAYER);
+    }
+  }
+
+  /**
+   * Decide the tier of a zombie outside the notice distance of every player, and park it until the
+   * earliest time it could come within the notice distance of a player: the gap can close no
+   * faster than the zombie's speed plus the fastest a player could move.
+   */
+  private void scheduleWake(int index, AdvanceContext advanceContext) {
+    double[] distanceToNearestPlayerScratch = advanceContext.distanceToNearestPlayer;
+    int nearestPlayerIndex = playerGrid.nearestPlayerWithin(easts[index],
+        norths[index],
+        Constants.zombieFarTierDistanceMeters,
+        distanceToNearestPlayerScratch);
+    double distanceToNearestPlayer;
+    if (nearestPlayerIndex >= 0) {
+      setLodTier(index, LodTier.MID, advanceContext);
+      distanceToNearestPlayer = distanceToNearestPlayerScratch[0];
+    } else {
+      setLodTier(index, LodTier.FAR, advanceContext);
+      distanceToNearestPlayer = Constants.zombieFarTierDistanceMeters;
+    }
+    double closingSpeedMetersPerSecond =
+        speedsMetersPerSecond[index] + Constants.maxPlayerSpeedMetersPerSecond;
+    double gapMeters = distanceToNearestPlayer - Constants.zombieNoticePlayerDistanceMeters;
+    // The zombie is only looked at again on the first tick at or after its wake time, which can be
+    // up to a whole tick later.
+    long parkMs = (long) (gapMeters / closingSpeedMetersPerSecond * 1000) -
+        Constants.gameUpdateDelayMs;
+    // Stagger the cap, so that zombies added together don't all come due on the same tick.
+    long maxParkMs = maxParkedMs - (index & 7) * (maxParkedMs >> 4);
+    wakeAtMs[index] = (int) (clockMs + Math.max(0, Math.min(parkMs, maxParkMs)));
+  }
+
+  private void setLodTier(int index, LodTier tier, AdvanceContext advanceContext) {
+    int oldTier = lodTiers[index];
+    int newTier = tier.ordinal();
+    if (oldTier != newTier) {
+      lodTiers[index] = (byte) newTier;
+      advanceContext.lodTierChanges[oldTier]--;
+      advanceContext.lodTierChanges[newTier]++;
+    }
+  }
+
+  /**
+   * Make up as much of a zombie's outstanding correction as can be made up in the given distance.
+   */
+  private void correct(int index, double maxDistanceMeters) {
+    double correctionEastMeters = correctionEasts[index];
+    double correctionNorthMeters = correctionNorths[index];
+    double correctionMeters = Math.sqrt(correctionEastMeters * correctionEastMeters +
+        correctionNorthMeters * correctionNorthMeters);
+    double scale = correctionMeters <= maxDistanceMeters ? 1 : maxDistanceMeters / correctionMeters;
+    easts[index] += correctionEastMeters * scale;
+    norths[index] += correctionNorthMeters * scale;
+    if (scale == 1) {
+      correctionEasts[index] = 0;
+      correctionNorths[index] = 0;
+    } else {
+      correctionEasts[index] -= correctionEastMeters * scale;
+      correctionNorths[index] -= correctionNorthMeters * scale;
+    }
+  }
+
+  private void meander(int index, double movementDistanceMeters) {
+    // TODO: Give them a primary direction, not just random movements.
+    // TODO: Make zombies cluster a little bit
+    long randomStream = GameRandom.streamState(randomSeed, ids[index]);
+    int randomDraws = this.randomDraws[index];
+    double eastDirection = GameRandom.nextDouble(randomStream, randomDraws) - 0.5;
+    double northDirection = GameRandom.nextDouble(randomStream, randomDraws + 1) - 0.5;
+    this.randomDraws[index] = randomDraws + 2;
+    double directionMagnitude =
+        Math.sqrt(eastDirection * eastDirection + northDirection * northDirection);
+    if (directionMagnitude > 0) {
+      double scale = movementDistanceMeters / directionMagnitude;
+      easts[index] += eastDirection * scale;
+      norths[index] += northDirection * scale;
+    }
+  }
+
+  /**
+   * Move a zombie straight towards a target that is distanceMeters away.
+   */
+  private void moveToward(int index,
+      double targetEastMeters,
+      double targetNorthMeters,
+      double distanceMeters,
+      double movementDistanceMeters) {
+    if (Log.loggingEnabled()) {
+      Log.d("ZombieRun.ZombieHorde", "Moving zombie " + ids[index] + " towards " +
+          targetEastMeters + "m east, " + targetNorthMeters + "m north.");
+    }
+    if (distanceMeters > 0) {
+      double scale = movementDistanceMeters / distanceMeters;
+      easts[index] += (targetEastMeters - easts[index]) * scale;
+      norths[index] += (targetNorthMeters - norths[index]) * scale;
+    }
+  }
+
+  /**
+   * Serialize a single zombie to the 'id:chasingPlayerIndex:latxlon:speed' format.
+   */
+  public String toString(int index) {
+    StringBuilder builder = new StringBuilder();
+    appendTo(builder, index);
+    return builder.toString();
+  }
+
+  private void appendTo(StringBuilder builder, int index) {
+    builder.append(ids[index]);
+    builder.append(":");
+    builder.append(chasingPlayerIndices[index]);
+    builder.append(":");
+    builder.append(FloatingPointGeoPoint.toString(getLatitude(index), getLongitude(index)));
+    builder.append(":");
+    builder.append(speedsMetersPerSecond[index]);
+  }
+
+  /**
+   * Parse a zombie serialized by {@link #toString(int)} and add it to the horde.
+   *
+   * @return The index of the new zombie, or -1 if it could not be parsed.
+   */
+  public int addFromString(String stringEncodedZombie) {
+    String[] parts = stringEncodedZombie.split(":", 4);
+    if (parts.length != 4) {
+      Log.e("ZombieRun.ZombieHorde", "Did not find 4 parts, which should have been the zombie " +
+          "id, index of the player the zombie is chasing (-1 for none), a string-encoded " +
+          "FloatingPointGeoPoint and the zombie's speed, in '" + stringEncodedZombie + "'.");
+      return -1;
+    }
+
+    String zombieIdStr = parts[0];
+    int zombieId;
+    try {
+      zombieId = Integer.parseInt(zombieIdStr);
+    } catch (NumberFormatException e) {
+      Log.e("ZombieRun.ZombieHorde", "Could not parse integer zombie id from '" + zombieIdStr +
+          "'.", e);
+      return -1;
+    }
+
+    String indexOfPlayerZombieIsChasingStr = parts[1];
+    int indexOfPlayerZombieIsChasing;
+    try {
+      indexOfPlayerZombieIsChasing = Integer.parseInt(indexOfPlayerZombieIsChasingStr);
+      if (indexOfPlayerZombieIsChasing < 0 || indexOfPlayerZombieIsChasing >= players.size()) {
+        indexOfPlayerZombieIsChasing = -1;
+      }
+    } catch (NumberFormatException e) {
+      Log.e("ZombieRun.ZombieHorde", "Could not parse integer player index from '" +
+          indexOfPlayerZombieIsChasingStr + "' to determine which player this zombie is " +
+          "chasing.", e);
+      return -1;
+    }
+
+    String fpgpString = parts[2];
+    FloatingPointGeoPoint fpgp = FloatingPointGeoPoint.fromString(fpgpString);
+    if (fpgp == null) {
+      Log.e("ZombieRun.ZombieHorde", "Could not parse zombie position FloatingPointGeoPoint " +
+          "from encoded string '" + fpgpString + "'.");
+      return -1;
+    }
+
+    String zombieSpeedMetersPerSecondString = parts[3];
+    double zombieSpeedMetersPerSecond = 0;
+    try {
+      zombieSpeedMetersPerSecond = Double.parseDouble(zombieSpeedMetersPerSecondString);
+    } catch (NumberFormatException e) {
+      Log.e("ZombieRun.ZombieHorde", "Could not parse zombie speed from string '" +
+          zombieSpeedMetersPerSecondString + "'.");
+      return -1;
+    }
+
+    return add(zombieId,
+        fpgp.getLatitude(),
+        fpgp.getLongitude(),
+        indexOfPlayerZombieIsChasing,
+        zombieSpeedMetersPerSecond);
+  }
+
+  private void allocate(int capacity) {
+    ids = grow(ids, capacity);
+    easts = grow(easts, capacity);
+    norths = grow(norths, capacity);
+    speedsMetersPerSecond = grow(speedsMetersPerSecond, capacity);
+    chasingPlayerIndices = grow(chasingPlayerIndices, capacity);
+    randomDraws = grow(randomDraws, capacity);
+    advancedAtMs = grow(advancedAtMs, capacity);
+    wakeAtMs = grow(wakeAtMs, capacity);
+    if (correctionEasts != null) {
+      correctionEasts = grow(correctionEasts, capacity);
+      correctionNorths = grow(correctionNorths, capacity);
+    }
+    scheduler.ensureCapacity(capacity);
+    lodTiers = grow(lodTiers, capacity);
+    int words = (capacity + 63) >> 6;
+    noticingPlayerBits = grow(noticingPlayerBits, words);
+    nearPlayerBits = grow(nearPlayerBits, words);
+  }
+
+  private int[] grow(int[] array, int capacity) {
+    int[] grown = new int[capacity];
+    if (array != null) {
+      System.arraycopy(array, 0, grown, 0, Math.min(array.length, capacity));
+    }
+    return grown;
+  }
+
+  private double[] grow(double[] array, int capacity) {
+    double[] grown = new double[capacity];
+    if (array != null) {
+      System.arraycopy(array, 0, grown, 0, Math.min(array.length, capacity));
+    }
+    return grown;
+  }
+
+  private byte[] grow(byte[] array, int capacity) {
+    byte[] grown = new byte[capacity];
+    if (array != null) {
+      System.arraycopy(array, 0, grown, 0, Math.min(array.length, capacity));
+    }
+    return grown;
+  }
+
+  private long[] grow(long[] array, int capacity) {
+    long[] grown = new long[capacity];
+    if (array != null) {
+      System.arraycopy(array, 0, grown, 0, Math.min(array.length, capacity));
+    }
+    return grown;
+  }
+
+  // The gathers below reorder an array in place, through scratch, so that reconciling a horde
+  // into a snapshot's order doesn't allocate.  The scratch must be at least count long.
+
+  private static void gather(int[] array, int[] order, int count, long[] scratch) {
+    for (int i = 0; i < count; ++i) {
+      scratch[i] = array[order[i]];
+    }
+    for (int i = 0; i < count; ++i) {
+      array[i] = (int) scratch[i];
+    }
+  }
+
+  private static void gather(double[] array, int[] order, int count, long[] scratch) {
+    for (int i = 0; i < count; ++i) {
+      scratch[i] = Double.doubleToRawLongBits(array[order[i]]);
+    }
+    for (int i = 0; i < count; ++i) {
+      array[i] = Double.longBitsToDouble(scratch[i]);
+    }
+  }
+
+  private static void gather(byte[] array, int[] order, int count, long[] scratch) {
+    for (int i = 0; i < count; ++i) {
+      scratch[i] = array[order[i]];
+    }
+    for (int i = 0; i < count; ++i) {
+      array[i] = (byte) scratch[i];
+    }
+  }
+
+  private static void gatherBits(long[] bits, int[] order, int count, long[] scratch) {
+    int words = (count + 63) >> 6;
+    for (int i = 0; i < words; ++i) {
+      scratch[i] = 0;
+    }
+    for (int i = 0; i < count; ++i) {
+      setBit(scratch, i, getBit(bits, order[i]));
+    }
+    System.arraycopy(scratch, 0, bits, 0, words);
+  }
+
+  private static boolean getBit(long[] bits, int index) {
+    return (bits[index >> 6] & (1L << index)) != 0;
+  }
+
+  private static void setBit(long[] bits, int index, boolean value) {
+    if (value) {
+      bits[index >> 6] |= (1L << index);
+    } else {
+      bits[index >> 6] &= ~(1L << index);
+    }
+  }
+
+  /**
+   * Receives the zombies parsed from an encoded horde, with positions in the receiving horde's
+   * frame.
+   */
+  interface ZombieVisitor {
+    void visit(int id,
+        double eastMeters,
+        double northMeters,
+        int chasingPlayerIndex,
+        double zombieSpeedMetersPerSecond);
+  }
+
+  public static class ZombieListSerializer {
+
+    public static String toString(ZombieHorde zombies) {
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < zombies.size(); ++i) {
+        zombies.appendTo(builder, i);
+        builder.append("\n");
+      }
+      return builder.toString();
+    }
+
+    /**
+     * Parse a serialized horde, adding each zombie that parses successfully to the given horde.
+     * Also accepts the text form of the binary format written by
+     * {@link ZombieListBinarySerializer#toEncodedString(ZombieHorde)}.
+     */
+    public static void fromString(String encodedString, ZombieHorde zombies) {
+      if (ZombieListBinarySerializer.isEncodedString(encodedString)) {
+        ZombieListBinarySerializer.fromEncodedString(encodedString, zombies);
+        return;
+      }
+      String[] lines = encodedString.split("\n");
+      for (int i = 0; i < lines.length; ++i) {
+        zombies.addFromString(lines[i]);
+      }
+    }
+  }
+
+  /**
+   * A compact, versioned binary encoding of a horde, typically five times smaller than
+   * {@link ZombieListSerializer}'s text and much cheaper to produce and parse.
+   *
+   * Version 1 is a header of the magic byte 'Z', the version, the zombie count as a varint and the
+   * latitude and longitude of the horde's frame origin as doubles, followed by, for each zombie:
+   * <ul>
+   * <li>its id, as a signed varint difference from the previous zombie's id (from 0 for the first),
+   * <li>the index of the player it is chasing plus one, as a varint (0 for none),
+   * <li>its position east and north of the origin in whole centimeters, as signed varints,
+   * <li>its speed in 1/32 m/s steps, as a single byte, so up to about 8 m/s.
+   * </ul>
+   */
+  public static class ZombieListBinarySerializer {
+
+    private static final int magic = 'Z';
+    public static final int version = 1;
+    // Starts the text form; the text format always starts with a digit or '-'.
+    public static final char encodedStringPrefix = '!';
+    private static final double speedStepsPerMeterPerSecond = 32;
+
+    public static byte[] toBytes(ZombieHorde zombies) {
+      VarintWriter writer = new VarintWriter(32 + zombies.size() * 10);
+      write(zombies, writer);
+      return writer.toByteArray();
+    }
+
+    /**
+     * Encode the horde into the writer, after whatever it already holds.
+     */
+    public static void write(ZombieHorde zombies, VarintWriter writer) {
+      write(zombies, writer, zombies.size, null, null, null);
+    }
+
+    /**
+     * Encode the first size zombies of the horde, taking their positions, in centimeters, and the
+     * players they are chasing from the given arrays rather than the horde if they aren't null.
+     */
+    static void write(ZombieHorde zombies,
+        VarintWriter writer,
+        int size,
+        long[] eastsCentimeters,
+        long[] northsCentimeters,
+        int[] chasingPlayerIndices) {
+      LocalFrame frame = zombies.frame;
+      writer.writeByte(magic);
+      writer.writeByte(version);
+      writer.writeVarint(size);
+      writer.writeDouble(frame == null ? 0 : frame.getOriginLatitude());
+      writer.writeDouble(frame == null ? 0 : frame.getOriginLongitude());
+      int previousId = 0;
+      for (int i = 0; i < size; ++i) {
+        int id = zombies.ids[i];
+        writer.writeSignedVarint((long) id - previousId);
+        previousId = id;
+        writer.writeVarint((chasingPlayerIndices == null ?
+            zombies.chasingPlayerIndices[i] : chasingPlayerIndices[i]) + 1);
+        writer.writeSignedVarint(eastsCentimeters == null ?
+            Math.round(zombies.easts[i] * 100) : eastsCentimeters[i]);
+        writer.writeSignedVarint(northsCentimeters == null ?
+            Math.round(zombies.norths[i] * 100) : northsCentimeters[i]);
+        long speedSteps =
+            Math.round(zombies.speedsMetersPerSecond[i] * speedStepsPerMeterPerSecond);
+        writer.writeByte((int) Math.max(0, Math.min(255, speedSteps)));
+      }
+    }
+
+    /**
+     * Parse an encoded horde, adding its zombies to the given horde.  If the horde is empty and
+     * has no frame, it takes the encoded frame.
+     *
+     * @return true if the whole horde was parsed; otherwise the zombies before the error have been
+     *    added.
+     */
+    public static boolean fromBytes(byte[] bytes, ZombieHorde zombies) {
+      return read(new VarintReader(bytes), zombies);
+    }
+
+    /**
+     * Parse an encoded horde from the reader; see {@link #fromBytes(byte[], ZombieHorde)}.
+     */
+    public static boolean read(VarintReader reader, ZombieHorde zombies) {
+      return readHorde(reader, zombies) != null;
+    }
+
+    /**
+     * @return The frame the encoded positions were relative to, or null if the horde could not be
+     *    parsed.
+     */
+    static LocalFrame readHorde(VarintReader reader, ZombieHorde zombies) {
+      return readHorde(reader, zombies, null);
+    }
+
+    /**
+     * Parse an encoded horde, passing each zombie, in the frame of the given horde, to the visitor
+     * instead of adding it, or adding it if the visitor is null.
+     */
+    static LocalFrame readHorde(VarintReader reader, ZombieHorde zombies, ZombieVisitor visitor) {
+      try {
+        int magic = reader.readByte();
+        int version = reader.readByte();
+        if (magic != ZombieListBinarySerializer.magic ||
+            version != ZombieListBinarySerializer.version) {
+          Log.e("ZombieRun.ZombieHorde", "Unsupported binary horde format, magic " + magic +
+              " version " + version + ".");
+          return null;
+        }
+        int count = reader.readVarintInt();
+        double originLatitude = reader.readDouble();
+        double originLongitude = reader.readDouble();
+        LocalFrame encodedFrame = zombies.frame;
+        if (encodedFrame == null ||
+            encodedFrame.getOriginLatitude() != originLatitude ||
+            encodedFrame.getOriginLongitude() != originLongitude) {
+          encodedFrame = new LocalFrame(originLatitude, originLongitude);
+          if (zombies.frame == null && zombies.size == 0) {
+            zombies.setLocalFrame(encodedFrame);
+          }
+        }
+        // Positions can be copied straight in when the frames agree.
+        boolean sameFrame = encodedFrame == zombies.frame;
+        LocalFrame frame = zombies.frame;
+        int playerCount = zombies.players.size();
+
+        int id = 0;
+        for (int i = 0; i < count; ++i) {
+          id += (int) reader.readSignedVarint();
+          int chasingPlayerIndex = reader.readVarintInt() - 1;
+          if (chasingPlayerIndex >= playerCount) {
+            chasingPlayerIndex = -1;
+          }
+          double eastMeters = reader.readSignedVarint() / 100.0;
+          double northMeters = reader.readSignedVarint() / 100.0;
+          double speedMetersPerSecond = reader.readByte() / speedStepsPerMeterPerSecond;
+          if (!sameFrame) {
+            double lat = encodedFrame.toLatitude(northMeters);
+            double lon = encodedFrame.toLongitude(eastMeters);
+            if (frame == null) {
+              zombies.setLocalFrame(new LocalFrame(lat, lon));
+              frame = zombies.frame;
+            }
+            eastMeters = frame.toEastMeters(lon);
+            northMeters = frame.toNorthMeters(lat);
+          }
+          if (visitor == null) {
+            zombies.addInFrame(id, eastMeters, northMeters, chasingPlayerIndex,
+                speedMetersPerSecond);
+          } else {
+            visitor.visit(id, eastMeters, northMeters, chasingPlayerIndex, speedMetersPerSecond);
+          }
+        }
+        return encodedFrame;
+      } catch (IllegalArgumentException e) {
+        Log.e("ZombieRun.ZombieHorde", "Could not parse binary horde.", e);
+        return null;
+      }
+    }
+
+    /**
+     * Encode the horde as text, for the game server and other places that only carry strings.
+     * {@link ZombieListSerializer#fromString(String, ZombieHorde)} accepts the result.
+     */
+    public static String toEncodedString(ZombieHorde zombies) {
+      return encodedStringPrefix + UrlSafeBase64.encode(toBytes(zombies));
+    }
+
+    public static boolean isEncodedString(String encodedString) {
+      return encodedString.length() > 0 && encodedString.charAt(0) == encodedStringPrefix;
+    }
+
+    public static boolean fromEncodedString(String encodedString, ZombieHorde zombies) {
+      byte[] bytes;
+      try {
+        bytes = UrlSafeBase64.decode(encodedString, 1);
+      } catch (IllegalArgumentException e) {
+        Log.e("ZombieRun.ZombieHorde", "Could not decode binary horde string.", e);
+        return false;
+      }
+      return fromBytes(bytes, zombies);
+    }
+  }
+}
@@ -1,124 +1,148 @@
 package net.peterd.zombierun.entity;
 
-import java.util.List;
-
 import net.peterd.zombierun.util.Log;
 
 import net.peterd.zombierun.constants.Constants;
 import net.peterd.zombierun.game.GameState;
-import net.peterd.zombierun.service.GameEventBroadcaster;
 import net.peterd.zombierun.util.FloatingPointGeoPoint;
-import net.peterd.zombierun.util.GeoPointUtil;
+import net.peterd.zombierun.util.GameRandom;
+import net.peterd.zombierun.util.LocalFrame;
 
+/**
+ * Populates a game's horde.  Works in the game's {@link LocalFrame}, in meters east and north of
+ * the origin.
+ */
 public class ZombiePopulator {
 
   private final GameState gameState;
-  private final FloatingPointGeoPoint startingLocation;
-  private final FloatingPointGeoPoint destination;
-  private final GameEventBroadcaster gameEventBroadcaster;
+  private final LocalFrame frame;
+  private final double startingEastMeters;
+  private final double startingNorthMeters;
+  private final double destinationEastMeters;
+  private final double destinationNorthMeters;
   private final double averageZombieSpeedMetersPerSecond;
   private final double zombiesPerSquareKilometer;
+  private final GameRandom random;
   
   public ZombiePopulator(GameState gameState,
+      LocalFrame frame,
       FloatingPointGeoPoint startingLocation,
       FloatingPointGeoPoint destination,
       double averageZombieSpeedMetersPerSecond,
-      double zombiesPerSquareKilometer,
-      GameEventBroadcaster gameEventBroadcaster) {
+      double zombiesPerSquareKilometer) {
     this.gameState = gameState;
-    this.startingLocation = startingLocation;
-    this.destination = destination;
+    this.frame = frame;
+    this.startingEastMeters = frame.toEastMeters(startingLocation.getLongitude());
+    this.startingNorthMeters = frame.toNorthMeters(startingLocation.getLatitude());
+    this.destinationEastMeters = frame.toEastMeters(destination.getLongitude());
+    this.destinationNorthMeters = frame.toNorthMeters(destination.getLatitude());
     this.averageZombieSpeedMetersPerSecond = averageZombieSpeedMetersPerSecond;
     this.zombiesPerSquareKilometer = zombiesPerSquareKilometer;
-    this.gameEventBroadcaster = gameEventBroadcaster;
+    this.random = gameState.getRandom();
   }
   
 
   private double maxRadiusMeters;
+  // Scratch space for the point generators, east in element 0 and north in element 1.
+  private final double[] point = new double[2];
   public void populate() {
     int zombieId = 0;
-    List<Zombie> zombies = gameState.getZombies();
-    List<Player> players = gameState.getPlayers();
-    GameEventBroadcaster broadcaster = gameEventBroadcaster;
+    ZombieHorde zombies = gameState.getZombies();
+    LocalFrame frame = this.frame;
+    double[] point = this.point;
     double averageZombieSpeed = averageZombieSpeedMetersPerSecond;
     
-    maxRadiusMeters = GeoPointUtil.distanceMeters(startingLocation.getLatitude(), 
-        startingLocation.getLongitude(), 
-        destination.getLatitude(),
-        destination.getLongitude()) * 2;
+    maxRadiusMeters = distanceMeters(startingEastMeters,
+        startingNorthMeters,
+        destinationEastMeters,
+        destinationNorthMeters) * 2;
     double areaOfPopulationSquareKilometers = Math.PI * Math.pow(maxRadiusMeters / 1000, 2);
     int zombieCount =
         Math.min(
             (int) Math.round(areaOfPopulationSquareKilometers * zombiesPerSquareKilometer),
             Constants.maxZombieCount);
+    zombies.ensureCapacity(zombieCount);
     
     while (true) {
-      int clusterSize = (int) Math.round(Math.random() * Constants.maxZombieClusterSize) + 1;
-      FloatingPointGeoPoint clusterCentroid = getNewZombieClusterCentroid();
+      int clusterSize = (int) Math.round(random.nextDouble() * Constants.maxZombieClusterSize) + 1;
+      getNewZombieClusterCentroid(point);
+      double clusterEastMeters = point[0];
+      double clusterNorthMeters = point[1];
       for (int i = 0; i < clusterSize; i++) {
         if (zombies.size() >= zombieCount) {
           return;
         }
-        FloatingPointGeoPoint zombieLocation =
-            GeoPointUtil.getGeoPointNear(clusterCentroid.getLatitude(),
-                clusterCentroid.getLongitude(),
-                Math.random() * Constants.maxZombieClusterSizeMeters);
+        pointNear(clusterEastMeters,
+            clusterNorthMeters,
+            random.nextDouble() * Constants.maxZombieClusterSizeMeters,
+            point);
         
         double zombieSpeed =
             averageZombieSpeed +
-            ((Math.random() - 0.5) *
+            ((random.nextDouble() - 0.5) *
                 averageZombieSpeed *
                 Constants.zombieSpeedPercentageDeviationFromMean);
         
         Log.d("ZombieRun.ZombiePopulator", "Zombie speed: " + zombieSpeed + "m/s.");
-        Zombie zombie = new Zombie(zombieId,
-            zombieLocation,
-            players,
-            zombieSpeed,
-            broadcaster);
-        zombies.add(zombie);
+        zombies.add(zombieId,
+            frame.toLatitude(point[1]),
+            frame.toLongitude(point[0]),
+            -1,
+            zombieSpeed);
         zombieId++;
       }
     }
   }
   
-  private FloatingPointGeoPoint getPlayerDestinationMidpoint() {
-    double distanceBetween =
-        GeoPointUtil.distanceMeters(startingLocation.getLatitude(),
-            startingLocation.getLongitude(),
-            destination.getLatitude(),
-            destination.getLongitude());
-    return GeoPointUtil.geoPointTowardsTarget(
-        startingLocation.getLatitude(),
-        startingLocation.getLongitude(),
-        destination.getLatitude(),
-        destination.getLongitude(),
-        distanceBetween / 2);
-  }
-  
-  private FloatingPointGeoPoint getNewZombieClusterCentroid() {
-    FloatingPointGeoPoint startingLocation = this.startingLocation;
-    FloatingPointGeoPoint midPoint = getPlayerDestinationMidpoint();
-    FloatingPointGeoPoint candidatePoint =
-        GeoPointUtil.getGeoPointNear(
-            midPoint.getLatitude(),
-            midPoint.getLongitude(),
-            Math.random() * maxRadiusMeters);
+  private void getNewZombieClusterCentroid(double[] pointOut) {
+    double midpointEastMeters = (startingEastMeters + destinationEastMeters) / 2;
+    double midpointNorthMeters = (startingNorthMeters + destinationNorthMeters) / 2;
+    pointNear(midpointEastMeters,
+        midpointNorthMeters,
+        random.nextDouble() * maxRadiusMeters,
+        pointOut);
     double distanceFromStartingPoint =
-        GeoPointUtil.distanceMeters(
-            startingLocation.getLatitude(),
-            startingLocation.getLongitude(),
-            candidatePoint.getLatitude(),
-            candidatePoint.getLongitude());
+        distanceMeters(startingEastMeters, startingNorthMeters, pointOut[0], pointOut[1]);
     if (distanceFromStartingPoint < Constants.minZombieDistanceFromStartingPointMeters) {
-      return GeoPointUtil.geoPointTowardsTarget(
-          startingLocation.getLatitude(),
-          startingLocation.getLongitude(),
-          candidatePoint.getLatitude(),
-          candidatePoint.getLongitude(),
-          Constants.minZombieDistanceFromStartingPointMeters);
-    } else {
-      return candidatePoint;
+      pointTowardsTarget(startingEastMeters,
+          startingNorthMeters,
+          pointOut[0],
+          pointOut[1],
+          Constants.minZombieDistanceFromStartingPointMeters,
+          pointOut);
     }
   }
+
+  /**
+   * A point distanceMeters away from the origin in a random direction.
+   */
+  private void pointNear(double originEast,
+      double originNorth,
+      double distanceMeters,
+      double[] pointOut) {
+    pointTowardsTarget(originEast,
+        originNorth,
+        originEast + random.nextDouble() - 0.5,
+        originNorth + random.nextDouble() - 0.5,
+        distanceMeters,
+        pointOut);
+  }
+
+  private static void pointTowardsTarget(double originEast,
+      double originNorth,
+      double targetEast,
+      double targetNorth,
+      double distanceMeters,
+      double[] pointOut) {
+    double magnitude = distanceMeters(originEast, originNorth, targetEast, targetNorth);
+    double scale = magnitude > 0 ? distanceMeters / magnitude : 0;
+    pointOut[0] = originEast + (targetEast - originEast) * scale;
+    pointOut[1] = originNorth + (targetNorth - originNorth) * scale;
+  }
+
+  private static double distanceMeters(double aEast, double aNorth, double bEast, double bNorth) {
+    double eastDistance = bEast - aEast;
+    double northDistance = bNorth - aNorth;
+    return Math.sqrt(eastDistance * eastDistance + northDistance * northDistance);
+  }
 }
@@ -0,0 +1,146 @@
+package net.peterd.zombierun.entity;
+
+/**
+ * A priority queue of zombies, keyed by the game time at which each one next needs to be advanced.
+ * Zombies that can't possibly reach a player for a while are parked here until then, so a tick only
+ * has to touch the zombies that are due.
+ *
+ * Zombies are identified by their index in the {@link ZombieHorde}.  Each zombie is either parked
+ * or due, never both.  Not thread safe; only the ticking thread may use it.
+ */
+class ZombieScheduler {
+
+  // A binary min-heap of parked zombies, ordered by wake time.
+  private int[] heapWakeAtMs = new int[0];
+  private int[] heapIndices = new int[0];
+  private int heapSize = 0;
+
+  // The zombies collected by the last call to collectDue, in ascending index order.
+  private int[] due = new int[0];
+  private int dueCount = 0;
+  // Scratch space for putting the due zombies into index order without sorting.
+  private long[] dueBits = new long[0];
+
+  /**
+   * Make room for zombies with indices up to capacity - 1.
+   */
+  void ensureCapacity(int capacity) {
+    if (heapIndices.length >= capacity) {
+      return;
+    }
+    heapWakeAtMs = grow(heapWakeAtMs, heapSize, capacity);
+    heapIndices = grow(heapIndices, heapSize, capacity);
+    due = new int[capacity];
+    dueCount = 0;
+    dueBits = new long[(capacity + 63) >> 6];
+  }
+
+  void clear() {
+    heapSize = 0;
+    dueCount = 0;
+  }
+
+  int getParkedCount() {
+    return heapSize;
+  }
+
+  int getDueCount() {
+    return dueCount;
+  }
+
+  int getDue(int position) {
+    return due[position];
+  }
+
+  /**
+   * Park a zombie until the given game time.  A zombie parked until a time that has already come
+   * is due on the next call to {@link #collectDue(int, boolean, int)}.
+   */
+  void park(int index, int wakeAtMs) {
+    int[] heapWakeAtMs = this.heapWakeAtMs;
+    int[] heapIndices = this.heapIndices;
+    int position = heapSize++;
+    while (position > 0) {
+      int parent = (position - 1) >> 1;
+      if (heapWakeAtMs[parent] <= wakeAtMs) {
+        break;
+      }
+      heapWakeAtMs[position] = heapWakeAtMs[parent];
+      heapIndices[position] = heapIndices[parent];
+      position = parent;
+    }
+    heapWakeAtMs[position] = wakeAtMs;
+    heapIndices[position] = index;
+  }
+
+  /**
+   * Unpark every zombie that is due at nowMs, or every parked zombie if wakeAll is set.
+   *
+   * @param zombieCount The number of zombies in the horde.
+   * @return The number of due zombies, which can then be read with {@link #getDue(int)}.
+   */
+  int collectDue(int nowMs, boolean wakeAll, int zombieCount) {
+    long[] dueBits = this.dueBits;
+    int words = (zombieCount + 63) >> 6;
+    if (wakeAll) {
+      for (int i = 0; i < heapSize; ++i) {
+        int index = heapIndices[i];
+        dueBits[index >> 6] |= 1L << index;
+      }
+      heapSize = 0;
+    } else {
+      while (heapSize > 0 && heapWakeAtMs[0] <= nowMs) {
+        int index = heapIndices[0];
+        dueBits[index >> 6] |= 1L << index;
+        removeTop();
+      }
+    }
+
+    // Walking the bits yields the zombies in index order, so they're advanced (and their events
+    // raised) in the same order whichever of them happen to be due.
+    int[] due = this.due;
+    int dueCount = 0;
+    for (int word = 0; word < words; ++word) {
+      long bits = dueBits[word];
+      while (bits != 0) {
+        due[dueCount++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+      }
+      dueBits[word] = 0;
+    }
+    this.dueCount = dueCount;
+    return dueCount;
+  }
+
+  private void removeTop() {
+    int[] heapWakeAtMs = this.heapWakeAtMs;
+    int[] heapIndices = this.heapIndices;
+    int size = --heapSize;
+    int wakeAtMs = heapWakeAtMs[size];
+    int index = heapIndices[size];
+    int position = 0;
+    while (true) {
+      int child = (position << 1) + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heapWakeAtMs[child + 1] < heapWakeAtMs[child]) {
+        child++;
+      }
+      if (wakeAtMs <= heapWakeAtMs[child]) {
+        break;
+      }
+      heapWakeAtMs[position] = heapWakeAtMs[child];
+      heapIndices[position] = heapIndices[child];
+      position = child;
+    }
+    heapWakeAtMs[position] = wakeAtMs;
+    heapIndices[position] = index;
+  }
+
+  private static int[] grow(int[] array, int length, int capacity) {
+    int[] grown = new int[capacity];
+    System.arraycopy(array, 0, grown, 0, length);
+    return grown;
+  }
+}
@@ -9,25 +9,42 @@ import android.os.Bundle;
 import net.peterd.zombierun.util.Log;
 
 import net.peterd.zombierun.entity.Destination;
+import net.peterd.zombierun.entity.ParallelHordeAdvancer;
 import net.peterd.zombierun.entity.Player;
-import net.peterd.zombierun.entity.Zombie;
+import net.peterd.zombierun.entity.ZombieHorde;
 import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.util.GameRandom;
+import net.peterd.zombierun.util.LocalFrame;
 
 public class GameState {
   
-  private final List<Zombie> zombies = new ArrayList<Zombie>();
   private final List<Player> players = new ArrayList<Player>();
+  private final ZombieHorde zombies = new ZombieHorde(players);
   private int indexOfThisDevicePlayer;
   private Destination destination;
+  private ParallelHordeAdvancer parallelAdvancer;
+  private final GameRandom random;
 
   private static final String zombieHordeBundleKey =
       "net.peterd.zombierun.service.GameState.ZombieHorde";
+  private static final String binaryZombieHordeBundleKey =
+      "net.peterd.zombierun.service.GameState.ZombieHordeBinary";
 
   public GameState() {
-    // Nothing to see here.
+    this(null);
   }
   
   public GameState(Destination destination) {
+    this(destination, System.currentTimeMillis() ^ System.nanoTime());
+  }
+  
+  /**
+   * @param randomSeed Seeds everything random in the game, so that the same seed and the same
+   *    player movements reproduce the same game.
+   */
+  public GameState(Destination destination, long randomSeed) {
+    random = new GameRandom(randomSeed);
+    zombies.setRandomSeed(random.nextLong());
     setDestination(destination);
   }
   
@@ -39,7 +56,7 @@ public class GameState {
     this.destination = destination;
   }
   
-  public List<Zombie> getZombies() {
+  public ZombieHorde getZombies() {
     return zombies;
   }
   
@@ -47,9 +64,35 @@ public class GameState {
     return players;
   }
   
+  /**
+   * The game's random number generator.  Only for use on the game's own thread.
+   */
+  public GameRandom getRandom() {
+    return random;
+  }
+  
+  public LocalFrame getLocalFrame() {
+    return zombies.getLocalFrame();
+  }
+  
+  /**
+   * Set the east/north frame the game is simulated in, normally anchored at the starting location.
+   */
+  public void setLocalFrame(LocalFrame frame) {
+    zombies.setLocalFrame(frame);
+  }
+  
+  /**
+   * Advance the horde in parallel with the given advancer, or sequentially on the calling thread
+   * if it is null (the default).
+   */
+  public void setParallelAdvancer(ParallelHordeAdvancer parallelAdvancer) {
+    this.parallelAdvancer = parallelAdvancer;
+  }
+  
   public void setThisDevicePlayer(Player player) {
     indexOfThisDevicePlayer = players.indexOf(player);
-    assert indexOfThisDevicePlayer > 0;
+    assert indexOfThisDevicePlayer >= 0;
   }
   
   public Player getThisDevicePlayer() {
@@ -58,25 +101,36 @@ public class GameState {
   
   public void toBundle(Bundle state) {
     destination.toBundle(state);
-    state.putString(zombieHordeBundleKey, Zombie.ZombieListSerializer.toString(zombies));
+    // The text form, which keeps positions and speeds exactly; the binary one rounds them.
+    state.putString(zombieHordeBundleKey, ZombieHorde.ZombieListSerializer.toString(zombies));
   }
   
-  public void fromBundle(Bundle state, GameEventBroadcaster gameEventBroadcaster) {
+  public void fromBundle(Bundle state) {
     destination = Destination.fromBundle(state);
 
-    List<Zombie> zombies = this.zombies;
+    ZombieHorde zombies = this.zombies;
     zombies.clear();
-    zombies.addAll(
-        Zombie.ZombieListSerializer.fromString(
-            state.getString(zombieHordeBundleKey), players, gameEventBroadcaster));
+    String textZombies = state.getString(zombieHordeBundleKey);
+    if (textZombies != null) {
+      if (textZombies.length() > 0) {
+        ZombieHorde.ZombieListSerializer.fromString(textZombies, zombies);
+      }
+    } else {
+      // Saved in the binary form by an older version.
+      byte[] encodedZombies = state.getByteArray(binaryZombieHordeBundleKey);
+      if (encodedZombies != null) {
+        ZombieHorde.ZombieListBinarySerializer.fromBytes(encodedZombies, zombies);
+      }
+    }
   }
   
-  public void AdvanceZombies(long deltaTimeMs) {
+  public void AdvanceZombies(long deltaTimeMs, GameEventBroadcaster gameEventBroadcaster) {
     Log.d("ZombieRun.GameState", "Advancing Zombies.");
-    List<Zombie> zombies = getZombies();
-    // don't allocate a list iterator object.
-    for (int i = 0; i < zombies.size(); ++i) {
-      zombies.get(i).advance(deltaTimeMs, TimeUnit.MILLISECONDS);
+    ParallelHordeAdvancer parallelAdvancer = this.parallelAdvancer;
+    if (parallelAdvancer != null) {
+      parallelAdvancer.advance(zombies, deltaTimeMs, TimeUnit.MILLISECONDS, gameEventBroadcaster);
+    } else {
+      zombies.advance(deltaTimeMs, TimeUnit.MILLISECONDS, gameEventBroadcaster);
     }
   }
 }
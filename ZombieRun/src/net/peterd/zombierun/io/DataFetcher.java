@@ -2,6 +2,7 @@ package net.peterd.zombierun.io;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 public interface DataFetcher {
@@ -9,4 +10,10 @@ public interface DataFetcher {
   BufferedReader getData(String url) throws IOException;
   
   BufferedReader getData(String url, Map<String, String> postVariables) throws IOException;
+
+  /**
+   * Like {@link #getData(String, Map)}, but for reading the response's bytes as they arrive.  The
+   * caller closes the stream.
+   */
+  InputStream openStream(String url, Map<String, String> postVariables) throws IOException;
 }
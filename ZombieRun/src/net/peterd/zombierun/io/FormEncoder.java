@@ -0,0 +1,114 @@
+package net.peterd.zombierun.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Builds an application/x-www-form-urlencoded request body as bytes, escaping names and values as
+ * it goes rather than through URLEncoder's intermediate Strings.  Can be {@link #reset()} and
+ * reused.
+ */
+public class FormEncoder {
+
+  private static final byte[] hexDigits = {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+  private byte[] bytes;
+  private int length = 0;
+
+  public FormEncoder() {
+    this(256);
+  }
+
+  public FormEncoder(int initialCapacity) {
+    bytes = new byte[Math.max(16, initialCapacity)];
+  }
+
+  public FormEncoder reset() {
+    length = 0;
+    return this;
+  }
+
+  public FormEncoder add(String name, String value) {
+    if (length > 0) {
+      append('&');
+    }
+    appendEscaped(name);
+    append('=');
+    if (value != null) {
+      appendEscaped(value);
+    }
+    return this;
+  }
+
+  public int size() {
+    return length;
+  }
+
+  /**
+   * @return The buffer the body is in; only the first {@link #size()} bytes are valid.
+   */
+  public byte[] getBuffer() {
+    return bytes;
+  }
+
+  public void writeTo(OutputStream output) throws IOException {
+    output.write(bytes, 0, length);
+  }
+
+  @Override
+  public String toString() {
+    char[] characters = new char[length];
+    for (int i = 0; i < length; ++i) {
+      characters[i] = (char) bytes[i];
+    }
+    return new String(characters);
+  }
+
+  private void appendEscaped(String string) {
+    for (int i = 0; i < string.length(); ++i) {
+      char c = string.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+          c == '-' || c == '_' || c == '.' || c == '*') {
+        append(c);
+      } else if (c == ' ') {
+        append('+');
+      } else if (c < 0x80) {
+        appendPercentEscaped(c);
+      } else {
+        // Rare; let the platform do the UTF-8, keeping surrogate pairs together.
+        int end = i + 1;
+        if (Character.isHighSurrogate(c) && end < string.length() &&
+            Character.isLowSurrogate(string.charAt(end))) {
+          end++;
+        }
+        byte[] utf8;
+        try {
+          utf8 = string.substring(i, end).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+          throw new IllegalStateException("UTF-8 is always supported.", e);
+        }
+        for (int j = 0; j < utf8.length; ++j) {
+          appendPercentEscaped(utf8[j] & 0xFF);
+        }
+        i = end - 1;
+      }
+    }
+  }
+
+  private void appendPercentEscaped(int b) {
+    append('%');
+    append(hexDigits[b >>> 4]);
+    append(hexDigits[b & 0xF]);
+  }
+
+  private void append(int b) {
+    if (length == bytes.length) {
+      byte[] grown = new byte[bytes.length * 2];
+      System.arraycopy(bytes, 0, grown, 0, length);
+      bytes = grown;
+    }
+    bytes[length++] = (byte) b;
+  }
+}
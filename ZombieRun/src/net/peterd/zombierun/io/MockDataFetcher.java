@@ -1,7 +1,9 @@
 package net.peterd.zombierun.io;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.util.Map;
 
@@ -37,6 +39,17 @@ public class MockDataFetcher implements DataFetcher {
     }
   }
 
+  public InputStream openStream(String url, Map<String, String> postVariables)
+      throws IOException {
+    String data = postResponses.get(Pair.newPair(url, postVariables));
+    if (data == null) {
+      throw new IOException("Response not set for url '" + url + "' and post variables " +
+          postVariables.toString() + ".");
+    } else {
+      return new ByteArrayInputStream(data.getBytes("UTF-8"));
+    }
+  }
+
   public static class Pair<T, V> {
     private final T t;
     private final V v;
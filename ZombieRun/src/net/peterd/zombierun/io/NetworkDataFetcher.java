@@ -1,53 +1,154 @@
 package net.peterd.zombierun.io;
 
 import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import net.peterd.zombierun.constants.MultiplayerConstants;
+
+/**
+ * Fetches data over HTTP, posting the variables as a URL-encoded form.
+ *
+ * Connections are kept alive and reused from the platform's pool: every response is read to its
+ * end before its connection is released, which is what lets the pool take the connection back
+ * rather than discarding it, so that a game's sync requests after the first skip the TCP
+ * handshake.  Responses are accepted gzipped, and request bodies are gzipped too if configured.
+ */
 public class NetworkDataFetcher implements DataFetcher {
 
+  // Responses with more than this left unread when closed aren't worth draining to save the
+  // connection.
+  private static final int maxDrainBytes = 64 * 1024;
+
+  private final int connectTimeoutMs;
+  private final int readTimeoutMs;
+  private final boolean compressRequestBodies;
+
+  public NetworkDataFetcher() {
+    this(MultiplayerConstants.connectTimeoutMs,
+        MultiplayerConstants.readTimeoutMs,
+        MultiplayerConstants.compressRequestBodies);
+  }
+
+  /**
+   * @param compressRequestBodies Whether to gzip request bodies of at least
+   *    {@link MultiplayerConstants#minCompressedRequestBytes}; the server must accept them.
+   */
+  public NetworkDataFetcher(int connectTimeoutMs,
+      int readTimeoutMs,
+      boolean compressRequestBodies) {
+    this.connectTimeoutMs = connectTimeoutMs;
+    this.readTimeoutMs = readTimeoutMs;
+    this.compressRequestBodies = compressRequestBodies;
+  }
+
   public BufferedReader getData(String url) throws IOException {
     Map<String, String> emptyMap = Collections.emptyMap();
     return getData(url, emptyMap);
   }
 
   public BufferedReader getData(String url, Map<String, String> postVariables) throws IOException {
-    URL u = new URL(url);
-    URLConnection connection = u.openConnection();
-    connection.addRequestProperty("User-Agent", "ZombieRun");
-    buildPostData(connection, postVariables);
-    InputStream content = connection.getInputStream();
-    return new BufferedReader(new InputStreamReader(content));
+    return new BufferedReader(new InputStreamReader(openStream(url, postVariables)));
   }
 
-  private void buildPostData(URLConnection connection, Map<String, String> postVariables)
+  public InputStream openStream(String url, Map<String, String> postVariables)
       throws IOException {
+    URLConnection urlConnection = new URL(url).openConnection();
+    if (!(urlConnection instanceof HttpURLConnection)) {
+      throw new IOException("Not an HTTP URL: '" + url + "'.");
+    }
+    HttpURLConnection connection = (HttpURLConnection) urlConnection;
+    connection.setConnectTimeout(connectTimeoutMs);
+    connection.setReadTimeout(readTimeoutMs);
+    connection.setUseCaches(false);
     connection.setDoInput(true);
     connection.setDoOutput(true);
-    connection.setUseCaches(false);
+    connection.setRequestMethod("POST");
+    connection.addRequestProperty("User-Agent", "ZombieRun");
+    connection.setRequestProperty("Connection", "keep-alive");
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+    writePostData(connection, postVariables);
+
+    int status = connection.getResponseCode();
+    if (status < 200 || status >= 300) {
+      InputStream error = connection.getErrorStream();
+      if (error != null) {
+        new DrainingInputStream(error).close();
+      }
+      throw new IOException("HTTP " + status + " from '" + url + "'.");
+    }
+    InputStream content = new DrainingInputStream(connection.getInputStream());
+    if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+      content = new GZIPInputStream(content);
+    }
+    return content;
+  }
+
+  private void writePostData(HttpURLConnection connection, Map<String, String> postVariables)
+      throws IOException {
     connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-    if (postVariables.size() > 1) {
-      StringBuilder postDataBuilder = new StringBuilder();
-      int i = 0;
-      for (Map.Entry<String, String> entry : postVariables.entrySet()) {
-        if (i != 0) {
-          postDataBuilder.append("&");
+    FormEncoder form = new FormEncoder();
+    for (Map.Entry<String, String> entry : postVariables.entrySet()) {
+      form.add(entry.getKey(), entry.getValue());
+    }
+
+    byte[] body = form.getBuffer();
+    int length = form.size();
+    if (compressRequestBodies && length >= MultiplayerConstants.minCompressedRequestBytes) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2);
+      GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+      form.writeTo(gzip);
+      gzip.close();
+      body = compressed.toByteArray();
+      length = body.length;
+      connection.setRequestProperty("Content-Encoding", "gzip");
+    }
+
+    // With the length known up front, the body streams straight to the socket rather than being
+    // buffered again by the connection.
+    connection.setFixedLengthStreamingMode(length);
+    OutputStream output = connection.getOutputStream();
+    try {
+      output.write(body, 0, length);
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Reads what's left of the response when closed, so that the connection can be reused.
+   */
+  private static class DrainingInputStream extends FilterInputStream {
+
+    DrainingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        byte[] buffer = new byte[1024];
+        int drained = 0;
+        int read;
+        while (drained < maxDrainBytes && (read = in.read(buffer)) >= 0) {
+          drained += read;
         }
-        postDataBuilder.append(entry.getKey());
-        postDataBuilder.append("=");
-        postDataBuilder.append(entry.getValue());
-        i++;
+      } catch (IOException e) {
+        // The connection won't be reused; nothing else is lost.
+      } finally {
+        super.close();
       }
-      DataOutputStream output = new DataOutputStream(connection.getOutputStream());
-      output.writeBytes(postDataBuilder.toString());
-      output.flush();
-      output.close();
     }
   }
 }
@@ -1,9 +1,10 @@
 package net.peterd.zombierun.overlay;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 
-import net.peterd.zombierun.entity.Zombie;
+import net.peterd.zombierun.entity.ZombieHorde;
 import net.peterd.zombierun.game.GameEvent;
 import net.peterd.zombierun.service.GameEventListener;
 import android.graphics.Canvas;
@@ -18,13 +19,16 @@ import com.google.android.maps.OverlayItem;
 
 public class ZombieOverlay extends Overlay implements GameEventListener {
 
-  private final List<Zombie> zombies;
+  public static final EnumSet<GameEvent> subscribedGameEvents =
+      EnumSet.of(GameEvent.UPDATED_ZOMBIE_LOCATIONS);
+
+  private final ZombieHorde zombies;
   private final MapView mapView;
   private final Drawable zombieMeanderingDrawable;
   private final Drawable zombieNoticingPlayerDrawable;
   private ItemizedOverlay<ZombieOverlayItem> internalOverlay;
 
-  public ZombieOverlay(List<Zombie> zombies, MapView mapView, Drawable zombieMeanderingDrawable,
+  public ZombieOverlay(ZombieHorde zombies, MapView mapView, Drawable zombieMeanderingDrawable,
       Drawable zombieNoticingPlayeDrawable) {
     super();
     this.zombies = zombies;
@@ -53,7 +57,8 @@ public class ZombieOverlay extends Overlay implements GameEventListener {
   }
 
   private void initInternalOverlay() {
-    List<Zombie> visibleZombies = new ArrayList<Zombie>(zombies.size());
+    ZombieHorde zombies = this.zombies;
+    List<ZombieOverlayItem> visibleZombies = new ArrayList<ZombieOverlayItem>();
     MapView mapView = this.mapView;
     GeoPoint mapCenter = mapView.getMapCenter();
     int latSpan = mapView.getLatitudeSpan();
@@ -64,14 +69,15 @@ public class ZombieOverlay extends Overlay implements GameEventListener {
     int maxLon = mapCenter.getLongitudeE6() + lonSpan / 2;
     int minLon = mapCenter.getLongitudeE6() - lonSpan / 2;
 
-    List<Zombie> zombies = this.zombies;
     for (int i = 0; i < zombies.size(); ++i) {
-      Zombie zombie = zombies.get(i);
-      if (zombie.getLatitudeE6() < maxLat &&
-          zombie.getLatitudeE6() > minLat &&
-          zombie.getLongitudeE6() < maxLon &&
-          zombie.getLongitudeE6() > minLon) {
-        visibleZombies.add(zombie);
+      int latE6 = zombies.getLatitudeE6(i);
+      int lonE6 = zombies.getLongitudeE6(i);
+      if (latE6 < maxLat &&
+          latE6 > minLat &&
+          lonE6 < maxLon &&
+          lonE6 > minLon) {
+        visibleZombies.add(
+            new ZombieOverlayItem(new GeoPoint(latE6, lonE6), zombies.isNoticingPlayer(i)));
       }
     }
 
@@ -84,9 +90,9 @@ public class ZombieOverlay extends Overlay implements GameEventListener {
 
   private class ItemizedZombieOverlay extends ItemizedOverlay<ZombieOverlayItem> {
 
-    private final List<Zombie> zombies;
+    private final List<ZombieOverlayItem> zombies;
 
-    public ItemizedZombieOverlay(List<Zombie> zombies) {
+    public ItemizedZombieOverlay(List<ZombieOverlayItem> zombies) {
       super(zombieMeanderingDrawable);
       this.zombies = zombies;
       boundCenterBottom(zombieMeanderingDrawable);
@@ -96,7 +102,7 @@ public class ZombieOverlay extends Overlay implements GameEventListener {
 
     @Override
     protected ZombieOverlayItem createItem(int i) {
-      return new ZombieOverlayItem(zombies.get(i));
+      return zombies.get(i);
     }
 
     @Override
@@ -106,16 +112,16 @@ public class ZombieOverlay extends Overlay implements GameEventListener {
   }
 
   private class ZombieOverlayItem extends OverlayItem {
-    private final Zombie zombie;
+    private final boolean isNoticingPlayer;
 
-    public ZombieOverlayItem(Zombie zombie) {
-      super(new GeoPoint(zombie.getLatitudeE6(), zombie.getLongitudeE6()), "", "");
-      this.zombie = zombie;
+    public ZombieOverlayItem(GeoPoint location, boolean isNoticingPlayer) {
+      super(location, "", "");
+      this.isNoticingPlayer = isNoticingPlayer;
     }
 
     @Override
     public Drawable getMarker(int stateBitset) {
-      return zombie.isNoticingPlayer() ? zombieNoticingPlayerDrawable : zombieMeanderingDrawable;
+      return isNoticingPlayer ? zombieNoticingPlayerDrawable : zombieMeanderingDrawable;
     }
   }
 }
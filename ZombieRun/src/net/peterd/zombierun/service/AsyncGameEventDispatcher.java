@@ -0,0 +1,223 @@
+package net.peterd.zombierun.service;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.peterd.zombierun.game.GameEvent;
+
+/**
+ * Broadcasts events asynchronously: {@link #broadcastEvent(GameEvent)} only queues the event, and
+ * the {@link GameEventHandler}'s listeners are called later, from a drain run on the consumer
+ * {@link Executor} (typically the UI thread).  The simulation can then raise events mid-tick
+ * without the tick having to wait for vibrating, animating the map or redrawing overlays.
+ *
+ * Events from the producer thread, the first thread to broadcast through the dispatcher, go into a
+ * preallocated single-producer ring buffer.  Events raised by a listener during a drain are
+ * dispatched once the event being dispatched has finished, in the order they were raised, before
+ * the next queued event.  Events from any other thread, or from the producer while the ring is
+ * full, go into an unbounded overflow queue, and from then on the producer's events follow them
+ * there until the consumer has caught up, so each thread's events are still dispatched in order.
+ */
+public class AsyncGameEventDispatcher implements GameEventBroadcaster {
+
+  private final GameEventHandler handler;
+  private final Executor consumer;
+
+  private final GameEvent[] slots;
+  private final long[] publishedAtNanos;
+  private final int mask;
+  // The number of events ever published to, and consumed from, the ring.
+  private volatile long head = 0;
+  private volatile long tail = 0;
+  private final AtomicReference<Thread> producer = new AtomicReference<Thread>();
+
+  private final ConcurrentLinkedQueue<QueuedEvent> overflow =
+      new ConcurrentLinkedQueue<QueuedEvent>();
+
+  private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+  private final Runnable drainer = new Runnable() {
+        public void run() {
+          drain();
+        }
+      };
+  private volatile Thread drainingThread = null;
+  // Events raised by listeners during a drain.  Only touched by the draining thread.
+  private GameEvent[] reentrantEvents = new GameEvent[8];
+  private int reentrantHead = 0;
+  private int reentrantSize = 0;
+
+  private volatile int maxQueueDepth = 0;
+  private final AtomicLong overflowedEvents = new AtomicLong();
+  private volatile long dispatchedEvents = 0;
+  private volatile long lastDispatchLagNanos = 0;
+  private volatile long maxDispatchLagNanos = 0;
+  private volatile long totalDispatchLagNanos = 0;
+
+  /**
+   * @param capacity The number of events the ring buffer holds; rounded up to a power of two.
+   * @param consumer Runs the drains, and so the listeners.  Must run one task at a time, as the UI
+   *    thread does.
+   */
+  public AsyncGameEventDispatcher(GameEventHandler handler, int capacity, Executor consumer) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1.");
+    }
+    int roundedCapacity = 1;
+    while (roundedCapacity < capacity) {
+      roundedCapacity <<= 1;
+    }
+    this.handler = handler;
+    this.consumer = consumer;
+    slots = new GameEvent[roundedCapacity];
+    publishedAtNanos = new long[roundedCapacity];
+    mask = roundedCapacity - 1;
+  }
+
+  public void broadcastEvent(GameEvent event) {
+    Thread currentThread = Thread.currentThread();
+    if (currentThread == drainingThread) {
+      queueReentrantEvent(event);
+      return;
+    }
+
+    producer.compareAndSet(null, currentThread);
+    long head = this.head;
+    int depth = (int) (head - tail);
+    if (producer.get() == currentThread && depth <= mask && overflow.isEmpty()) {
+      int slot = (int) head & mask;
+      slots[slot] = event;
+      publishedAtNanos[slot] = System.nanoTime();
+      // Publishes the slot to the consumer.
+      this.head = head + 1;
+      depth++;
+    } else {
+      overflow.add(new QueuedEvent(event, System.nanoTime()));
+      overflowedEvents.incrementAndGet();
+      depth += overflow.size();
+    }
+    if (depth > maxQueueDepth) {
+      maxQueueDepth = depth;
+    }
+
+    if (drainScheduled.compareAndSet(false, true)) {
+      consumer.execute(drainer);
+    }
+  }
+
+  /**
+   * Dispatch every queued event.  Called on the consumer; must not be called concurrently.
+   */
+  void drain() {
+    drainScheduled.set(false);
+    drainingThread = Thread.currentThread();
+    try {
+      while (true) {
+        long tail = this.tail;
+        if (tail < head) {
+          int slot = (int) tail & mask;
+          GameEvent event = slots[slot];
+          long publishedAtNanos = this.publishedAtNanos[slot];
+          slots[slot] = null;
+          // Frees the slot for the producer.
+          this.tail = tail + 1;
+          dispatch(event, publishedAtNanos);
+          continue;
+        }
+        QueuedEvent queuedEvent = overflow.poll();
+        if (queuedEvent == null) {
+          break;
+        }
+        dispatch(queuedEvent.event, queuedEvent.publishedAtNanos);
+      }
+    } finally {
+      drainingThread = null;
+    }
+  }
+
+  private void dispatch(GameEvent event, long publishedAtNanos) {
+    long lagNanos = System.nanoTime() - publishedAtNanos;
+    lastDispatchLagNanos = lagNanos;
+    if (lagNanos > maxDispatchLagNanos) {
+      maxDispatchLagNanos = lagNanos;
+    }
+    totalDispatchLagNanos += lagNanos;
+    dispatchedEvents++;
+
+    handler.broadcastEvent(event);
+    // Run whatever the listeners raised to completion before moving on.
+    while (reentrantSize > 0) {
+      GameEvent reentrantEvent = reentrantEvents[reentrantHead];
+      reentrantEvents[reentrantHead] = null;
+      reentrantHead = (reentrantHead + 1) % reentrantEvents.length;
+      reentrantSize--;
+      handler.broadcastEvent(reentrantEvent);
+    }
+  }
+
+  private void queueReentrantEvent(GameEvent event) {
+    if (reentrantSize == reentrantEvents.length) {
+      GameEvent[] grown = new GameEvent[reentrantEvents.length * 2];
+      for (int i = 0; i < reentrantSize; ++i) {
+        grown[i] = reentrantEvents[(reentrantHead + i) % reentrantEvents.length];
+      }
+      reentrantEvents = grown;
+      reentrantHead = 0;
+    }
+    reentrantEvents[(reentrantHead + reentrantSize) % reentrantEvents.length] = event;
+    reentrantSize++;
+  }
+
+  /**
+   * @return The number of events waiting to be dispatched.
+   */
+  public int getQueueDepth() {
+    return (int) (head - tail) + overflow.size();
+  }
+
+  public int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /**
+   * @return The number of events that didn't fit in, or came from a thread other than the
+   *    producer of, the ring buffer.
+   */
+  public long getOverflowedEvents() {
+    return overflowedEvents.get();
+  }
+
+  public long getDispatchedEvents() {
+    return dispatchedEvents;
+  }
+
+  /**
+   * @return How long the most recently dispatched event waited between being broadcast and being
+   *    dispatched.
+   */
+  public long getLastDispatchLagNanos() {
+    return lastDispatchLagNanos;
+  }
+
+  public long getMaxDispatchLagNanos() {
+    return maxDispatchLagNanos;
+  }
+
+  public long getMeanDispatchLagNanos() {
+    long dispatchedEvents = this.dispatchedEvents;
+    return dispatchedEvents == 0 ? 0 : totalDispatchLagNanos / dispatchedEvents;
+  }
+
+  private static class QueuedEvent {
+
+    private final GameEvent event;
+    private final long publishedAtNanos;
+
+    public QueuedEvent(GameEvent event, long publishedAtNanos) {
+      this.event = event;
+      this.publishedAtNanos = publishedAtNanos;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package net.peterd.zombierun.service;
+
+import net.peterd.zombierun.game.GameEvent;
+
+/**
+ * A {@link GameEventBroadcaster} that records events instead of delivering them, so that they can
+ * be delivered later, in order, from another thread.  Not thread-safe; each producer should have
+ * its own buffer.
+ */
+public class GameEventBuffer implements GameEventBroadcaster {
+
+  private GameEvent[] events = new GameEvent[8];
+  private int size = 0;
+
+  public void broadcastEvent(GameEvent event) {
+    if (size == events.length) {
+      GameEvent[] grown = new GameEvent[events.length * 2];
+      System.arraycopy(events, 0, grown, 0, size);
+      events = grown;
+    }
+    events[size++] = event;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Discard every buffered event.
+   */
+  public void clear() {
+    for (int i = 0; i < size; ++i) {
+      events[i] = null;
+    }
+    size = 0;
+  }
+
+  /**
+   * Broadcast every buffered event, in the order it was recorded, and empty the buffer.
+   */
+  public void drainTo(GameEventBroadcaster broadcaster) {
+    GameEvent[] events = this.events;
+    int size = this.size;
+    this.size = 0;
+    for (int i = 0; i < size; ++i) {
+      GameEvent event = events[i];
+      events[i] = null;
+      broadcaster.broadcastEvent(event);
+    }
+  }
+}
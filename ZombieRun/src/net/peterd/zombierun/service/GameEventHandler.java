@@ -1,49 +1,89 @@
 package net.peterd.zombierun.service;
 
-import java.util.WeakHashMap;
+import java.lang.ref.WeakReference;
+import java.util.EnumMap;
+import java.util.EnumSet;
 
 import net.peterd.zombierun.game.GameEvent;
 import net.peterd.zombierun.util.Log;
+import net.peterd.zombierun.util.WeakListenerSet;
 
+/**
+ * Broadcasts {@link GameEvent}s to the listeners subscribed to them.  Each event type has its own
+ * {@link WeakListenerSet}, so a broadcast only touches the listeners that care about that event.
+ *
+ * Broadcasting takes no lock.  Listeners are free to broadcast further events, or to subscribe and
+ * unsubscribe, from inside {@link GameEventListener#receiveEvent(GameEvent)}, from any thread.
+ */
 public class GameEventHandler implements GameEventBroadcaster {
 
-  // We use a weak hash map to ensure that if an object is added to this as a
-  // listener, but never removes itself, we won't keep it from being
-  // garbage collected.
-  private final WeakHashMap<GameEventListener, Boolean> listeners =
-      new WeakHashMap<GameEventListener, Boolean>();
-
-  public synchronized boolean addListener(GameEventListener listener) {
-    Log.d("ZombieRun.GameEventHandler", "Adding GameEventListener " + listener.toString());
-    if (listeners.put(listener, true) == null) {
-      return true;
-    } else {
-      return false;
+  // Filled in once by the constructor and never modified afterwards, so reading it needs no lock.
+  private final EnumMap<GameEvent, WeakListenerSet<GameEventListener>> listeners =
+      new EnumMap<GameEvent, WeakListenerSet<GameEventListener>>(GameEvent.class);
+
+  public GameEventHandler() {
+    for (GameEvent event : GameEvent.values()) {
+      listeners.put(event, new WeakListenerSet<GameEventListener>());
+    }
+  }
+
+  /**
+   * Subscribe a listener to every event.
+   */
+  public boolean addListener(GameEventListener listener) {
+    return addListener(listener, EnumSet.allOf(GameEvent.class));
+  }
+
+  /**
+   * Subscribe a listener to the given events.
+   *
+   * @return true if the listener was not already subscribed to at least one of the events.
+   */
+  public boolean addListener(GameEventListener listener, EnumSet<GameEvent> events) {
+    Log.d("ZombieRun.GameEventHandler", "Adding GameEventListener " + listener.toString() +
+        " for events " + events);
+    boolean added = false;
+    for (GameEvent event : events) {
+      added |= listeners.get(event).add(listener);
     }
+    return added;
   }
 
-  public synchronized boolean removeListener(GameEventListener listener) {
+  /**
+   * Unsubscribe a listener from every event.
+   *
+   * @return true if the listener was subscribed to any event.
+   */
+  public boolean removeListener(GameEventListener listener) {
     Log.d("ZombieRun.GameEventHandler", "Removing GameEventListener " + listener.toString());
-    return listeners.remove(listener);
+    boolean removed = false;
+    for (WeakListenerSet<GameEventListener> eventListeners : listeners.values()) {
+      removed |= eventListeners.remove(listener);
+    }
+    return removed;
   }
 
-  public synchronized void clearListeners() {
+  public void clearListeners() {
     Log.d("ZombieRun.GameEventHandler", "Clearing GameEventListeners.");
-    listeners.clear();
+    for (WeakListenerSet<GameEventListener> eventListeners : listeners.values()) {
+      eventListeners.clear();
+    }
   }
 
-  public synchronized void broadcastEvent(GameEvent event) {
-    int severity = android.util.Log.INFO;
+  public void broadcastEvent(GameEvent event) {
+    int severity = Log.INFO;
     if (event == GameEvent.UPDATED_PLAYER_LOCATIONS ||
         event == GameEvent.UPDATED_ZOMBIE_LOCATIONS) {
-      severity = android.util.Log.DEBUG;
+      severity = Log.DEBUG;
     }
 
     if (Log.loggingEnabled()) {
       Log.println(severity, "ZombieRun.GameEventHandler", "Broadcasting event " + event.name());
     }
 
-    for (GameEventListener listener : listeners.keySet()) {
+    WeakReference<GameEventListener>[] eventListeners = listeners.get(event).getSnapshot();
+    for (int i = 0; i < eventListeners.length; ++i) {
+      GameEventListener listener = eventListeners[i].get();
       if (listener != null) {
         listener.receiveEvent(event);
       }
@@ -1,22 +1,29 @@
 package net.peterd.zombierun.service;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
 import android.app.Activity;
 import android.os.Bundle;
 import android.os.Handler;
 import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.engine.GameEngine;
 import net.peterd.zombierun.entity.Destination;
 import net.peterd.zombierun.entity.Player;
-import net.peterd.zombierun.entity.Zombie;
 import net.peterd.zombierun.entity.ZombiePopulator;
-import net.peterd.zombierun.game.GameEvent;
 import net.peterd.zombierun.game.GameSettings;
 import net.peterd.zombierun.game.GameState;
 import net.peterd.zombierun.io.NetworkDataFetcher;
+import net.peterd.zombierun.service.remote.AsyncGameServerBridge;
 import net.peterd.zombierun.service.remote.GameOwnerStateSynchronizer;
 import net.peterd.zombierun.service.remote.GameServerBridge;
 import net.peterd.zombierun.service.remote.ParticipantStateSynchronizer;
 import net.peterd.zombierun.service.remote.RemoteGameStateSynchronizer;
+import net.peterd.zombierun.util.LocalFrame;
 import net.peterd.zombierun.util.FloatingPointGeoPoint;
+import net.peterd.zombierun.util.Log;
 
 /**
  * Responsible for maintaining game state.  Handles initializing the game state, updating it as the
@@ -28,11 +35,16 @@ public class GameService {
   
   private final HardwareManager hardwareManager;
   private final GameEventHandler eventHandler = new GameEventHandler();
-  private final GameServerBridge gameServerBridge = new GameServerBridge(new NetworkDataFetcher());
-  private GameServerBridge.ServerData gameServerData;
+  private final AsyncGameEventDispatcher eventDispatcher;
+  private final AsyncGameServerBridge asyncGameServerBridge =
+      new AsyncGameServerBridge(new GameServerBridge(new NetworkDataFetcher()));
+  private final Handler uiHandler = new Handler();
+  private volatile GameServerBridge.ServerData gameServerData;
+  // The create or join request in flight, if any.
+  private Future<?> pendingServerRequest;
 
   private GameState state;
-  private LocalGameStateInvalidator invalidator;
+  private GameEngine engine;
   private RemoteGameStateSynchronizer remoteSynchronizer;
   
   public GameService(Activity activity) {
@@ -42,11 +54,24 @@ public class GameService {
     // The HardwareManager does not hold onto the activity.
     hardwareManager = new HardwareManager(activity);
     hardwareManager.initializeHardware();
-    eventHandler.addListener(hardwareManager);
+    eventHandler.addListener(hardwareManager, HardwareManager.subscribedGameEvents);
+
+    // Listeners are run on the UI thread, after whatever raised the event has finished.
+    eventDispatcher = new AsyncGameEventDispatcher(eventHandler,
+        Constants.gameEventQueueCapacity,
+        new Executor() {
+          public void execute(Runnable runnable) {
+            uiHandler.post(runnable);
+          }
+        });
   }
   
   public void shutDown() {
     hardwareManager.deregisterManager();
+    if (remoteSynchronizer != null) {
+      remoteSynchronizer.stop();
+    }
+    asyncGameServerBridge.shutDown();
   }
   
   public HardwareManager getHardwareManager() {
@@ -61,21 +86,36 @@ public class GameService {
     return eventHandler;
   }
 
+  /**
+   * @return A broadcaster that queues events for the UI thread instead of calling listeners
+   *    inline; used by the simulation, and by listeners that raise events of their own.
+   */
+  public AsyncGameEventDispatcher getEventDispatcher() {
+    return eventDispatcher;
+  }
+
+  /**
+   * Join a game on the game server.  Returns at once; the game synchronizes once the server has
+   * answered.
+   */
   public void joinMultiPlayerGame(int gameId) {
-    // XXX: handle IO errors.
     // XXX: handle game not found.
-    // TODO: run this joining action in a non-UI thread.
-    gameServerData = gameServerBridge.join(gameId);
-    state = new GameState();
-    remoteSynchronizer =
-        new ParticipantStateSynchronizer(
-            gameServerData,
+    final GameState state = new GameState();
+    this.state = state;
+    track(asyncGameServerBridge.join(gameId, new ServerCallback(state) {
+      @Override
+      protected void onGameServerData(GameServerBridge.ServerData data) {
+        addThisDevicePlayer(state, data);
+        startSynchronizing(new ParticipantStateSynchronizer(
+            data,
             state,
-            gameServerBridge,
+            asyncGameServerBridge,
             Constants.multiPlayerGameSynchronizationIntervalMs,
-            eventHandler);
-    remoteSynchronizer.start();
-    eventHandler.addListener(remoteSynchronizer);
+            eventHandler));
+        // Keep the zombies moving between the owner's snapshots.
+        startEngine(state);
+      }
+    }));
     
     // TODO: wait for first successful game state fetch, then populate the local variables like the
     // destination and initial zombie locations.
@@ -84,22 +124,106 @@ public class GameService {
     // everything.  Just need to show an indicator that the game is not yet started.
   }
 
+  /**
+   * Create a game locally and register it with the game server.  Returns once the local game has
+   * started; it synchronizes once the server has answered.
+   */
   public void createMultiPlayerGame(FloatingPointGeoPoint startingLocation,
       Destination destination,
       GameSettings settings) {
     createGame(startingLocation, destination, settings);
-    // XXX: handle IO errors somehow.
-    // TODO: run this creating action in a non-UI thread.
-    gameServerData = gameServerBridge.create();
-    remoteSynchronizer =
-        new GameOwnerStateSynchronizer(
-            gameServerData,
+    final GameState state = this.state;
+    track(asyncGameServerBridge.create(new ServerCallback(state) {
+      @Override
+      protected void onGameServerData(GameServerBridge.ServerData data) {
+        startSynchronizing(new GameOwnerStateSynchronizer(
+            data,
             state,
-            gameServerBridge,
+            asyncGameServerBridge,
             Constants.multiPlayerGameSynchronizationIntervalMs,
-            eventHandler);
+            eventHandler));
+      }
+    }));
+  }
+
+  /**
+   * Add this device's player to a joined game at the index of the id the server gave it, with
+   * players without a location in the slots before it until the server reports them, and have it
+   * follow the hardware's location.
+   */
+  private void addThisDevicePlayer(GameState state, GameServerBridge.ServerData data) {
+    if (data.destination != null) {
+      Destination destination = Destination.fromString(data.destination);
+      if (destination != null) {
+        state.setDestination(destination);
+      }
+    }
+    List<Player> players = state.getPlayers();
+    while (players.size() < data.playerId) {
+      players.add(new Player(state.getDestination(), players.size(), null, eventDispatcher));
+    }
+    Player thisDevicePlayer = new Player(state.getDestination(),
+        data.playerId,
+        null,
+        eventDispatcher);
+    if (players.size() > data.playerId) {
+      players.set(data.playerId, thisDevicePlayer);
+    } else {
+      players.add(thisDevicePlayer);
+    }
+    state.setThisDevicePlayer(thisDevicePlayer);
+    hardwareManager.registerLocationListener(thisDevicePlayer);
+  }
+
+  private void startSynchronizing(RemoteGameStateSynchronizer synchronizer) {
+    if (remoteSynchronizer != null) {
+      remoteSynchronizer.stop();
+      eventHandler.removeListener(remoteSynchronizer);
+    }
+    remoteSynchronizer = synchronizer;
     remoteSynchronizer.start();
-    eventHandler.addListener(remoteSynchronizer);
+    eventHandler.addListener(remoteSynchronizer,
+        RemoteGameStateSynchronizer.subscribedGameEvents);
+  }
+
+  private void track(Future<?> serverRequest) {
+    if (pendingServerRequest != null) {
+      pendingServerRequest.cancel(true);
+    }
+    pendingServerRequest = serverRequest;
+  }
+
+  /**
+   * Hands a create or join response to the UI thread, unless another game has been started since.
+   */
+  private abstract class ServerCallback implements AsyncGameServerBridge.Callback {
+
+    private final GameState requestingState;
+
+    ServerCallback(GameState requestingState) {
+      this.requestingState = requestingState;
+    }
+
+    public void onResponse(final GameServerBridge.ServerData data) {
+      gameServerData = data;
+      uiHandler.post(new Runnable() {
+        public void run() {
+          if (state == requestingState) {
+            onGameServerData(data);
+          }
+        }
+      });
+    }
+
+    public void onFailure(IOException e) {
+      // XXX: tell the player.
+      Log.e("ZombieRun.GameService", "Could not reach the game server.", e);
+    }
+
+    /**
+     * Called on the UI thread.
+     */
+    protected abstract void onGameServerData(GameServerBridge.ServerData data);
   }
 
   public void createSinglePlayerGame(FloatingPointGeoPoint startingLocation,
@@ -127,36 +251,45 @@ public class GameService {
     state = new GameState(destination);
     GameState state = this.state;
     GameEventHandler handler = this.eventHandler;
+    LocalFrame frame = new LocalFrame(startingLocation);
+    state.setLocalFrame(frame);
 
     ZombiePopulator populator =
         new ZombiePopulator(state,
+            frame,
             startingLocation,
             destination.getLocation(),
             gameSettings.getZombieSpeedMetersPerSecond(),
-            (int) Math.round(gameSettings.getZombiesPerSquareKilometer()),
-            handler);
+            (int) Math.round(gameSettings.getZombiesPerSquareKilometer()));
     populator.populate();
     
     int nextPlayerId = state.getPlayers().size();
     Player thisDevicePlayer = new Player(state.getDestination(),
         nextPlayerId,
         null,
-        handler);
+        eventDispatcher);
     state.getPlayers().add(thisDevicePlayer);
     state.setThisDevicePlayer(thisDevicePlayer);
     hardwareManager.registerLocationListener(thisDevicePlayer);
     
-    registerAllEntitiesAsGameEventListeners(state, handler);
-    handler.addListener(hardwareManager);
+    handler.addListener(hardwareManager, HardwareManager.subscribedGameEvents);
     
-    invalidator = new LocalGameStateInvalidator(state, handler);
-    handler.addListener(invalidator);
-    invalidator.run();
+    startEngine(state);
+  }
+
+  private void startEngine(GameState state) {
+    if (engine != null) {
+      engine.stop();
+      eventHandler.removeListener(engine);
+    }
+    engine = new GameEngine(state, new HandlerTickScheduler(new Handler()), eventDispatcher);
+    eventHandler.addListener(engine, GameEngine.subscribedGameEvents);
+    engine.start();
   }
 
   public void onRestoreInstanceState(Bundle savedInstanceState) {
     if (savedInstanceState != null && state != null) {
-      state.fromBundle(savedInstanceState, eventHandler);
+      state.fromBundle(savedInstanceState);
     }
   }
 
@@ -165,47 +298,4 @@ public class GameService {
       state.toBundle(savedInstanceState);
     }
   }
-
-  private void registerAllEntitiesAsGameEventListeners(GameState state,
-      GameEventHandler gameEventHandler) {
-    for (Player player : state.getPlayers()) {
-      gameEventHandler.addListener(player);
-    }
-    for (Zombie zombie : state.getZombies()) {
-      gameEventHandler.addListener(zombie);
-    }
-  }
-  
-  private static class LocalGameStateInvalidator implements GameEventListener, Runnable {
-    
-    private final GameState state;
-    private final Handler handler = new Handler();
-    private final GameEventBroadcaster broadcaster;
-    private boolean gameActive = true;
-    
-    public LocalGameStateInvalidator(GameState state, GameEventBroadcaster broadcaster) {
-      this.state = state;
-      this.broadcaster = broadcaster;
-    }
-
-    public void receiveEvent(GameEvent event) {
-      if (event == GameEvent.GAME_RESUME ||
-          event == GameEvent.GAME_START) {
-        gameActive = true;
-      } else if (event == GameEvent.GAME_LOSE ||
-          event == GameEvent.GAME_PAUSE ||
-          event == GameEvent.GAME_QUIT ||
-          event == GameEvent.GAME_WIN) {
-        gameActive = false;
-      }
-    }
-    
-    public void run() {
-      if (gameActive) {
-        state.AdvanceZombies(Constants.gameUpdateDelayMs);
-        broadcaster.broadcastEvent(GameEvent.UPDATED_ZOMBIE_LOCATIONS);
-      }
-      handler.postDelayed(this, Constants.gameUpdateDelayMs);
-    }
-  }
 }
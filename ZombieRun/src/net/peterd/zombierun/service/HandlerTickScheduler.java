@@ -0,0 +1,37 @@
+package net.peterd.zombierun.service;
+
+import net.peterd.zombierun.engine.Clock;
+import net.peterd.zombierun.engine.TickScheduler;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Adapts an Android {@link Handler} to a {@link TickScheduler}, running tasks on the Handler's
+ * thread against the uptime clock the Handler schedules by.
+ */
+public class HandlerTickScheduler implements TickScheduler {
+
+  private static final Clock uptimeClock = new Clock() {
+        public long currentTimeMillis() {
+          return SystemClock.uptimeMillis();
+        }
+      };
+
+  private final Handler handler;
+
+  public HandlerTickScheduler(Handler handler) {
+    this.handler = handler;
+  }
+
+  public Clock getClock() {
+    return uptimeClock;
+  }
+
+  public void schedule(Runnable task, long delayMs) {
+    handler.postDelayed(task, delayMs);
+  }
+
+  public void cancel(Runnable task) {
+    handler.removeCallbacks(task);
+  }
+}
@@ -1,9 +1,7 @@
 package net.peterd.zombierun.service;
 
-import java.util.Collections;
-import java.util.ConcurrentModificationException;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.lang.ref.WeakReference;
+import java.util.EnumSet;
 
 import net.peterd.zombierun.R;
 import net.peterd.zombierun.constants.Constants;
@@ -11,6 +9,7 @@ import net.peterd.zombierun.game.GameEvent;
 import net.peterd.zombierun.util.FloatingPointGeoPoint;
 import net.peterd.zombierun.util.GeoPointUtil;
 import net.peterd.zombierun.util.Log;
+import net.peterd.zombierun.util.WeakListenerSet;
 import android.app.Activity;
 import android.location.Criteria;
 import android.location.Location;
@@ -21,12 +20,21 @@ import android.os.Vibrator;
 
 public class HardwareManager implements GameEventListener, LocationListener {
 
+  public static final EnumSet<GameEvent> subscribedGameEvents = EnumSet.of(GameEvent.GAME_START,
+      GameEvent.GAME_PAUSE,
+      GameEvent.GAME_RESUME,
+      GameEvent.GAME_WIN,
+      GameEvent.GAME_LOSE,
+      GameEvent.GAME_QUIT,
+      GameEvent.ZOMBIE_NOTICE_PLAYER,
+      GameEvent.ZOMBIE_NEAR_PLAYER);
+
   private final Vibrator vibrator;
   private final LocationManager locationManager;
   private String bestLocationProvider;
 
-  private final Map<LocationListener, Boolean> locationListeners =
-      Collections.synchronizedMap(new WeakHashMap<LocationListener, Boolean>());
+  private final WeakListenerSet<LocationListener> locationListeners =
+      new WeakListenerSet<LocationListener>();
 
   public HardwareManager(Activity activity) {
     // The HardwareManager must not hold onto the Activity it's given.
@@ -82,23 +90,18 @@ public class HardwareManager implements GameEventListener, LocationListener {
   }
 
   public boolean registerLocationListener(LocationListener listener) {
-    if (locationListeners.size() == 0) {
+    if (locationListeners.isEmpty()) {
       locationManager.requestLocationUpdates(bestLocationProvider,
           5 * 1000,
           1,
           this);
     }
 
-    if (locationListeners.containsKey(listener)) {
-      return false;
-    } else {
-      locationListeners.put(listener, true);
-      return true;
-    }
+    return locationListeners.add(listener);
   }
 
   public boolean removeLocationListener(LocationListener listener) {
-    return locationListeners.remove(listener) != null;
+    return locationListeners.remove(listener);
   }
 
   public FloatingPointGeoPoint getLastKnownLocation() {
@@ -132,18 +135,18 @@ public class HardwareManager implements GameEventListener, LocationListener {
   }
 
   public void onLocationChanged(Location location) {
+    // Walk a snapshot, so that listeners registering or deregistering concurrently can't cause
+    // the fix to be dropped.
+    WeakReference<LocationListener>[] listeners = locationListeners.getSnapshot();
     if (Log.loggingEnabled()) {
       Log.d("ZombieRun.HardwareManager", "Received updated location, distributing to " +
-          locationListeners.size() + " listeners.");
+          listeners.length + " listeners.");
     }
-    try {
-      for (LocationListener listener : locationListeners.keySet()) {
+    for (int i = 0; i < listeners.length; ++i) {
+      LocationListener listener = listeners[i].get();
+      if (listener != null) {
         listener.onLocationChanged(location);
       }
-    } catch (ConcurrentModificationException e) {
-      // Just skip distributing the updates if we have a concurrent modification
-      // exception.  There's something else weird going on, but I don't have
-      // time to really investigate it.
     }
   }
   public void onProviderDisabled(String provider) { }
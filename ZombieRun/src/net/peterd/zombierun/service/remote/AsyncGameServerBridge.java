@@ -0,0 +1,228 @@
+package net.peterd.zombierun.service.remote;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.peterd.zombierun.constants.MultiplayerConstants;
+import net.peterd.zombierun.util.Log;
+
+/**
+ * Makes {@link GameServerBridge} requests on background threads, so that neither the UI thread
+ * nor a game's synchronizer waits for the network.
+ *
+ * Each request returns a Future for its response, and passes the response, or the IOException it
+ * failed with, to its callback on the background thread, unless the Future has been cancelled
+ * first.  Requests run concurrently, up to {@link MultiplayerConstants#serverRequestThreads} at
+ * once, so that independent requests like a player upload and a state fetch are pipelined rather
+ * than queued behind each other.  At most one put per game is in flight at a time: a put stays in
+ * flight until its request has finished, even if its Future was cancelled while it ran.
+ */
+public class AsyncGameServerBridge {
+
+  /**
+   * Receives the outcome of a request, on the thread that made it.
+   */
+  public interface Callback {
+    void onResponse(GameServerBridge.ServerData data);
+
+    void onFailure(IOException e);
+  }
+
+  private final GameServerBridge bridge;
+  private final ExecutorService executor;
+  // The games with a put in flight.
+  private final Set<Integer> gamesPutting = new HashSet<Integer>();
+
+  public AsyncGameServerBridge(GameServerBridge bridge) {
+    this(bridge, Executors.newFixedThreadPool(MultiplayerConstants.serverRequestThreads,
+        new ThreadFactory() {
+          private int threads = 0;
+
+          public synchronized Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "GameServerBridge-" + (++threads));
+            // Never keep the process alive for a request.
+            thread.setDaemon(true);
+            return thread;
+          }
+        }));
+  }
+
+  public AsyncGameServerBridge(GameServerBridge bridge, ExecutorService executor) {
+    this.bridge = bridge;
+    this.executor = executor;
+  }
+
+  public Future<GameServerBridge.ServerData> create(Callback callback) {
+    return submit(GameServerBridge.createRequest(), callback, null);
+  }
+
+  public Future<GameServerBridge.ServerData> get(Integer gameId,
+      Integer playerId,
+      String secret,
+      Callback callback) {
+    return submit(GameServerBridge.getRequest(gameId, playerId, secret), callback, null);
+  }
+
+  public Future<GameServerBridge.ServerData> join(Integer gameId, Callback callback) {
+    return submit(GameServerBridge.joinRequest(gameId), callback, null);
+  }
+
+  /**
+   * See {@link GameServerBridge#put(Integer, Integer, String, String, String, long)}.
+   *
+   * @return null, without making the request, if a put for the game is already in flight.
+   */
+  public Future<GameServerBridge.ServerData> put(Integer gameId,
+      Integer playerId,
+      String secret,
+      String playerData,
+      String zombieHorde,
+      long zombieAck,
+      Callback callback) {
+    synchronized (gamesPutting) {
+      if (!gamesPutting.add(gameId)) {
+        return null;
+      }
+    }
+    return submit(
+        GameServerBridge.putRequest(gameId, playerId, secret, playerData, zombieHorde, zombieAck),
+        callback,
+        gameId);
+  }
+
+  /**
+   * @return Whether a put for the game is in flight.
+   */
+  public boolean isPutting(Integer gameId) {
+    synchronized (gamesPutting) {
+      return gamesPutting.contains(gameId);
+    }
+  }
+
+  public Future<GameServerBridge.ServerData> start(Integer gameId,
+      String secret,
+      Callback callback) {
+    return submit(GameServerBridge.startRequest(gameId, secret), callback, null);
+  }
+
+  /**
+   * Cancel every request and stop the background threads.
+   */
+  public void shutDown() {
+    executor.shutdownNow();
+  }
+
+  private Future<GameServerBridge.ServerData> submit(GameServerBridge.Request request,
+      Callback callback,
+      Integer puttingGameId) {
+    RequestTask task = new RequestTask(request, callback, puttingGameId);
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.cancel(false);
+      Log.w("ZombieRun.AsyncGameServerBridge", "Request to '" + request.url +
+          "' dropped, as the bridge has been shut down.");
+    }
+    return task;
+  }
+
+  private class RequestTask extends FutureTask<GameServerBridge.ServerData> {
+
+    private final GameServerBridge.Request request;
+    private final Callback callback;
+    private final RequestCall call;
+
+    RequestTask(GameServerBridge.Request request, Callback callback, Integer puttingGameId) {
+      this(new RequestCall(request, puttingGameId), callback);
+    }
+
+    private RequestTask(RequestCall call, Callback callback) {
+      super(call);
+      this.request = call.request;
+      this.callback = callback;
+      this.call = call;
+    }
+
+    @Override
+    protected void done() {
+      // A request that's running releases its game's put itself, once it has finished.
+      call.releaseIfNotStarted();
+      if (isCancelled() || callback == null) {
+        return;
+      }
+      GameServerBridge.ServerData data;
+      try {
+        data = get();
+      } catch (InterruptedException e) {
+        return;
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          callback.onFailure((IOException) cause);
+        } else {
+          Log.e("ZombieRun.AsyncGameServerBridge", "Request to '" + request.url + "' failed: " +
+              cause);
+          callback.onFailure(new IOException("Request failed: " + cause));
+        }
+        return;
+      }
+      callback.onResponse(data);
+    }
+  }
+
+  /**
+   * Makes a request, and if it's a put, releases its game's put once the request has finished,
+   * even if its task was cancelled while it ran.
+   */
+  private class RequestCall implements Callable<GameServerBridge.ServerData> {
+
+    private final GameServerBridge.Request request;
+    private final Integer puttingGameId;
+    // Set by whichever comes first of the request starting, and its task finishing without it,
+    // so that the put is released exactly once, and never while the request is running.
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    RequestCall(GameServerBridge.Request request, Integer puttingGameId) {
+      this.request = request;
+      this.puttingGameId = puttingGameId;
+    }
+
+    public GameServerBridge.ServerData call() throws IOException {
+      if (!claimed.compareAndSet(false, true)) {
+        // Cancelled before it started.
+        return null;
+      }
+      try {
+        GameServerBridge.ServerData data = new GameServerBridge.ServerData();
+        bridge.fetch(request, data);
+        return data;
+      } finally {
+        releasePut();
+      }
+    }
+
+    void releaseIfNotStarted() {
+      if (claimed.compareAndSet(false, true)) {
+        releasePut();
+      }
+    }
+
+    private void releasePut() {
+      if (puttingGameId != null) {
+        synchronized (gamesPutting) {
+          gamesPutting.remove(puttingGameId);
+        }
+      }
+    }
+  }
+}
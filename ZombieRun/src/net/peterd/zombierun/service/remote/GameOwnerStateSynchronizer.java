@@ -1,27 +1,65 @@
 package net.peterd.zombierun.service.remote;
 
-import net.peterd.zombierun.entity.Zombie.ZombieListSerializer;
+import net.peterd.zombierun.constants.Constants;
+import net.peterd.zombierun.entity.HordeDelta;
 import net.peterd.zombierun.game.GameState;
 import net.peterd.zombierun.service.GameEventBroadcaster;
 import net.peterd.zombierun.util.Log;
 
+/**
+ * Uploads the owner's horde, as a keyframe or as a delta against the latest upload every
+ * participant has acknowledged; see {@link HordeDelta}.
+ */
 public class GameOwnerStateSynchronizer extends ParticipantStateSynchronizer {
 
+  private final HordeDelta.Encoder hordeEncoder;
+  // The latest upload every participant has applied, as of the last server response.
+  private long acknowledgedSequence = 0;
+
   public GameOwnerStateSynchronizer(GameServerBridge.ServerData serverData, GameState state,
-      GameServerBridge bridge, int synchronizationIntervalMs,
+      AsyncGameServerBridge bridge, int synchronizationIntervalMs,
       GameEventBroadcaster eventBroadcaster) {
     super(serverData, state, bridge, synchronizationIntervalMs, eventBroadcaster);
+    hordeEncoder = new HordeDelta.Encoder(state.getZombies(),
+        Constants.hordeSyncPositionQuantumMeters,
+        Constants.hordeSyncKeyframeInterval);
+  }
+
+  /**
+   * Only called when the last upload has completed, so that every encoded upload is sent.
+   */
+  @Override
+  protected String encodeZombies() {
+    String zombies = hordeEncoder.encodeString(acknowledgedSequence);
+    if (Log.loggingEnabled()) {
+      Log.d("ZombieRun.GameOwnerStateSynchronizer", "Uploading " +
+          (hordeEncoder.wasLastKeyframe() ? "keyframe " : "delta ") +
+          hordeEncoder.getSequence() + " against " + acknowledgedSequence + " with " +
+          hordeEncoder.getLastZombiesSent() + " zombies in " + zombies.length() + " bytes.");
+    }
+    return zombies;
   }
 
+  /**
+   * The owner's horde is the authoritative one, so rather than applying the server's copy, just
+   * note how far each participant has got.  A response without acks, like one from a server that
+   * doesn't pass them on, says nothing about that, and leaves the last known sequence alone.
+   */
   @Override
-  protected void invalidate() {
-    Log.i("ZombieRun.GameOwnerStateSynchronizer", "Invalidate");
-    GameServerBridge.ServerData data =
-        bridge.put(gameId,
-            playerId,
-            secretKey,
-            state.getPlayers().get(playerId).toString(),
-            ZombieListSerializer.toString(state.getZombies()));
-    handleServerData(data, eventBroadcaster);
+  protected void handleZombies(GameServerBridge.ServerData data) {
+    if (data.zombieAcks.isEmpty()) {
+      return;
+    }
+    int participants = state.getPlayers().size() - 1;
+    if (data.zombieAcks.size() < participants) {
+      // A participant hasn't applied anything yet, so needs a keyframe.
+      acknowledgedSequence = 0;
+      return;
+    }
+    long acknowledgedSequence = Long.MAX_VALUE;
+    for (int i = 0; i < data.zombieAcks.size(); ++i) {
+      acknowledgedSequence = Math.min(acknowledgedSequence, data.zombieAcks.get(i));
+    }
+    this.acknowledgedSequence = acknowledgedSequence;
   }
 }
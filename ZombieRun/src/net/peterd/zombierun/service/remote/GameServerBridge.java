@@ -1,7 +1,7 @@
 package net.peterd.zombierun.service.remote;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -16,81 +16,65 @@ import net.peterd.zombierun.io.DataFetcher;
 public class GameServerBridge {
   
   private final DataFetcher fetcher;
+  // Each thread reuses one parser, and with it the buffer the horde is decoded into.
+  private final ThreadLocal<ServerResponseParser> parsers =
+      new ThreadLocal<ServerResponseParser>() {
+        @Override
+        protected ServerResponseParser initialValue() {
+          return new ServerResponseParser();
+        }
+      };
   
   public GameServerBridge(DataFetcher fetcher) {
     this.fetcher = fetcher;
   }
   
-  private ServerData getData(String url) {
-    Map<String, String> params = Collections.emptyMap();
-    return getData(url, params);
-  }
-  
-  private ServerData getData(String url, Map<String, String> params) {
+  /**
+   * Make a request, logging rather than throwing if it fails.
+   *
+   * @return What the server returned, which is empty if the request failed.
+   */
+  ServerData execute(Request request) {
     ServerData data = new ServerData();
     try {
-      BufferedReader reader = fetcher.getData(url, params);
-      String line;
-      while ((line = reader.readLine()) != null) {
-        String[] splits = line.split(":", 1);
-        if (splits.length != 2) {
-          Log.e("ZombieRun.GameServerBridge",
-              "Could not split game server response line '" + line + "' into a key:value pair.");
-        }
-        String key = splits[0];
-        String value = splits[1];
-        populateServerDataWithLine(data, line, key, value);
-      }
+      fetch(request, data);
     } catch (IOException e) {
-      Log.e("ZombieRun.GameServerBridge", "IOError while fetching base URL '" + url + "'.", e);
+      Log.e("ZombieRun.GameServerBridge", "IOError while fetching base URL '" + request.url +
+          "'.", e);
     }
     return data;
   }
 
-  private void populateServerDataWithLine(ServerData data, String line, String key, String value) {
-    if (key.equals("player_id")) {
-      data.playerId = Integer.parseInt(value);
-    } else if (key.equals("game_id")) {
-      data.gameId = Integer.parseInt(value);
-    } else if (key.equals("secret")) {
-      data.secret = value;
-    } else if (key.equals("started")) {
-      if (value.equals("1")) {
-        data.started = true;
-      } else {
-        data.started = false;
+  /**
+   * Make a request, populating data with the server's response.
+   */
+  void fetch(Request request, ServerData data) throws IOException {
+    data.requestSentAtMs = System.currentTimeMillis();
+    InputStream response = fetcher.openStream(request.url, request.parameters);
+    // The server stamps its time as it starts to answer, which is about when the stream opens.
+    data.responseReceivedAtMs = System.currentTimeMillis();
+    try {
+      parsers.get().parse(response, data);
+    } finally {
+      try {
+        response.close();
+      } catch (IOException e) {
+        Log.w("ZombieRun.GameServerBridge", "Could not close response from '" + request.url +
+            "': " + e.getMessage());
       }
-    } else if (key.equals("destination")) {
-      data.destination = value;
-    } else if (key.equals("players[]")) {
-      data.playerStrings.add(value);
-    } else if (key.equals("zombies")) {
-      data.zombieHorde = value;
-    } else {
-      Log.w("ZombieRun.GameServerBridge", "GameServer returned line that we were unable to " +
-      		"interpret: '" + line + "'.");
     }
   }
-  
+
   public ServerData create() {
-    return getData(MultiplayerConstants.MultiplayerUrls.CREATE_GAME.getUrl());
+    return execute(createRequest());
   }
   
   public ServerData get(Integer gameId, Integer playerId, String secret) {
-    Map<String, String> parameters = new HashMap<String, String>();
-    parameters.put(MultiplayerConstants.MultiplayerParameters.GAME_ID.getParam(),
-        gameId.toString());
-    parameters.put(MultiplayerConstants.MultiplayerParameters.PLAYER_ID.getParam(),
-        playerId.toString());
-    parameters.put(MultiplayerConstants.MultiplayerParameters.SECRET_KEY.getParam(), secret);
-    return getData(MultiplayerConstants.MultiplayerUrls.GET_GAME.getUrl(), parameters);
+    return execute(getRequest(gameId, playerId, secret));
   }
   
   public ServerData join(Integer gameId) {
-    Map<String, String> parameters = new HashMap<String, String>();
-    parameters.put(MultiplayerConstants.MultiplayerParameters.GAME_ID.getParam(),
-        gameId.toString());
-    return getData(MultiplayerConstants.MultiplayerUrls.GET_GAME.getUrl(), parameters);
+    return execute(joinRequest(gameId));
   }
   
   /**
@@ -105,6 +89,46 @@ public class GameServerBridge {
    */
   public ServerData put(Integer gameId, Integer playerId, String secret, String playerData,
       String zombieHorde) {
+    return put(gameId, playerId, secret, playerData, zombieHorde, 0);
+  }
+
+  /**
+   * @param zombieAck The sequence of the latest horde upload this player has applied, or 0 to
+   *    leave it out.  The server passes each participant's back to the owner as zombie_acks[].
+   */
+  public ServerData put(Integer gameId, Integer playerId, String secret, String playerData,
+      String zombieHorde, long zombieAck) {
+    return execute(putRequest(gameId, playerId, secret, playerData, zombieHorde, zombieAck));
+  }
+  
+  public ServerData start(Integer gameId, String secret) {
+    return execute(startRequest(gameId, secret));
+  }
+
+  static Request createRequest() {
+    Map<String, String> parameters = Collections.emptyMap();
+    return new Request(MultiplayerConstants.MultiplayerUrls.CREATE_GAME.getUrl(), parameters);
+  }
+
+  static Request getRequest(Integer gameId, Integer playerId, String secret) {
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put(MultiplayerConstants.MultiplayerParameters.GAME_ID.getParam(),
+        gameId.toString());
+    parameters.put(MultiplayerConstants.MultiplayerParameters.PLAYER_ID.getParam(),
+        playerId.toString());
+    parameters.put(MultiplayerConstants.MultiplayerParameters.SECRET_KEY.getParam(), secret);
+    return new Request(MultiplayerConstants.MultiplayerUrls.GET_GAME.getUrl(), parameters);
+  }
+
+  static Request joinRequest(Integer gameId) {
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put(MultiplayerConstants.MultiplayerParameters.GAME_ID.getParam(),
+        gameId.toString());
+    return new Request(MultiplayerConstants.MultiplayerUrls.GET_GAME.getUrl(), parameters);
+  }
+
+  static Request putRequest(Integer gameId, Integer playerId, String secret, String playerData,
+      String zombieHorde, long zombieAck) {
     Map<String, String> parameters = new HashMap<String, String>();
     parameters.put(MultiplayerConstants.MultiplayerParameters.GAME_ID.getParam(),
         gameId.toString());
@@ -116,16 +140,33 @@ public class GameServerBridge {
       parameters.put(MultiplayerConstants.MultiplayerParameters.ZOMBIES_DATA.getParam(),
           zombieHorde);
     }
-    return getData(MultiplayerConstants.MultiplayerUrls.PUT_GAME.getUrl(), parameters);
+    if (zombieAck > 0) {
+      parameters.put(MultiplayerConstants.MultiplayerParameters.ZOMBIES_ACK.getParam(),
+          Long.toString(zombieAck));
+    }
+    return new Request(MultiplayerConstants.MultiplayerUrls.PUT_GAME.getUrl(), parameters);
   }
-  
-  public ServerData start(Integer gameId, String secret) {
+
+  static Request startRequest(Integer gameId, String secret) {
     Map<String, String> parameters = new HashMap<String, String>();
     parameters.put(MultiplayerConstants.MultiplayerParameters.GAME_ID.getParam(),
         gameId.toString());
     parameters.put(MultiplayerConstants.MultiplayerParameters.PLAYER_ID.getParam(), "0");
     parameters.put(MultiplayerConstants.MultiplayerParameters.SECRET_KEY.getParam(), secret);
-    return getData(MultiplayerConstants.MultiplayerUrls.GET_GAME.getUrl(), parameters);
+    return new Request(MultiplayerConstants.MultiplayerUrls.GET_GAME.getUrl(), parameters);
+  }
+
+  /**
+   * A request to the game server, built up front so that it can be made on another thread.
+   */
+  static class Request {
+    final String url;
+    final Map<String, String> parameters;
+
+    Request(String url, Map<String, String> parameters) {
+      this.url = url;
+      this.parameters = parameters;
+    }
   }
   
   public static class ServerData {
@@ -133,8 +174,25 @@ public class GameServerBridge {
     public int playerId;
     public boolean started;
     public String secret;
+    // The horde in its legacy text form, if that's what the server had.
     public String zombieHorde;
+    // Otherwise, the horde in a binary form, already decoded from base64: zombieFormat is the
+    // character its text form starts with, HordeDelta's or ZombieListBinarySerializer's, or 0 if
+    // there's none, and zombieBytes holds it in its first zombieBytesLength bytes.  zombieBytes is
+    // reused by the next request made on the same thread.
+    public char zombieFormat;
+    public byte[] zombieBytes;
+    public int zombieBytesLength;
     public String destination;
     public final List<String> playerStrings = new ArrayList<String>();
+    // The latest horde upload each participant has applied, for the owner.
+    public final List<Long> zombieAcks = new ArrayList<Long>();
+    // On the server's clock, when it answered, and when it received the horde; -1 if it didn't
+    // say.
+    public long serverTimeMs = -1;
+    public long zombiesServerTimeMs = -1;
+    // On this device's clock, when the request was sent, and when its response started to arrive.
+    public long requestSentAtMs;
+    public long responseReceivedAtMs;
   }
 }
@@ -1,31 +1,87 @@
 package net.peterd.zombierun.service.remote;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 
+import net.peterd.zombierun.constants.Constants;
 import net.peterd.zombierun.entity.Destination;
+import net.peterd.zombierun.entity.HordeDelta;
+import net.peterd.zombierun.entity.HordeReconciler;
 import net.peterd.zombierun.entity.Player;
-import net.peterd.zombierun.entity.Zombie;
-import net.peterd.zombierun.entity.Zombie.ZombieListSerializer;
+import net.peterd.zombierun.entity.Player.PlayerListBinarySerializer;
+import net.peterd.zombierun.entity.ZombieHorde;
+import net.peterd.zombierun.entity.ZombieHorde.ZombieListBinarySerializer;
 import net.peterd.zombierun.game.GameState;
 import net.peterd.zombierun.service.GameEventBroadcaster;
+import net.peterd.zombierun.util.FloatingPointGeoPoint;
 import net.peterd.zombierun.util.Log;
+import net.peterd.zombierun.util.StringScanner;
 
 public class ParticipantStateSynchronizer extends RemoteGameStateSynchronizer {
 
+  private final HordeDelta.Decoder hordeDecoder;
+  private final HordeReconciler hordeReconciler;
+  private final StringScanner scanner = new StringScanner();
+  private Future<GameServerBridge.ServerData> fetch;
+
   public ParticipantStateSynchronizer(GameServerBridge.ServerData serverData,
-      GameState state, GameServerBridge bridge, int synchronizationIntervalMs,
+      GameState state, AsyncGameServerBridge bridge, int synchronizationIntervalMs,
       GameEventBroadcaster eventBroadcaster) {
     super(serverData, state, bridge, synchronizationIntervalMs, eventBroadcaster);
+    hordeDecoder = new HordeDelta.Decoder(state.getZombies());
+    hordeReconciler = new HordeReconciler(state.getZombies());
   }
 
+  /**
+   * Upload this device's state, or, while the last upload is still in flight, fetch everyone
+   * else's alongside it.
+   */
   @Override
   protected void invalidate() {
-    Log.i("ZombieRun.GameOwnerStateSynchronizer", "Invalidate");
-    GameServerBridge.ServerData data =
-        bridge.put(gameId, playerId, secretKey, state.getPlayers().get(playerId).toString(), null);
-    handleServerData(data, eventBroadcaster);
+    Log.i("ZombieRun.ParticipantStateSynchronizer", "Invalidate");
+    if (bridge.isPutting(gameId)) {
+      fetchUnlessFetching();
+      return;
+    }
+    String playerData;
+    String zombies;
+    long zombieAck;
+    // Responses are handled on other threads, holding this lock.
+    synchronized (this) {
+      List<Player> players = state.getPlayers();
+      if (playerId < 0 || playerId >= players.size()) {
+        // This device's player isn't in the game yet; there's nothing to upload.
+        Log.w("ZombieRun.ParticipantStateSynchronizer", "No player " + playerId + " to upload.");
+        fetchUnlessFetching();
+        return;
+      }
+      playerData = PlayerListBinarySerializer.toEncodedString(
+          Collections.singletonList(players.get(playerId)));
+      synchronized (state.getZombies()) {
+        zombies = encodeZombies();
+      }
+      zombieAck = hordeDecoder.getAppliedSequence();
+    }
+    track(bridge.put(gameId, playerId, secretKey, playerData, zombies, zombieAck,
+        new ResponseHandler(RequestKind.UPLOAD)));
+  }
+
+  private void fetchUnlessFetching() {
+    if (fetch == null || fetch.isDone()) {
+      fetch = track(bridge.get(gameId, playerId, secretKey,
+          new ResponseHandler(RequestKind.FETCH)));
+    }
+  }
+
+  /**
+   * @return The horde to upload, or null to leave it to the game owner.
+   */
+  protected String encodeZombies() {
+    return null;
   }
   
+  @Override
   protected void handleServerData(GameServerBridge.ServerData data,
       GameEventBroadcaster eventBroadcaster) {
     if (data.destination != null) {
@@ -35,17 +91,141 @@ public class ParticipantStateSynchronizer extends RemoteGameStateSynchronizer {
       }
     }
     
-    for (int i = 0; i < data.playerStrings.size(); ++i) {
-      Player player =
-          Player.fromString(data.playerStrings.get(i), state.getDestination(), eventBroadcaster);
-      state.getPlayers().set(i, player);
+    List<Player> players = state.getPlayers();
+    // The engine reads the players, and their locations, holding the horde's lock while it ticks.
+    synchronized (state.getZombies()) {
+      for (int i = 0; i < data.playerStrings.size(); ++i) {
+        updatePlayer(players, i, data.playerStrings.get(i), eventBroadcaster);
+      }
     }
     
-    if (data.zombieHorde != null) {
-      List<Zombie> zombies =
-          ZombieListSerializer.fromString(data.zombieHorde, state.getPlayers(), eventBroadcaster);
-      state.getZombies().clear();
-      state.getZombies().addAll(zombies);
+    handleZombies(data);
+  }
+
+  /**
+   * Update the player at the given index in place, or add it if it's new, rather than replacing
+   * it, so that anything holding the player, like the horde's index over player locations, stays
+   * valid.  This device's own player is left alone; it gets its location from the hardware.
+   *
+   * A player's position in the list is its id, so a slot that can't be filled from the server, like
+   * this device's own if it isn't there yet, or one that can't be parsed, gets a player without a
+   * location rather than being skipped.  Called holding the horde's lock.
+   */
+  private void updatePlayer(List<Player> players,
+      int index,
+      String serializedPlayer,
+      GameEventBroadcaster eventBroadcaster) {
+    if (index == playerId) {
+      fillSlots(players, index + 1, eventBroadcaster);
+      return;
+    }
+    int id;
+    boolean hasLocation;
+    double latitude = 0;
+    double longitude = 0;
+    try {
+      if (PlayerListBinarySerializer.isEncodedString(serializedPlayer)) {
+        List<Player> decoded = PlayerListBinarySerializer.fromEncodedString(serializedPlayer,
+            state.getDestination(),
+            eventBroadcaster);
+        if (decoded.size() != 1) {
+          throw new IllegalArgumentException("Expected one player, found " + decoded.size() +
+              ".");
+        }
+        Player decodedPlayer = decoded.get(0);
+        id = decodedPlayer.getPlayerId();
+        latitude = decodedPlayer.getLatitude();
+        longitude = decodedPlayer.getLongitude();
+        // As in the binary format, a player at 0,0 hasn't got a location yet.
+        hasLocation = latitude != 0 && longitude != 0;
+      } else {
+        // Uploaded by an older version.
+        scanner.reset(serializedPlayer);
+        id = scanner.nextInt();
+        hasLocation = scanner.skip(':');
+        if (hasLocation) {
+          latitude = scanner.nextDouble();
+          scanner.expect('x');
+          longitude = scanner.nextDouble();
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      Log.e("ZombieRun.ParticipantStateSynchronizer", "Could not parse player '" +
+          serializedPlayer + "'.", e);
+      fillSlots(players, index + 1, eventBroadcaster);
+      return;
+    }
+
+    fillSlots(players, index, eventBroadcaster);
+    Player player = index < players.size() ? players.get(index) : null;
+    if (player == null || player.getPlayerId() != id) {
+      player = new Player(state.getDestination(),
+          id,
+          hasLocation ? new FloatingPointGeoPoint(latitude, longitude) : null,
+          eventBroadcaster);
+      if (index < players.size()) {
+        players.set(index, player);
+      } else {
+        players.add(player);
+      }
+    } else if (hasLocation) {
+      player.setRemoteLocation(latitude, longitude);
+    }
+  }
+
+  /**
+   * Add players without a location, each with its index as its id, until there are at least size.
+   */
+  private void fillSlots(List<Player> players, int size, GameEventBroadcaster eventBroadcaster) {
+    while (players.size() < size) {
+      players.add(new Player(state.getDestination(), players.size(), null, eventBroadcaster));
+    }
+  }
+
+  /**
+   * Apply another device's horde.  This device's engine keeps predicting the zombies in between,
+   * and the horde blends each zombie towards where the snapshot puts it, fast-forwarded by the
+   * snapshot's age.
+   */
+  protected void handleZombies(GameServerBridge.ServerData data) {
+    ZombieHorde zombies = state.getZombies();
+    long snapshotAgeMs = getSnapshotAgeMs(data);
+    hordeDecoder.setSnapshotAgeMs(snapshotAgeMs);
+    hordeReconciler.setSnapshotAgeMs(snapshotAgeMs);
+    // Not while the engine is advancing the horde.
+    synchronized (zombies) {
+      if (data.zombieFormat == HordeDelta.encodedStringPrefix) {
+        // Applied in place; an upload that can't be applied yet is skipped until the next
+        // keyframe.
+        hordeDecoder.apply(data.zombieBytes, 0, data.zombieBytesLength);
+      } else if (data.zombieFormat == ZombieListBinarySerializer.encodedStringPrefix) {
+        hordeReconciler.reconcile(data.zombieBytes, 0, data.zombieBytesLength);
+      } else if (data.zombieHorde != null) {
+        // A full snapshot; zombies that are already here are updated in place.
+        hordeReconciler.reconcile(data.zombieHorde);
+      } else {
+        return;
+      }
+    }
+    if (Log.loggingEnabled()) {
+      Log.d("ZombieRun.ParticipantStateSynchronizer", "Zombies fast-forwarded " + snapshotAgeMs +
+          "ms; server clock offset " + serverClock.getOffsetMs() + "ms, round trip " +
+          serverClock.getRoundTripMs() + "ms; prediction error: " + zombies.getPredictionErrors());
+    }
+  }
+
+  /**
+   * @return How long ago, on this device's clock, the server received the horde in data.  From a
+   *    server that doesn't say, the horde is taken to be as old as the response: half its round
+   *    trip, and the time it's been waiting since.
+   */
+  private long getSnapshotAgeMs(GameServerBridge.ServerData data) {
+    long nowMs = System.currentTimeMillis();
+    long ageMs = serverClock.getAgeMs(data.zombiesServerTimeMs, nowMs);
+    if (ageMs < 0) {
+      ageMs = (data.responseReceivedAtMs - data.requestSentAtMs) / 2 +
+          (nowMs - data.responseReceivedAtMs);
     }
+    return Math.max(0, Math.min(Constants.maxSnapshotFastForwardMs, ageMs));
   }
 }
@@ -1,31 +1,64 @@
 package net.peterd.zombierun.service.remote;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.peterd.zombierun.entity.Player;
+import net.peterd.zombierun.entity.ZombieHorde;
 import net.peterd.zombierun.game.GameEvent;
 import net.peterd.zombierun.game.GameState;
 import net.peterd.zombierun.service.GameEventBroadcaster;
 import net.peterd.zombierun.service.GameEventListener;
+import net.peterd.zombierun.util.LocalFrame;
+import net.peterd.zombierun.util.Log;
 
+/**
+ * Synchronizes a game with the game server, at an interval a {@link SyncCadence} adapts to how
+ * tense the game is.  Requests are made through an {@link AsyncGameServerBridge}, so the interval
+ * isn't stretched by the time they take, and there's never more than one request of a kind in
+ * flight, so a slow response delays the next request of its kind rather than piling more up
+ * behind it.  Responses are handled one at a time, on the bridge's threads, and a response older
+ * than one of the same kind already handled is dropped; fetches and uploads are in flight at once,
+ * so they're numbered separately, and an upload's response, with the acknowledgements it carries,
+ * is handled even if a later fetch's already has been.  Stopping the synchronizer cancels its
+ * requests in flight.
+ */
 public abstract class RemoteGameStateSynchronizer implements GameEventListener {
 
+  public static final EnumSet<GameEvent> subscribedGameEvents = EnumSet.of(GameEvent.GAME_PAUSE,
+      GameEvent.GAME_RESUME,
+      GameEvent.GAME_WIN,
+      GameEvent.GAME_LOSE,
+      GameEvent.GAME_QUIT);
+
   protected final int gameId;
   protected final String secretKey;
   protected final int playerId;
-  private final int synchronizationIntervalMs;
+  private final SyncCadence cadence;
+  protected final ServerClock serverClock = new ServerClock();
   protected final GameState state;
-  protected final GameServerBridge bridge;
+  protected final AsyncGameServerBridge bridge;
   protected final GameEventBroadcaster eventBroadcaster;
 
   private InvalidatingThread invalidatingThread;
+  private final List<Future<?>> requestsInFlight = new ArrayList<Future<?>>();
+  // Requests of each kind are numbered as they're made, so that their responses can be handled in
+  // order; indexed by RequestKind ordinal.
+  private final long[] requestsMade = new long[RequestKind.values().length];
+  private final long[] latestRequestsHandled = new long[RequestKind.values().length];
   
   public RemoteGameStateSynchronizer(GameServerBridge.ServerData serverData,
       GameState state,
-      GameServerBridge bridge,
+      AsyncGameServerBridge bridge,
       int synchronizationIntervalMs,
       GameEventBroadcaster eventBroadcaster) {
     this.gameId = serverData.gameId;
     this.secretKey = serverData.secret;
     this.playerId = serverData.playerId;
-    this.synchronizationIntervalMs = synchronizationIntervalMs;
+    this.cadence = new SyncCadence(synchronizationIntervalMs);
     this.state = state;
     this.bridge = bridge;
     this.eventBroadcaster = eventBroadcaster;
@@ -45,25 +78,134 @@ public abstract class RemoteGameStateSynchronizer implements GameEventListener {
   }
   
   public void start() {
-    invalidatingThread = new InvalidatingThread(this, synchronizationIntervalMs);
+    invalidatingThread = new InvalidatingThread(this);
     invalidatingThread.start();
   }
   
   public void stop() {
-    invalidatingThread.signalStop();
+    if (invalidatingThread != null) {
+      invalidatingThread.signalStop();
+      invalidatingThread.interrupt();
+    }
+    synchronized (requestsInFlight) {
+      for (int i = 0; i < requestsInFlight.size(); ++i) {
+        requestsInFlight.get(i).cancel(true);
+      }
+      requestsInFlight.clear();
+    }
   }
   
+  /**
+   * Make this interval's requests.  Must not wait for them.
+   */
   protected abstract void invalidate();
+
+  protected abstract void handleServerData(GameServerBridge.ServerData data,
+      GameEventBroadcaster eventBroadcaster);
+
+  /**
+   * @return How long to wait before the next call to {@link #invalidate()}, from the distance
+   *    between this device's player and the nearest zombie, how both are moving, and how the
+   *    game server has been responding.
+   */
+  protected long nextSynchronizationIntervalMs() {
+    double nearestZombieMeters = Double.POSITIVE_INFINITY;
+    double playerEastMeters = Double.NaN;
+    double playerNorthMeters = Double.NaN;
+    List<Player> players = state.getPlayers();
+    if (playerId >= 0 && playerId < players.size()) {
+      Player player = players.get(playerId);
+      double latitude = player.getLatitude();
+      double longitude = player.getLongitude();
+      // A player without a location yet is at 0, 0.
+      if (latitude != 0 || longitude != 0) {
+        ZombieHorde zombies = state.getZombies();
+        nearestZombieMeters = zombies.distanceToNearestZombieMeters(latitude, longitude);
+        LocalFrame frame = zombies.getLocalFrame();
+        if (frame != null) {
+          playerEastMeters = frame.toEastMeters(longitude);
+          playerNorthMeters = frame.toNorthMeters(latitude);
+        }
+      } else {
+        nearestZombieMeters = Double.NaN;
+      }
+    }
+    return cadence.nextIntervalMs(System.currentTimeMillis(),
+        nearestZombieMeters,
+        playerEastMeters,
+        playerNorthMeters);
+  }
+
+  /**
+   * Note a request, so that it's cancelled if the synchronizer stops.
+   *
+   * @return The request, which may be null if none was made.
+   */
+  protected <T> Future<T> track(Future<T> request) {
+    if (request != null) {
+      synchronized (requestsInFlight) {
+        for (int i = requestsInFlight.size() - 1; i >= 0; --i) {
+          if (requestsInFlight.get(i).isDone()) {
+            requestsInFlight.remove(i);
+          }
+        }
+        requestsInFlight.add(request);
+      }
+    }
+    return request;
+  }
+
+  /**
+   * Passes responses to {@link RemoteGameStateSynchronizer#handleServerData}, in the order their
+   * requests were made.  Create one per request, just before making it.
+   */
+  protected enum RequestKind {
+    FETCH,
+    UPLOAD
+  }
+
+  protected class ResponseHandler implements AsyncGameServerBridge.Callback {
+
+    private final RequestKind kind;
+    private final long request;
+    private final long madeAtMs = System.currentTimeMillis();
+
+    public ResponseHandler(RequestKind kind) {
+      this.kind = kind;
+      synchronized (RemoteGameStateSynchronizer.this) {
+        request = ++requestsMade[kind.ordinal()];
+      }
+    }
+
+    public void onResponse(GameServerBridge.ServerData data) {
+      cadence.recordResponse(System.currentTimeMillis() - madeAtMs);
+      serverClock.recordExchange(data.requestSentAtMs,
+          data.serverTimeMs,
+          data.responseReceivedAtMs);
+      synchronized (RemoteGameStateSynchronizer.this) {
+        long latestRequestHandled = latestRequestsHandled[kind.ordinal()];
+        if (request < latestRequestHandled) {
+          Log.d("ZombieRun.RemoteGameStateSynchronizer", "Dropping the response to " + kind +
+              " request " + request + ", as " + latestRequestHandled + " has been handled.");
+          return;
+        }
+        latestRequestsHandled[kind.ordinal()] = request;
+        handleServerData(data, eventBroadcaster);
+      }
+    }
+
+    public void onFailure(IOException e) {
+      cadence.recordFailure();
+      Log.e("ZombieRun.RemoteGameStateSynchronizer", "Game server request failed.", e);
+    }
+  }
   
   private class InvalidatingThread extends Thread {
     private final RemoteGameStateSynchronizer synchronizer;
-    private final int invalidationIntervalMs;
     private volatile boolean running = true;
     
-    public InvalidatingThread(RemoteGameStateSynchronizer synchronizer,
-        int invalidationIntervalMs) {
+    public InvalidatingThread(RemoteGameStateSynchronizer synchronizer) {
       this.synchronizer = synchronizer;
-      this.invalidationIntervalMs = invalidationIntervalMs;
     }
     
     public void signalStop() {
@@ -75,7 +217,7 @@ public abstract class RemoteGameStateSynchronizer implements GameEventListener {
       while (running) {
         synchronizer.invalidate();
         try {
-          sleep(invalidationIntervalMs);
+          sleep(synchronizer.nextSynchronizationIntervalMs());
         } catch (InterruptedException e) {
           return;
         }
@@ -0,0 +1,97 @@
+package net.peterd.zombierun.service.remote;
+
+import net.peterd.zombierun.constants.MultiplayerConstants;
+
+/**
+ * Estimates how far the game server's clock is from this device's, and the round trip time to it,
+ * from the last few requests, as NTP does: a response stamped with the server's time is taken to
+ * have been stamped halfway through its round trip, so each request gives an offset that's out by
+ * no more than half its round trip.  Of the recent requests, the one with the shortest round trip
+ * is trusted, as the one least delayed one way and not the other.
+ *
+ * Safe to use from several threads.
+ */
+public class ServerClock {
+
+  private final long[] offsetsMs;
+  private final long[] roundTripsMs;
+  private int samples = 0;
+  private int nextSample = 0;
+  // From the sample with the shortest round trip.
+  private long offsetMs;
+  private long roundTripMs = -1;
+
+  public ServerClock() {
+    this(MultiplayerConstants.serverClockSamples);
+  }
+
+  public ServerClock(int maxSamples) {
+    offsetsMs = new long[maxSamples];
+    roundTripsMs = new long[maxSamples];
+  }
+
+  /**
+   * @param sentAtMs When the request was sent, on this device's clock.
+   * @param serverTimeMs When the server answered, on its clock.
+   * @param receivedAtMs When the response arrived, on this device's clock.
+   */
+  public synchronized void recordExchange(long sentAtMs, long serverTimeMs, long receivedAtMs) {
+    long roundTripMs = receivedAtMs - sentAtMs;
+    if (roundTripMs < 0 || serverTimeMs < 0) {
+      // The device's clock was changed in between, or the server didn't say.
+      return;
+    }
+    offsetsMs[nextSample] = serverTimeMs - (sentAtMs + roundTripMs / 2);
+    roundTripsMs[nextSample] = roundTripMs;
+    nextSample = (nextSample + 1) % offsetsMs.length;
+    if (samples < offsetsMs.length) {
+      samples++;
+    }
+
+    int best = 0;
+    for (int i = 1; i < samples; ++i) {
+      if (roundTripsMs[i] < roundTripsMs[best]) {
+        best = i;
+      }
+    }
+    this.offsetMs = offsetsMs[best];
+    this.roundTripMs = roundTripsMs[best];
+  }
+
+  public synchronized boolean hasEstimate() {
+    return samples > 0;
+  }
+
+  /**
+   * @return How far the server's clock is ahead of this device's, or 0 without an estimate.
+   */
+  public synchronized long getOffsetMs() {
+    return offsetMs;
+  }
+
+  /**
+   * @return The round trip time of the request the offset is from, which bounds its error, or -1
+   *    without an estimate.
+   */
+  public synchronized long getRoundTripMs() {
+    return roundTripMs;
+  }
+
+  /**
+   * @return The time on this device's clock when the server's clock read serverTimeMs.
+   */
+  public synchronized long toLocalTimeMs(long serverTimeMs) {
+    return serverTimeMs - offsetMs;
+  }
+
+  /**
+   * @return How long before nowMs, on this device's clock, the server's clock read serverTimeMs,
+   *    or -1 without an estimate.
+   */
+  public synchronized long getAgeMs(long serverTimeMs, long nowMs) {
+    if (samples == 0 || serverTimeMs < 0) {
+      return -1;
+    }
+    return Math.max(0, nowMs - toLocalTimeMs(serverTimeMs));
+  }
+}
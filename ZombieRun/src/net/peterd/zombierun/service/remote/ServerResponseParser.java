@@ -0,0 +1,344 @@
+package net.peterd.zombierun.service.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.peterd.zombierun.entity.HordeDelta;
+import net.peterd.zombierun.entity.ZombieHorde;
+import net.peterd.zombierun.util.Log;
+import net.peterd.zombierun.util.UrlSafeBase64;
+
+/**
+ * Parses the game server's responses, lines of 'key:value' pairs, a byte at a time as they arrive,
+ * rather than reading each line into a String and splitting it.
+ *
+ * Values are split at the first ':', so they may contain more.  The horde, by far the largest
+ * value, is never made into a String in its binary forms: the base64 is decoded into a buffer
+ * that's reused from response to response.  Its legacy text form spans several lines, each
+ * starting with a digit or '-', where every key starts with a letter; those lines are gathered
+ * back into one value.
+ *
+ * Only for use by one thread at a time.
+ */
+class ServerResponseParser {
+
+  private enum Key {
+    PLAYER_ID("player_id"),
+    GAME_ID("game_id"),
+    SECRET("secret"),
+    STARTED("started"),
+    DESTINATION("destination"),
+    PLAYER("players[]"),
+    ZOMBIES("zombies"),
+    ZOMBIES_TIME("zombies_time"),
+    ZOMBIE_ACK("zombie_acks[]"),
+    SERVER_TIME("server_time");
+
+    private static final Key[] keys = values();
+    private final byte[] bytes;
+
+    private Key(String key) {
+      bytes = new byte[key.length()];
+      for (int i = 0; i < bytes.length; ++i) {
+        bytes[i] = (byte) key.charAt(i);
+      }
+    }
+
+    /**
+     * @return The key spelled by the first length bytes, or null if there isn't one.
+     */
+    static Key find(byte[] buffer, int length) {
+      for (int i = 0; i < keys.length; ++i) {
+        byte[] bytes = keys[i].bytes;
+        if (bytes.length != length) {
+          continue;
+        }
+        int j = 0;
+        while (j < length && bytes[j] == buffer[j]) {
+          j++;
+        }
+        if (j == length) {
+          return keys[i];
+        }
+      }
+      return null;
+    }
+  }
+
+  private enum State {
+    KEY,
+    VALUE,
+    // Just after 'zombies:', waiting to see which form the horde is in.
+    ZOMBIES,
+    BINARY_ZOMBIES,
+    TEXT_ZOMBIES,
+    // The rest of a line that couldn't be used.
+    SKIP
+  }
+
+  private final byte[] readBuffer = new byte[4096];
+  // The key being read, then the value, unless it's the horde.
+  private byte[] line = new byte[128];
+  private int lineLength;
+  private State state;
+  private Key key;
+  private boolean atLineStart;
+
+  private byte[] zombieBytes = new byte[0];
+  private int zombieBytesLength;
+  private char zombieFormat;
+  private int zombieBits;
+  private int zombieBitCount;
+  private int zombieCharacters;
+
+  private byte[] textZombies = new byte[0];
+  private int textZombiesLength;
+  private boolean textZombiesOpen;
+
+  /**
+   * Read the response to its end, populating data.  The horde, if the response has one in a
+   * binary form, is left in {@link GameServerBridge.ServerData#zombieBytes}, which is this
+   * parser's buffer, and so only valid until its next parse.
+   */
+  void parse(InputStream input, GameServerBridge.ServerData data) throws IOException {
+    state = State.KEY;
+    key = null;
+    lineLength = 0;
+    atLineStart = true;
+    zombieFormat = 0;
+    textZombiesOpen = false;
+
+    byte[] readBuffer = this.readBuffer;
+    int read;
+    while ((read = input.read(readBuffer)) >= 0) {
+      for (int i = 0; i < read; ++i) {
+        accept(readBuffer[i], data);
+      }
+    }
+    if (!atLineStart) {
+      endLine(data);
+    }
+    closeTextZombies(data);
+  }
+
+  private void accept(byte b, GameServerBridge.ServerData data) {
+    if (b == '\r') {
+      return;
+    } else if (b == '\n') {
+      endLine(data);
+      return;
+    }
+
+    if (atLineStart) {
+      atLineStart = false;
+      if (textZombiesOpen) {
+        if (b == '-' || (b >= '0' && b <= '9')) {
+          // The zombies: line itself may have been empty.
+          if (textZombiesLength > 0) {
+            appendTextZombie((byte) '\n');
+          }
+          state = State.TEXT_ZOMBIES;
+        } else {
+          closeTextZombies(data);
+        }
+      }
+    }
+
+    switch (state) {
+      case KEY:
+        if (b == ':') {
+          key = Key.find(line, lineLength);
+          if (key == null) {
+            Log.w("ZombieRun.ServerResponseParser", "GameServer returned line with a key that we " +
+                "were unable to interpret: '" + lineString() + "'.");
+            state = State.SKIP;
+          } else {
+            state = key == Key.ZOMBIES ? State.ZOMBIES : State.VALUE;
+          }
+          lineLength = 0;
+        } else {
+          appendLine(b);
+        }
+        break;
+      case VALUE:
+        appendLine(b);
+        break;
+      case ZOMBIES:
+        if (b == HordeDelta.encodedStringPrefix ||
+            b == ZombieHorde.ZombieListBinarySerializer.encodedStringPrefix) {
+          zombieFormat = (char) b;
+          zombieBytesLength = 0;
+          zombieBits = 0;
+          zombieBitCount = 0;
+          zombieCharacters = 0;
+          state = State.BINARY_ZOMBIES;
+        } else {
+          textZombiesLength = 0;
+          textZombiesOpen = true;
+          appendTextZombie(b);
+          state = State.TEXT_ZOMBIES;
+        }
+        break;
+      case BINARY_ZOMBIES:
+        decodeZombieCharacter(b);
+        break;
+      case TEXT_ZOMBIES:
+        appendTextZombie(b);
+        break;
+      case SKIP:
+        break;
+    }
+  }
+
+  private void decodeZombieCharacter(byte b) {
+    int value = UrlSafeBase64.valueOf(b);
+    if (value < 0) {
+      Log.e("ZombieRun.ServerResponseParser", "Invalid base64 character " + (b & 0xFF) +
+          " in horde.");
+      zombieFormat = 0;
+      state = State.SKIP;
+      return;
+    }
+    zombieCharacters++;
+    zombieBits = (zombieBits << 6) | value;
+    zombieBitCount += 6;
+    if (zombieBitCount >= 8) {
+      zombieBitCount -= 8;
+      if (zombieBytesLength == zombieBytes.length) {
+        zombieBytes = grow(zombieBytes, Math.max(1024, zombieBytes.length * 2));
+      }
+      zombieBytes[zombieBytesLength++] = (byte) (zombieBits >>> zombieBitCount);
+    }
+  }
+
+  private void endLine(GameServerBridge.ServerData data) {
+    switch (state) {
+      case KEY:
+        if (lineLength > 0) {
+          Log.e("ZombieRun.ServerResponseParser", "Could not split game server response line '" +
+              lineString() + "' into a key:value pair.");
+        }
+        break;
+      case VALUE:
+        populate(data);
+        break;
+      case ZOMBIES:
+        // An empty horde.
+        textZombiesLength = 0;
+        textZombiesOpen = true;
+        break;
+      case BINARY_ZOMBIES:
+        if (zombieCharacters % 4 == 1) {
+          Log.e("ZombieRun.ServerResponseParser", "Invalid base64 length " + zombieCharacters +
+              " for horde.");
+        } else {
+          data.zombieFormat = zombieFormat;
+          data.zombieBytes = zombieBytes;
+          data.zombieBytesLength = zombieBytesLength;
+        }
+        break;
+      case TEXT_ZOMBIES:
+      case SKIP:
+        break;
+    }
+    state = State.KEY;
+    key = null;
+    lineLength = 0;
+    atLineStart = true;
+  }
+
+  private void populate(GameServerBridge.ServerData data) {
+    try {
+      switch (key) {
+        case PLAYER_ID:
+          data.playerId = (int) parseLong();
+          break;
+        case GAME_ID:
+          data.gameId = (int) parseLong();
+          break;
+        case SECRET:
+          data.secret = lineString();
+          break;
+        case STARTED:
+          data.started = lineLength == 1 && line[0] == '1';
+          break;
+        case DESTINATION:
+          data.destination = lineString();
+          break;
+        case PLAYER:
+          data.playerStrings.add(lineString());
+          break;
+        case ZOMBIES_TIME:
+          data.zombiesServerTimeMs = parseLong();
+          break;
+        case ZOMBIE_ACK:
+          data.zombieAcks.add(parseLong());
+          break;
+        case SERVER_TIME:
+          data.serverTimeMs = parseLong();
+          break;
+        case ZOMBIES:
+          break;
+      }
+    } catch (NumberFormatException e) {
+      Log.e("ZombieRun.ServerResponseParser", "Could not parse the " + key + " value '" +
+          lineString() + "'.", e);
+    }
+  }
+
+  private void closeTextZombies(GameServerBridge.ServerData data) {
+    if (textZombiesOpen) {
+      textZombiesOpen = false;
+      data.zombieHorde = asciiString(textZombies, textZombiesLength);
+    }
+  }
+
+  private long parseLong() {
+    boolean negative = lineLength > 0 && line[0] == '-';
+    int i = negative ? 1 : 0;
+    if (i == lineLength || lineLength - i > 18) {
+      throw new NumberFormatException("Not a number, or too long.");
+    }
+    long value = 0;
+    for (; i < lineLength; ++i) {
+      int digit = line[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Unexpected character " + (line[i] & 0xFF) + ".");
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  private String lineString() {
+    return asciiString(line, lineLength);
+  }
+
+  private void appendLine(byte b) {
+    if (lineLength == line.length) {
+      line = grow(line, line.length * 2);
+    }
+    line[lineLength++] = b;
+  }
+
+  private void appendTextZombie(byte b) {
+    if (textZombiesLength == textZombies.length) {
+      textZombies = grow(textZombies, Math.max(1024, textZombies.length * 2));
+    }
+    textZombies[textZombiesLength++] = b;
+  }
+
+  private static String asciiString(byte[] bytes, int length) {
+    char[] characters = new char[length];
+    for (int i = 0; i < length; ++i) {
+      characters[i] = (char) (bytes[i] & 0xFF);
+    }
+    return new String(characters);
+  }
+
+  private static byte[] grow(byte[] array, int capacity) {
+    byte[] grown = new byte[capacity];
+    System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+}
@@ -0,0 +1,140 @@
+package net.peterd.zombierun.service.remote;
+
+import java.util.Random;
+
+import net.peterd.zombierun.constants.Constants;
+
+/**
+ * Decides how long a game waits before its next sync with the game server, from how tense the game
+ * is.  The interval shrinks towards the minimum as the nearest zombie gets closer to the player,
+ * as a zombie's time to reach the player gets shorter, and as the player moves faster, and grows
+ * to the maximum when nothing is nearby.  It's never shorter than two round trips, so that
+ * requests aren't made faster than the server answers them.
+ *
+ * After failed requests, it backs off exponentially instead, with jitter so that the devices in a
+ * game don't all retry at once.
+ *
+ * Safe to use from several threads.
+ */
+public class SyncCadence {
+
+  private final long minIntervalMs;
+  private final long maxIntervalMs;
+  private final long defaultIntervalMs;
+  private final long maxBackoffMs;
+  private final Random random;
+
+  private int consecutiveFailures = 0;
+  // A moving average, or -1 before the first response.
+  private double roundTripMs = -1;
+
+  // What the last interval was decided from, for rates of change.
+  private long lastSampleAtMs = -1;
+  private double lastNearestZombieMeters;
+  private double lastPlayerEastMeters;
+  private double lastPlayerNorthMeters;
+
+  /**
+   * @param defaultIntervalMs The interval when nothing is known about the game yet.
+   */
+  public SyncCadence(long defaultIntervalMs) {
+    this(Constants.minSynchronizationIntervalMs,
+        Constants.maxSynchronizationIntervalMs,
+        defaultIntervalMs,
+        Constants.maxSynchronizationBackoffMs,
+        new Random());
+  }
+
+  public SyncCadence(long minIntervalMs,
+      long maxIntervalMs,
+      long defaultIntervalMs,
+      long maxBackoffMs,
+      Random random) {
+    this.minIntervalMs = minIntervalMs;
+    this.maxIntervalMs = maxIntervalMs;
+    this.defaultIntervalMs = Math.max(minIntervalMs, Math.min(maxIntervalMs, defaultIntervalMs));
+    this.maxBackoffMs = maxBackoffMs;
+    this.random = random;
+  }
+
+  public synchronized void recordResponse(long roundTripMs) {
+    consecutiveFailures = 0;
+    this.roundTripMs = this.roundTripMs < 0 ? roundTripMs : 0.75 * this.roundTripMs +
+        0.25 * roundTripMs;
+  }
+
+  public synchronized void recordFailure() {
+    consecutiveFailures++;
+  }
+
+  public synchronized int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  /**
+   * @return The smoothed round trip time, or -1 if no request has succeeded yet.
+   */
+  public synchronized double getRoundTripMs() {
+    return roundTripMs;
+  }
+
+  /**
+   * @param nearestZombieMeters The distance from the player to the nearest zombie, or positive
+   *    infinity if there are none.
+   * @param playerEastMeters The player's position in the game's frame, or NaN if unknown.
+   * @return How long to wait before the next sync.
+   */
+  public synchronized long nextIntervalMs(long nowMs,
+      double nearestZombieMeters,
+      double playerEastMeters,
+      double playerNorthMeters) {
+    if (consecutiveFailures > 0) {
+      long backoffMs = minIntervalMs << Math.min(consecutiveFailures, 20);
+      backoffMs = Math.min(maxBackoffMs, backoffMs);
+      // Anywhere from half the backoff to all of it.
+      return backoffMs / 2 + (long) (random.nextDouble() * (backoffMs / 2));
+    }
+
+    double intervalMs = defaultIntervalMs;
+    if (!Double.isInfinite(nearestZombieMeters) && !Double.isNaN(nearestZombieMeters)) {
+      double near = Constants.zombieNoticePlayerDistanceMeters;
+      double far = Constants.relaxedSynchronizationDistanceMeters;
+      double relaxation = Math.max(0, Math.min(1, (nearestZombieMeters - near) / (far - near)));
+      intervalMs = minIntervalMs + relaxation * (maxIntervalMs - minIntervalMs);
+    } else if (Double.isInfinite(nearestZombieMeters)) {
+      intervalMs = maxIntervalMs;
+    }
+
+    double elapsedSeconds = (nowMs - lastSampleAtMs) / 1000.0;
+    if (lastSampleAtMs >= 0 && elapsedSeconds > 0) {
+      double closingMetersPerSecond =
+          (lastNearestZombieMeters - nearestZombieMeters) / elapsedSeconds;
+      if (closingMetersPerSecond > 0 && !Double.isInfinite(nearestZombieMeters) &&
+          !Double.isInfinite(lastNearestZombieMeters)) {
+        // Sync a few times before the zombie can get there.
+        double secondsToContact =
+            Math.max(0, nearestZombieMeters - Constants.zombieCatchPlayerDistanceMeters) /
+                closingMetersPerSecond;
+        intervalMs = Math.min(intervalMs, secondsToContact * 1000 / 4);
+      }
+      if (!Double.isNaN(playerEastMeters) && !Double.isNaN(lastPlayerEastMeters)) {
+        double dEast = playerEastMeters - lastPlayerEastMeters;
+        double dNorth = playerNorthMeters - lastPlayerNorthMeters;
+        double speed = Math.sqrt(dEast * dEast + dNorth * dNorth) / elapsedSeconds;
+        if (speed > 0) {
+          intervalMs = Math.min(intervalMs,
+              Constants.maxPlayerMovementBetweenSynchronizationsMeters / speed * 1000);
+        }
+      }
+    }
+    lastSampleAtMs = nowMs;
+    lastNearestZombieMeters = nearestZombieMeters;
+    lastPlayerEastMeters = playerEastMeters;
+    lastPlayerNorthMeters = playerNorthMeters;
+
+    if (roundTripMs >= 0) {
+      intervalMs = Math.max(intervalMs, 2 * roundTripMs);
+    }
+    return Math.max(minIntervalMs, Math.min(maxIntervalMs, (long) intervalMs));
+  }
+}
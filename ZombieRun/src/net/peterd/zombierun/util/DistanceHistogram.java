@@ -0,0 +1,100 @@
+package net.peterd.zombierun.util;
+
+/**
+ * Counts distances in buckets that grow geometrically, four to each doubling from an eighth of a
+ * meter, so that percentiles are accurate to within about a fifth whether the distances are
+ * centimeters or kilometers, in a fixed amount of memory.
+ *
+ * Safe to use from several threads.
+ */
+public class DistanceHistogram {
+
+  private static final double smallestBucketMeters = 0.125;
+  private static final int bucketsPerDoubling = 4;
+  // Up to 0.125m * 2^18, or 32km; anything further goes in the last bucket.
+  private static final int bucketCount = 2 + 18 * bucketsPerDoubling;
+  private static final double bucketsPerLogUnit = bucketsPerDoubling / Math.log(2);
+
+  private final long[] counts = new long[bucketCount];
+  private long count = 0;
+  private double sumMeters = 0;
+  private double maxMeters = 0;
+
+  public synchronized void record(double meters) {
+    if (Double.isNaN(meters) || meters < 0) {
+      return;
+    }
+    counts[bucketOf(meters)]++;
+    count++;
+    sumMeters += meters;
+    if (meters > maxMeters) {
+      maxMeters = meters;
+    }
+  }
+
+  public synchronized void reset() {
+    for (int i = 0; i < bucketCount; ++i) {
+      counts[i] = 0;
+    }
+    count = 0;
+    sumMeters = 0;
+    maxMeters = 0;
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * @return The mean distance recorded, or 0 if none has been.
+   */
+  public synchronized double getMeanMeters() {
+    return count == 0 ? 0 : sumMeters / count;
+  }
+
+  public synchronized double getMaxMeters() {
+    return maxMeters;
+  }
+
+  /**
+   * @param quantile Between 0 and 1; 0.5 for the median.
+   * @return An upper bound on the given quantile of the distances recorded, from the bucket it
+   *    falls in, or 0 if none has been.
+   */
+  public synchronized double getQuantileMeters(double quantile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int i = 0; i < bucketCount; ++i) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(maxMeters, upperBoundMeters(i));
+      }
+    }
+    return maxMeters;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return count + " recorded, mean " + getMeanMeters() + "m, p50 " + getQuantileMeters(0.5) +
+        "m, p90 " + getQuantileMeters(0.9) + "m, p99 " + getQuantileMeters(0.99) + "m, max " +
+        maxMeters + "m";
+  }
+
+  private static int bucketOf(double meters) {
+    if (meters < smallestBucketMeters) {
+      return 0;
+    }
+    int bucket = 1 + (int) (Math.log(meters / smallestBucketMeters) * bucketsPerLogUnit);
+    return Math.min(bucket, bucketCount - 1);
+  }
+
+  private static double upperBoundMeters(int bucket) {
+    if (bucket == bucketCount - 1) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return smallestBucketMeters * Math.pow(2, (double) bucket / bucketsPerDoubling);
+  }
+}
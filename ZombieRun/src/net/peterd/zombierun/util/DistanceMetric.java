@@ -0,0 +1,20 @@
+package net.peterd.zombierun.util;
+
+/**
+ * A way of measuring the distance between two latitude/longitude points.
+ *
+ * Besides the distance in meters, a metric exposes a 'comparable distance' that orders pairs of
+ * points the same way but may be cheaper to compute, such as the squared distance.  Hot loops that
+ * only need to find the nearest point or compare against a threshold should compare comparable
+ * distances, converting the threshold with {@link #toComparableDistance(double)} once.
+ */
+public interface DistanceMetric {
+
+  public double distanceMeters(double aLat, double aLon, double bLat, double bLon);
+
+  public double comparableDistance(double aLat, double aLon, double bLat, double bLon);
+
+  public double toComparableDistance(double distanceMeters);
+
+  public double toDistanceMeters(double comparableDistance);
+}
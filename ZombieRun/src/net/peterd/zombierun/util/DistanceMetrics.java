@@ -0,0 +1,125 @@
+package net.peterd.zombierun.util;
+
+import net.peterd.zombierun.constants.Constants;
+
+/**
+ * The available {@link DistanceMetric}s.
+ *
+ * The equirectangular and squared-planar metrics project both points onto a plane tangent at a
+ * fixed reference latitude, normally the game's starting location, whose cosine is computed once.
+ * Within a few kilometers of the reference latitude they agree with haversine to about 0.1% (20cm
+ * at the zombie notice distance) at mid latitudes, at a fraction of the cost.
+ *
+ * The game itself doesn't choose between them: the horde and the populator work in the game's
+ * {@link LocalFrame}, which is the equirectangular projection, and players check the destination,
+ * once per fix, with haversine.
+ */
+public class DistanceMetrics {
+
+  public enum Type {
+    HAVERSINE,
+    EQUIRECTANGULAR,
+    SQUARED_PLANAR,
+  }
+
+  public static final DistanceMetric HAVERSINE = new HaversineDistanceMetric();
+
+  private static final double metersPerDegreeLatitude =
+      Constants.radiusOfEarthMeters * Math.PI / 180;
+
+  /**
+   * @param referenceLatitude The latitude the planar metrics are most accurate around; ignored by
+   *    haversine.
+   */
+  public static DistanceMetric create(Type type, double referenceLatitude) {
+    switch (type) {
+      case EQUIRECTANGULAR:
+        return new EquirectangularDistanceMetric(referenceLatitude);
+      case SQUARED_PLANAR:
+        return new SquaredPlanarDistanceMetric(referenceLatitude);
+      case HAVERSINE:
+      default:
+        return HAVERSINE;
+    }
+  }
+
+  public static class HaversineDistanceMetric implements DistanceMetric {
+
+    public double distanceMeters(double aLat, double aLon, double bLat, double bLon) {
+      return GeoPointUtil.distanceMeters(aLat, aLon, bLat, bLon);
+    }
+
+    public double comparableDistance(double aLat, double aLon, double bLat, double bLon) {
+      return GeoPointUtil.distanceMeters(aLat, aLon, bLat, bLon);
+    }
+
+    public double toComparableDistance(double distanceMeters) {
+      return distanceMeters;
+    }
+
+    public double toDistanceMeters(double comparableDistance) {
+      return comparableDistance;
+    }
+  }
+
+  public static class EquirectangularDistanceMetric implements DistanceMetric {
+
+    private final double metersPerDegreeLongitude;
+
+    public EquirectangularDistanceMetric(double referenceLatitude) {
+      metersPerDegreeLongitude =
+          metersPerDegreeLatitude * Math.cos(Math.toRadians(referenceLatitude));
+    }
+
+    public double distanceMeters(double aLat, double aLon, double bLat, double bLon) {
+      return Math.sqrt(squaredDistanceMeters(aLat, aLon, bLat, bLon));
+    }
+
+    public double comparableDistance(double aLat, double aLon, double bLat, double bLon) {
+      return distanceMeters(aLat, aLon, bLat, bLon);
+    }
+
+    public double toComparableDistance(double distanceMeters) {
+      return distanceMeters;
+    }
+
+    public double toDistanceMeters(double comparableDistance) {
+      return comparableDistance;
+    }
+
+    protected final double squaredDistanceMeters(double aLat,
+        double aLon,
+        double bLat,
+        double bLon) {
+      double northMeters = (bLat - aLat) * metersPerDegreeLatitude;
+      double eastMeters = (bLon - aLon) * metersPerDegreeLongitude;
+      return northMeters * northMeters + eastMeters * eastMeters;
+    }
+  }
+
+  /**
+   * The equirectangular metric, but comparing squared distances so that nearest-point searches and
+   * threshold checks never take a square root.
+   */
+  public static class SquaredPlanarDistanceMetric extends EquirectangularDistanceMetric {
+
+    public SquaredPlanarDistanceMetric(double referenceLatitude) {
+      super(referenceLatitude);
+    }
+
+    @Override
+    public double comparableDistance(double aLat, double aLon, double bLat, double bLon) {
+      return squaredDistanceMeters(aLat, aLon, bLat, bLon);
+    }
+
+    @Override
+    public double toComparableDistance(double distanceMeters) {
+      return distanceMeters * distanceMeters;
+    }
+
+    @Override
+    public double toDistanceMeters(double comparableDistance) {
+      return Math.sqrt(comparableDistance);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package net.peterd.zombierun.util;
+
+/**
+ * A small, seedable random number generator (SplitMix64) for the game simulation.
+ *
+ * Unlike {@link Math#random()}, which shares one synchronized generator across the whole process,
+ * each game owns its own GameRandom, so the same seed and the same inputs always produce the same
+ * game.  Instances are not thread-safe.  Code that needs randomness from several threads at once,
+ * like the horde, gives each entity its own stream, and counts the numbers drawn from it, for
+ * {@link #nextDouble(long, int)}, which needs no locking and gives the same sequence no matter how
+ * the work is split between threads.
+ */
+public class GameRandom {
+
+  private static final long goldenGamma = 0x9E3779B97F4A7C15L;
+  private static final double doubleUnit = 1.0 / (1L << 53);
+
+  private final long seed;
+  private long state;
+
+  public GameRandom(long seed) {
+    this.seed = seed;
+    this.state = seed;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public long nextLong() {
+    state += goldenGamma;
+    return mix64(state);
+  }
+
+  /**
+   * @return A uniformly distributed double in [0, 1).
+   */
+  public double nextDouble() {
+    return toDouble(nextLong());
+  }
+
+  /**
+   * @return A new generator whose stream is independent of this one's.
+   */
+  public GameRandom split() {
+    return new GameRandom(nextLong());
+  }
+
+  /**
+   * The initial state of the stream identified by key within the family of streams rooted at
+   * seed.  Streams for different keys are independent.
+   */
+  public static long streamState(long seed, long key) {
+    return mix64(seed + mix64(key * goldenGamma));
+  }
+
+  /**
+   * @return The double in [0, 1) that comes after the given number of draws from the stream whose
+   *    initial state is streamState.
+   */
+  public static double nextDouble(long streamState, int draws) {
+    return toDouble(mix64(streamState + (draws + 1L) * goldenGamma));
+  }
+
+  private static double toDouble(long bits) {
+    return (bits >>> 11) * doubleUnit;
+  }
+
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -15,9 +15,45 @@ public class GeoPointUtil {
   
   public static FloatingPointGeoPoint getGeoPointNear(double lat, double lon,
       double distanceMeters) {
+    double[] latOut = new double[1];
+    double[] lonOut = new double[1];
     double targetLat = Math.random() - 0.5 + lat;
     double targetLon = Math.random() - 0.5 + lon;
-    return geoPointTowardsTarget(lat, lon, targetLat, targetLon, distanceMeters);
+    geoPointTowardsTarget(lat,
+        lon,
+        targetLat,
+        targetLon,
+        distanceMeters,
+        DistanceMetrics.HAVERSINE,
+        latOut,
+        lonOut,
+        0);
+    return new FloatingPointGeoPoint(latOut[0], lonOut[0]);
+  }
+
+  /**
+   * A version of getGeoPointNear that writes the resulting point into latsOut[index] and
+   * lonsOut[index] instead of allocating a FloatingPointGeoPoint, and draws the direction from the
+   * given game's random stream instead of the global one.
+   */
+  public static void getGeoPointNear(double lat, double lon,
+      double distanceMeters,
+      DistanceMetric metric,
+      GameRandom random,
+      double[] latsOut,
+      double[] lonsOut,
+      int index) {
+    double targetLat = random.nextDouble() - 0.5 + lat;
+    double targetLon = random.nextDouble() - 0.5 + lon;
+    geoPointTowardsTarget(lat,
+        lon,
+        targetLat,
+        targetLon,
+        distanceMeters,
+        metric,
+        latsOut,
+        lonsOut,
+        index);
   }
 
   public static FloatingPointGeoPoint geoPointTowardsTarget(
@@ -26,14 +62,43 @@ public class GeoPointUtil {
       double dLat,
       double dLon,
       double distanceMeters) {
+    double[] latOut = new double[1];
+    double[] lonOut = new double[1];
+    geoPointTowardsTarget(oLat,
+        oLon,
+        dLat,
+        dLon,
+        distanceMeters,
+        DistanceMetrics.HAVERSINE,
+        latOut,
+        lonOut,
+        0);
+    return new FloatingPointGeoPoint(latOut[0], lonOut[0]);
+  }
+
+  /**
+   * A version of geoPointTowardsTarget that writes the resulting point into latsOut[index] and
+   * lonsOut[index] instead of allocating a FloatingPointGeoPoint.
+   */
+  public static void geoPointTowardsTarget(
+      double oLat,
+      double oLon,
+      double dLat,
+      double dLon,
+      double distanceMeters,
+      DistanceMetric metric,
+      double[] latsOut,
+      double[] lonsOut,
+      int index) {
     double diffLat = dLat - oLat;
     double diffLon = dLon - oLon;
     
-    double diffMagnitudeMeters = distanceMeters(oLat, oLon, dLat, dLon);
+    double diffMagnitudeMeters = metric.distanceMeters(oLat, oLon, dLat, dLon);
     double deltaLat = diffLat * (distanceMeters / diffMagnitudeMeters);
     double deltaLon = diffLon * (distanceMeters / diffMagnitudeMeters);
     
-    return new FloatingPointGeoPoint(oLat + deltaLat, oLon + deltaLon);
+    latsOut[index] = oLat + deltaLat;
+    lonsOut[index] = oLon + deltaLon;
   }
   
   /**
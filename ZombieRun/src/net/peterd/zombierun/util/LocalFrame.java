@@ -0,0 +1,70 @@
+package net.peterd.zombierun.util;
+
+import net.peterd.zombierun.constants.Constants;
+
+/**
+ * A game-local east/north coordinate frame, in meters, anchored at the game's starting location.
+ *
+ * The simulation runs in this frame so that movement and threshold checks are plain vector math;
+ * latitude and longitude only appear at the edges (GPS input, map rendering and serialization).
+ * The projection is equirectangular about the origin, which over the few kilometers a game covers
+ * agrees with haversine to about 0.1% at mid latitudes.
+ */
+public class LocalFrame {
+
+  private static final double metersPerDegreeLatitude =
+      Constants.radiusOfEarthMeters * Math.PI / 180;
+
+  private final double originLat;
+  private final double originLon;
+  private final double metersPerDegreeLongitude;
+
+  public LocalFrame(double originLat, double originLon) {
+    this.originLat = originLat;
+    this.originLon = originLon;
+    // Keep a sane scale even right at a pole.
+    metersPerDegreeLongitude =
+        Math.max(metersPerDegreeLatitude * Math.cos(Math.toRadians(originLat)), 1e-3);
+  }
+
+  public LocalFrame(FloatingPointGeoPoint origin) {
+    this(origin.getLatitude(), origin.getLongitude());
+  }
+
+  public double getOriginLatitude() {
+    return originLat;
+  }
+
+  public double getOriginLongitude() {
+    return originLon;
+  }
+
+  public double toEastMeters(double lon) {
+    double deltaLon = lon - originLon;
+    // Take the short way around the antimeridian.
+    if (deltaLon > 180) {
+      deltaLon -= 360;
+    } else if (deltaLon < -180) {
+      deltaLon += 360;
+    }
+    return deltaLon * metersPerDegreeLongitude;
+  }
+
+  public double toNorthMeters(double lat) {
+    return (lat - originLat) * metersPerDegreeLatitude;
+  }
+
+  public double toLongitude(double eastMeters) {
+    double lon = originLon + eastMeters / metersPerDegreeLongitude;
+    if (lon > 180) {
+      lon -= 360;
+    } else if (lon < -180) {
+      lon += 360;
+    }
+    return lon;
+  }
+
+  public double toLatitude(double northMeters) {
+    return originLat + northMeters / metersPerDegreeLatitude;
+  }
+}
@@ -2,8 +2,33 @@ package net.peterd.zombierun.util;
 
 import net.peterd.zombierun.constants.ApplicationConstants;
 
+/**
+ * Logging for the game.  Messages go to a {@link Sink}: android.util.Log when running on Android,
+ * and standard error otherwise, so that the simulation can run on a plain JVM.
+ */
 public class Log {
-  
+
+  // The same values as android.util.Log's severities.
+  public static final int VERBOSE = 2;
+  public static final int DEBUG = 3;
+  public static final int INFO = 4;
+  public static final int WARN = 5;
+  public static final int ERROR = 6;
+
+  public interface Sink {
+
+    /**
+     * @param throwable May be null.
+     */
+    public void println(int severity, String tag, String message, Throwable throwable);
+  }
+
+  private static volatile Sink sink = runningOnAndroid() ? new AndroidLogSink() : new StreamSink();
+
+  public static void setSink(Sink sink) {
+    Log.sink = sink;
+  }
+
   public static boolean loggingEnabled() {
     return ApplicationConstants.loggingEnabled();
   }
@@ -18,31 +43,64 @@ public class Log {
    */
   public static void d(String tag, String message) {
     if (loggingEnabled()) {
-      android.util.Log.d(tag, message);
+      sink.println(DEBUG, tag, message, null);
     }
   }
   
   public static void e(String tag, String message) {
-    android.util.Log.e(tag, message);
+    sink.println(ERROR, tag, message, null);
   }
   
   public static void w(String tag, String message) {
-    android.util.Log.w(tag, message);
+    sink.println(WARN, tag, message, null);
   }
   
-  public static void e(String tag, String message, Exception e) {
-    android.util.Log.e(tag, message, e);
+  public static void e(String tag, String message, Throwable e) {
+    sink.println(ERROR, tag, message, e);
   }
   
   public static void i(String tag, String message) {
     if (loggingEnabled()) {
-      android.util.Log.i(tag, message);
+      sink.println(INFO, tag, message, null);
     }
   }
   
   public static void println(int severity, String tag, String message) {
     if (ApplicationConstants.loggingEnabled()) {
+      sink.println(severity, tag, message, null);
+    }
+  }
+
+  private static boolean runningOnAndroid() {
+    return "Dalvik".equals(System.getProperty("java.vm.name"));
+  }
+
+  /**
+   * Only loaded when running on Android.
+   */
+  private static class AndroidLogSink implements Sink {
+
+    public void println(int severity, String tag, String message, Throwable throwable) {
+      if (throwable != null) {
+        message = message + '\n' + android.util.Log.getStackTraceString(throwable);
+      }
       android.util.Log.println(severity, tag, message);
     }
   }
+
+  private static class StreamSink implements Sink {
+
+    private static final String severities = "??VDIWE";
+
+    public void println(int severity, String tag, String message, Throwable throwable) {
+      char severityChar = severity >= 0 && severity < severities.length() ?
+          severities.charAt(severity) : '?';
+      synchronized (System.err) {
+        System.err.println(severityChar + "/" + tag + ": " + message);
+        if (throwable != null) {
+          throwable.printStackTrace(System.err);
+        }
+      }
+    }
+  }
 }
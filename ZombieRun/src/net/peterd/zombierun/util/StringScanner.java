@@ -0,0 +1,183 @@
+package net.peterd.zombierun.util;
+
+/**
+ * Reads numbers and separators out of a string in place, without the regular expressions,
+ * substrings and boxed values of String.split and Double.parseDouble, so that parsing a large
+ * game state doesn't allocate.  A scanner can be {@link #reset(String)} and reused.
+ *
+ * Malformed input throws IllegalArgumentException.
+ */
+public class StringScanner {
+
+  // Powers of ten that are exactly representable as doubles.
+  private static final double[] exactPowersOfTen = new double[23];
+  static {
+    exactPowersOfTen[0] = 1;
+    for (int i = 1; i < exactPowersOfTen.length; ++i) {
+      exactPowersOfTen[i] = exactPowersOfTen[i - 1] * 10;
+    }
+  }
+
+  private String string;
+  private int position;
+  private int end;
+
+  public StringScanner reset(String string) {
+    return reset(string, 0, string.length());
+  }
+
+  public StringScanner reset(String string, int start, int end) {
+    this.string = string;
+    this.position = start;
+    this.end = end;
+    return this;
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  public boolean hasMore() {
+    return position < end;
+  }
+
+  /**
+   * @return The next character, without consuming it, or -1 at the end.
+   */
+  public int peek() {
+    return position < end ? string.charAt(position) : -1;
+  }
+
+  /**
+   * Consume the next character if it is c.
+   *
+   * @return Whether it was.
+   */
+  public boolean skip(char c) {
+    if (position < end && string.charAt(position) == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  public void expect(char c) {
+    if (!skip(c)) {
+      throw error("Expected '" + c + "'");
+    }
+  }
+
+  /**
+   * Skip to just past the next c, or to the end if there isn't one.
+   */
+  public void skipPast(char c) {
+    int index = string.indexOf(c, position);
+    position = index < 0 || index >= end ? end : index + 1;
+  }
+
+  public int nextInt() {
+    long value = nextLong();
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw error("Integer out of range");
+    }
+    return (int) value;
+  }
+
+  public long nextLong() {
+    boolean negative = skip('-');
+    int start = position;
+    long value = 0;
+    while (position < end) {
+      int digit = string.charAt(position) - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        throw error("Integer out of range");
+      }
+      value = value * 10 + digit;
+      position++;
+    }
+    if (position == start) {
+      throw error("Expected a digit");
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parse a double in the forms Double.toString produces, like "-122.4194", "1.0E-4" and
+   * "NaN".  Accurate to within an ulp or so, rather than correctly rounded.
+   */
+  public double nextDouble() {
+    boolean negative = skip('-');
+    if (string.startsWith("NaN", position)) {
+      position += 3;
+      return Double.NaN;
+    } else if (string.startsWith("Infinity", position)) {
+      position += 8;
+      return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+
+    long mantissa = 0;
+    int exponent = 0;
+    int digits = 0;
+    boolean seenPoint = false;
+    while (position < end) {
+      char c = string.charAt(position);
+      if (c == '.' && !seenPoint) {
+        seenPoint = true;
+      } else if (c >= '0' && c <= '9') {
+        digits++;
+        if (mantissa < 100000000000000000L) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (seenPoint) {
+            exponent--;
+          }
+        } else if (!seenPoint) {
+          // Digits beyond what a long holds only scale the value.
+          exponent++;
+        }
+      } else {
+        break;
+      }
+      position++;
+    }
+    if (digits == 0) {
+      throw error("Expected a number");
+    }
+    if (skip('E') || skip('e')) {
+      boolean negativeExponent = skip('-');
+      if (!negativeExponent) {
+        skip('+');
+      }
+      int start = position;
+      int explicitExponent = 0;
+      while (position < end && string.charAt(position) >= '0' && string.charAt(position) <= '9') {
+        explicitExponent = Math.min(explicitExponent * 10 + (string.charAt(position) - '0'), 1000);
+        position++;
+      }
+      if (position == start) {
+        throw error("Expected an exponent");
+      }
+      exponent += negativeExponent ? -explicitExponent : explicitExponent;
+    }
+
+    double value = mantissa;
+    if (exponent < 0 && -exponent < exactPowersOfTen.length) {
+      value /= exactPowersOfTen[-exponent];
+    } else if (exponent > 0 && exponent < exactPowersOfTen.length) {
+      value *= exactPowersOfTen[exponent];
+    } else if (exponent != 0) {
+      value *= Math.pow(10, exponent);
+    }
+    return negative ? -value : value;
+  }
+
+  private IllegalArgumentException error(String message) {
+    // Quote only the neighbourhood of the error; the string may be a whole game state.
+    int from = Math.max(0, position - 20);
+    int to = Math.min(end, position + 20);
+    return new IllegalArgumentException(message + " at " + position + " in '" +
+        string.substring(from, to) + "'.");
+  }
+}
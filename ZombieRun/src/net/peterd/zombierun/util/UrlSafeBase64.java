@@ -0,0 +1,111 @@
+package net.peterd.zombierun.util;
+
+/**
+ * Base64 with the URL- and filename-safe alphabet ('-' and '_' in place of '+' and '/') and no
+ * padding, so that binary payloads can travel in form posts and in the game server's line-based
+ * responses without further escaping.
+ */
+public class UrlSafeBase64 {
+
+  private static final char[] alphabet =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+  private static final int[] values = new int[128];
+  static {
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = -1;
+    }
+    for (int i = 0; i < alphabet.length; ++i) {
+      values[alphabet[i]] = i;
+    }
+  }
+
+  /**
+   * @return The six bits a character stands for, or -1 if it isn't in the alphabet, for decoding
+   *    a stream a character at a time.
+   */
+  public static int valueOf(int c) {
+    return c >= 0 && c < values.length ? values[c] : -1;
+  }
+
+  public static String encode(byte[] bytes) {
+    StringBuilder builder = new StringBuilder((bytes.length * 4 + 2) / 3);
+    int i = 0;
+    for (; i + 2 < bytes.length; i += 3) {
+      int bits = ((bytes[i] & 0xFF) << 16) | ((bytes[i + 1] & 0xFF) << 8) | (bytes[i + 2] & 0xFF);
+      builder.append(alphabet[bits >>> 18]);
+      builder.append(alphabet[(bits >>> 12) & 0x3F]);
+      builder.append(alphabet[(bits >>> 6) & 0x3F]);
+      builder.append(alphabet[bits & 0x3F]);
+    }
+    int remaining = bytes.length - i;
+    if (remaining == 1) {
+      int bits = (bytes[i] & 0xFF) << 16;
+      builder.append(alphabet[bits >>> 18]);
+      builder.append(alphabet[(bits >>> 12) & 0x3F]);
+    } else if (remaining == 2) {
+      int bits = ((bytes[i] & 0xFF) << 16) | ((bytes[i + 1] & 0xFF) << 8);
+      builder.append(alphabet[bits >>> 18]);
+      builder.append(alphabet[(bits >>> 12) & 0x3F]);
+      builder.append(alphabet[(bits >>> 6) & 0x3F]);
+    }
+    return builder.toString();
+  }
+
+  public static byte[] decode(String encoded) {
+    return decode(encoded, 0);
+  }
+
+  /**
+   * Decode the part of the string from offset onwards.
+   *
+   * @throws IllegalArgumentException if it isn't valid unpadded URL-safe base64.
+   */
+  public static byte[] decode(String encoded, int offset) {
+    byte[] bytes = new byte[decodedLength(encoded, offset)];
+    decode(encoded, offset, bytes);
+    return bytes;
+  }
+
+  /**
+   * @return The number of bytes the part of the string from offset onwards decodes to.
+   * @throws IllegalArgumentException if no valid unpadded base64 has that length.
+   */
+  public static int decodedLength(String encoded, int offset) {
+    int length = encoded.length() - offset;
+    if (length % 4 == 1) {
+      throw new IllegalArgumentException("Invalid base64 length " + length + ".");
+    }
+    return length * 3 / 4;
+  }
+
+  /**
+   * Decode the part of the string from offset onwards into the start of bytes, which must have
+   * room for {@link #decodedLength(String, int)} bytes, so that a buffer can be reused.
+   *
+   * @return The number of bytes decoded.
+   * @throws IllegalArgumentException if it isn't valid unpadded URL-safe base64.
+   */
+  public static int decode(String encoded, int offset, byte[] bytes) {
+    int length = decodedLength(encoded, offset);
+    if (bytes.length < length) {
+      throw new IllegalArgumentException("No room for " + length + " decoded bytes.");
+    }
+    int bits = 0;
+    int bitCount = 0;
+    int index = 0;
+    for (int i = offset; i < encoded.length(); ++i) {
+      char c = encoded.charAt(i);
+      int value = c < values.length ? values[c] : -1;
+      if (value < 0) {
+        throw new IllegalArgumentException("Invalid base64 character '" + c + "' at " + i + ".");
+      }
+      bits = (bits << 6) | value;
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        bytes[index++] = (byte) (bits >>> bitCount);
+      }
+    }
+    return index;
+  }
+}
@@ -0,0 +1,88 @@
+package net.peterd.zombierun.util;
+
+/**
+ * Reads the encoding written by {@link VarintWriter}.
+ *
+ * Reading past the end of the data, or a varint longer than ten bytes, throws
+ * IllegalArgumentException, so that a truncated or corrupt payload is reported rather than read
+ * as garbage.
+ */
+public class VarintReader {
+
+  private final byte[] bytes;
+  private final int end;
+  private int position;
+
+  public VarintReader(byte[] bytes) {
+    this(bytes, 0, bytes.length);
+  }
+
+  public VarintReader(byte[] bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.position = offset;
+    this.end = offset + length;
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  /**
+   * Go back to, or skip ahead to, a position previously returned by {@link #getPosition()}.
+   */
+  public void setPosition(int position) {
+    this.position = position;
+  }
+
+  public int remaining() {
+    return end - position;
+  }
+
+  /**
+   * @return The next byte, from 0 to 255.
+   */
+  public int readByte() {
+    if (position >= end) {
+      throw new IllegalArgumentException("Unexpected end of data at byte " + position + ".");
+    }
+    return bytes[position++] & 0xFF;
+  }
+
+  public long readVarint() {
+    long value = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      int b = readByte();
+      value |= ((long) (b & 0x7F)) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Varint longer than ten bytes ending at byte " + position +
+        ".");
+  }
+
+  public long readSignedVarint() {
+    long value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Read an unsigned varint that must fit in a non-negative int.
+   */
+  public int readVarintInt() {
+    long value = readVarint();
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Varint " + value + " out of range at byte " + position +
+          ".");
+    }
+    return (int) value;
+  }
+
+  public double readDouble() {
+    long bits = 0;
+    for (int i = 0; i < 8; ++i) {
+      bits = (bits << 8) | readByte();
+    }
+    return Double.longBitsToDouble(bits);
+  }
+}
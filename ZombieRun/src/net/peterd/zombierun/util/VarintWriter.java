@@ -0,0 +1,77 @@
+package net.peterd.zombierun.util;
+
+/**
+ * Writes a compact binary encoding into a growable byte array: unsigned LEB128 varints, which take
+ * one byte per 7 bits of value, zigzag-encoded signed varints, so that small negative numbers are
+ * small too, and raw big-endian doubles.  Read back with {@link VarintReader}.
+ *
+ * A writer can be {@link #reset()} and reused, so that encoding doesn't reallocate its buffer.
+ */
+public class VarintWriter {
+
+  private byte[] buffer;
+  private int size = 0;
+
+  public VarintWriter() {
+    this(64);
+  }
+
+  public VarintWriter(int initialCapacity) {
+    buffer = new byte[Math.max(initialCapacity, 16)];
+  }
+
+  public void reset() {
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void writeByte(int value) {
+    ensureCapacity(1);
+    buffer[size++] = (byte) value;
+  }
+
+  /**
+   * Write a value as an unsigned varint.  Negative values take ten bytes; use
+   * {@link #writeSignedVarint(long)} for values that may be negative.
+   */
+  public void writeVarint(long value) {
+    ensureCapacity(10);
+    byte[] buffer = this.buffer;
+    int size = this.size;
+    while ((value & ~0x7FL) != 0) {
+      buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[size++] = (byte) value;
+    this.size = size;
+  }
+
+  public void writeSignedVarint(long value) {
+    writeVarint((value << 1) ^ (value >> 63));
+  }
+
+  public void writeDouble(double value) {
+    long bits = Double.doubleToLongBits(value);
+    ensureCapacity(8);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      buffer[size++] = (byte) (bits >>> shift);
+    }
+  }
+
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[size];
+    System.arraycopy(buffer, 0, bytes, 0, size);
+    return bytes;
+  }
+
+  private void ensureCapacity(int extraBytes) {
+    if (size + extraBytes > buffer.length) {
+      byte[] grown = new byte[Math.max(buffer.length * 2, size + extraBytes)];
+      System.arraycopy(buffer, 0, grown, 0, size);
+      buffer = grown;
+    }
+  }
+}
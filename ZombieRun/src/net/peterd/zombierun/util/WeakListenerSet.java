@@ -0,0 +1,103 @@
+package net.peterd.zombierun.util;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A set of listeners, held through weak references so that a listener that never removes itself
+ * can still be garbage collected.
+ *
+ * The listeners are kept in an immutable array that is copied and swapped in atomically whenever a
+ * listener is added or removed.  Dispatching walks whatever array {@link #getSnapshot()} returned,
+ * so it takes no lock, can't throw ConcurrentModificationException and doesn't allocate, and a
+ * listener may add or remove listeners, or dispatch again, from inside a callback.  A listener
+ * removed during a dispatch may still receive that dispatch; one added during it will not.
+ */
+public class WeakListenerSet<T> {
+
+  private final AtomicReference<WeakReference<T>[]> listeners =
+      new AtomicReference<WeakReference<T>[]>(WeakListenerSet.<T>newArray(0));
+
+  /**
+   * @return true if the listener was not already in the set.
+   */
+  public boolean add(T listener) {
+    while (true) {
+      WeakReference<T>[] current = listeners.get();
+      if (indexOf(current, listener) >= 0) {
+        return false;
+      }
+      WeakReference<T>[] live = pruned(current, 1);
+      live[live.length - 1] = new WeakReference<T>(listener);
+      if (listeners.compareAndSet(current, live)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return true if the listener was in the set.
+   */
+  public boolean remove(T listener) {
+    while (true) {
+      WeakReference<T>[] current = listeners.get();
+      int index = indexOf(current, listener);
+      if (index < 0) {
+        return false;
+      }
+      WeakReference<T>[] withoutListener = newArray(current.length - 1);
+      System.arraycopy(current, 0, withoutListener, 0, index);
+      System.arraycopy(current, index + 1, withoutListener, index, current.length - index - 1);
+      if (listeners.compareAndSet(current, pruned(withoutListener, 0))) {
+        return true;
+      }
+    }
+  }
+
+  public void clear() {
+    listeners.set(WeakListenerSet.<T>newArray(0));
+  }
+
+  public boolean isEmpty() {
+    return listeners.get().length == 0;
+  }
+
+  /**
+   * @return The current listeners, to be walked by index.  Never modified; elements may have been
+   *    cleared by the garbage collector.
+   */
+  public WeakReference<T>[] getSnapshot() {
+    return listeners.get();
+  }
+
+  private static <T> int indexOf(WeakReference<T>[] references, T listener) {
+    for (int i = 0; i < references.length; ++i) {
+      if (references[i].get() == listener) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return A copy of the references that haven't been cleared, with extraSlots empty slots on the
+   *    end.  Each reference is checked once, so one cleared partway through can't leave a gap.
+   */
+  private static <T> WeakReference<T>[] pruned(WeakReference<T>[] references, int extraSlots) {
+    WeakReference<T>[] live = newArray(references.length);
+    int liveCount = 0;
+    for (int i = 0; i < references.length; ++i) {
+      if (references[i].get() != null) {
+        live[liveCount++] = references[i];
+      }
+    }
+    WeakReference<T>[] pruned = newArray(liveCount + extraSlots);
+    System.arraycopy(live, 0, pruned, 0, liveCount);
+    return pruned;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> WeakReference<T>[] newArray(int length) {
+    return new WeakReference[length];
+  }
+}